@@ -0,0 +1,118 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd;
+
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of {@link ContratosImpl#buscarFicha(String)}: the index and the query to the database.
+ * ./gradlew jmh -Pjmh="BuscarFichaBenchmark -p rows=1000"
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuscarFichaBenchmark {
+
+    /**
+     * The database.
+     */
+    @Param({"h2", "sqlite"})
+    public String db;
+
+    /**
+     * Number of Fichas.
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    /**
+     * The queries: numero, nombre of Paciente, rut of Duenio (prefix) and nombre of Duenio.
+     */
+    @Param({"777", "Galatea", "1000004", "Andr"})
+    public String query;
+
+    /**
+     * The Contratos.
+     */
+    private ContratosImpl contratos;
+
+    /**
+     * Seed the database and load the index.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        this.contratos = new ContratosImpl(Datasets.url(this.db, "buscar_" + this.rows));
+        this.contratos.awaitFichaIndex();
+        Datasets.seed(this.contratos, this.rows);
+    }
+
+    /**
+     * Close the connections.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.contratos.getConnectionPool().close();
+    }
+
+    /**
+     * @return the Fichas found in the index.
+     */
+    @Benchmark
+    public List<Ficha> index() {
+        return this.contratos.buscarFicha(this.query);
+    }
+
+    /**
+     * @return the Fichas found in the database.
+     */
+    @Benchmark
+    public List<Ficha> database() {
+        return this.contratos.buscarFichaEnBaseDeDatos(this.query);
+    }
+
+}
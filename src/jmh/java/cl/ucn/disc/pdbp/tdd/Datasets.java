@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd;
+
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.model.Sexo;
+import cl.ucn.disc.pdbp.tdd.model.Tipo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The seeded datasets of the benchmarks.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class Datasets {
+
+    /**
+     * Number of rows by transaction.
+     */
+    private static final int CHUNK_SIZE = 10_000;
+
+    /**
+     * Number of Fichas by Persona.
+     */
+    private static final int FICHAS_BY_PERSONA = 10;
+
+    /**
+     * The names of the Personas.
+     */
+    private static final String[] NOMBRES = {"Felipe", "Andrea", "Diego", "Ignacio", "Camila", "Valentina",
+            "Javiera", "Matias", "Sebastian", "Fernanda", "Catalina", "Benjamin", "Constanza", "Tomas"};
+
+    /**
+     * The names of the Pacientes.
+     */
+    private static final String[] PACIENTES = {"Firulais", "Galatea", "Michi", "Bobby", "Cachupin", "Pelusa",
+            "Manchas", "Rocky", "Canela", "Pulgoso", "Garfield", "Tobby", "Luna", "Chispita", "Kira", "Simba"};
+
+    /**
+     * Not for construction.
+     */
+    private Datasets() {
+        // Empty
+    }
+
+    /**
+     * @param db   h2 or sqlite.
+     * @param name of the database.
+     * @return the jdbc url (the sqlite file is new).
+     */
+    public static String url(String db, String name) {
+        switch (db) {
+            case "h2":
+                return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+            case "sqlite":
+                try {
+                    File file = File.createTempFile(name, ".db");
+                    file.deleteOnExit();
+                    if (!file.delete()) {
+                        throw new IOException("Can't delete " + file);
+                    }
+                    return "jdbc:sqlite:" + file.getAbsolutePath();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown database " + db);
+        }
+    }
+
+    /**
+     * @param number of the rut (without dv).
+     * @return the valid rut.
+     */
+    public static String rut(int number) {
+        int m = 0, s = 1;
+        for (int rut = number; rut != 0; rut /= 10) {
+            s = (s + rut % 10 * (9 - m++ % 6)) % 11;
+        }
+        return Integer.toString(number) + (char) (s != 0 ? s + 47 : 75);
+    }
+
+    /**
+     * @param i the number of the Persona.
+     * @return the Persona i.
+     */
+    public static Persona persona(int i) {
+        return new Persona(NOMBRES[i % NOMBRES.length],
+                "Apellido",
+                rut(10_000_000 + i),
+                "Calle Falsa " + i,
+                5_000_000 + i % 1_000_000,
+                90_000_000 + i % 1_000_000,
+                "persona" + i + "@feik.com");
+    }
+
+    /**
+     * @param numero of the Ficha.
+     * @param duenio of the Paciente.
+     * @return the Ficha.
+     */
+    public static Ficha ficha(long numero, Persona duenio) {
+        return new Ficha(numero,
+                PACIENTES[(int) (numero % PACIENTES.length)],
+                numero % 2 == 0 ? "Canino" : "Felino",
+                ZonedDateTime.now(),
+                "Quiltro",
+                numero % 2 == 0 ? Sexo.MACHO : Sexo.HEMBRA,
+                "Negro",
+                Tipo.INTERNO,
+                duenio);
+    }
+
+    /**
+     * Register the Fichas 1..rows with one Duenio for each ten Fichas.
+     *
+     * @param contratos to use.
+     * @param rows      number of Fichas.
+     */
+    public static void seed(Contratos contratos, int rows) {
+
+        int nPersonas = Math.max(1, rows / FICHAS_BY_PERSONA);
+        List<Persona> duenios = new ArrayList<>(nPersonas);
+        List<Persona> chunk = new ArrayList<>(CHUNK_SIZE);
+        for (int i = 0; i < nPersonas; i++) {
+            Persona persona = persona(i);
+            duenios.add(persona);
+            chunk.add(persona);
+            if (chunk.size() == CHUNK_SIZE) {
+                contratos.registrarPersonas(chunk);
+                chunk.clear();
+            }
+        }
+        contratos.registrarPersonas(chunk);
+
+        List<Ficha> fichas = new ArrayList<>(CHUNK_SIZE);
+        for (long numero = 1; numero <= rows; numero++) {
+            fichas.add(ficha(numero, duenios.get((int) ((numero - 1) / FICHAS_BY_PERSONA) % nPersonas)));
+            if (fichas.size() == CHUNK_SIZE) {
+                contratos.registrarPacientes(fichas);
+                fichas.clear();
+            }
+        }
+        contratos.registrarPacientes(fichas);
+    }
+
+}
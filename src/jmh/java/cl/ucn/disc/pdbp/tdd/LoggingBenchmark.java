@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of the logging of a request (the debug of the endpoint and the line of the request logger):
+ * logback.xml (synchronous console with %line) against logback-production.xml (async, without caller data).
+ * The console is discarded, so the cost is the work of the threads of the requests (with production the
+ * queue fills up and the events are discarded: the overhead of a request is bounded).
+ * ./gradlew jmh -Pjmh="LoggingBenchmark"
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class LoggingBenchmark {
+
+    /**
+     * The configuration of logback.
+     */
+    @Param({"logback.xml", "logback-production.xml"})
+    public String configuration;
+
+    /**
+     * The url of the request.
+     */
+    private static final String URL = "http://localhost:7000/v1/fichas?pageSize=100&page=3";
+
+    /**
+     * The logger of the endpoints.
+     */
+    private final Logger endpoints = LoggerFactory.getLogger(ApiRestEndpoints.class);
+
+    /**
+     * The logger of the requests.
+     */
+    private final Logger requests = LoggerFactory.getLogger(Application.class);
+
+    /**
+     * The console.
+     */
+    private PrintStream console;
+
+    /**
+     * Load the configuration and discard the console.
+     */
+    @Setup
+    public void setup() throws JoranException {
+
+        this.console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // Discarded
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // Discarded
+            }
+        }));
+
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        JoranConfigurator configurator = new JoranConfigurator();
+        configurator.setContext(context);
+        configurator.doConfigure(LoggingBenchmark.class.getClassLoader().getResource(this.configuration));
+    }
+
+    /**
+     * Stop the appenders and restore the console.
+     */
+    @TearDown
+    public void tearDown() {
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        System.setOut(this.console);
+    }
+
+    /**
+     * The logging of a request.
+     */
+    @Benchmark
+    public void request() {
+        this.endpoints.debug("Getting a page of Fichas ..");
+        if (this.requests.isInfoEnabled()) {
+            this.requests.info("Server {} in {} ms.", URL, 1.25f);
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import cl.ucn.disc.pdbp.tdd.Datasets;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of {@link RepositoryOrmLite}: create, findById and findAll of Personas.
+ * ./gradlew jmh -Pjmh="RepositoryBenchmark -p db=h2"
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /**
+     * The database.
+     */
+    @Param({"h2", "sqlite"})
+    public String db;
+
+    /**
+     * Number of Personas in the table.
+     */
+    @Param({"1000", "100000"})
+    public int rows;
+
+    /**
+     * The connections.
+     */
+    private JdbcPooledConnectionSource connectionSource;
+
+    /**
+     * The Repository.
+     */
+    private Repository<Persona, Long> repository;
+
+    /**
+     * The ids of the Personas.
+     */
+    private long[] ids;
+
+    /**
+     * The Persona to create.
+     */
+    private Persona persona;
+
+    /**
+     * Seed the table.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+
+        this.connectionSource = new JdbcPooledConnectionSource(Datasets.url(this.db, "repository_" + this.rows));
+        TableUtils.createTableIfNotExists(this.connectionSource, Persona.class);
+        this.repository = new RepositoryOrmLite<>(this.connectionSource, Persona.class);
+
+        List<Persona> personas = new ArrayList<>(this.rows);
+        for (int i = 0; i < this.rows; i++) {
+            personas.add(Datasets.persona(i));
+        }
+        this.repository.createAll(personas);
+
+        this.ids = new long[this.rows];
+        for (int i = 0; i < this.rows; i++) {
+            this.ids[i] = personas.get(i).getId();
+        }
+        this.persona = Datasets.persona(this.rows);
+    }
+
+    /**
+     * Close the connections.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.connectionSource.close();
+    }
+
+    /**
+     * @return true if created (a new row each time, the same Persona).
+     */
+    @Benchmark
+    public boolean create() {
+        return this.repository.create(this.persona);
+    }
+
+    /**
+     * @return a random Persona.
+     */
+    @Benchmark
+    public Persona findById() {
+        return this.repository.findById(this.ids[ThreadLocalRandom.current().nextInt(this.ids.length)]);
+    }
+
+    /**
+     * @return a page of 100 Personas.
+     */
+    @Benchmark
+    public List<Persona> findAllPage() {
+        long offset = ThreadLocalRandom.current().nextInt(Math.max(1, this.ids.length - 100));
+        return this.repository.findAll(100, offset);
+    }
+
+    /**
+     * @return all the Personas.
+     */
+    @Benchmark
+    public List<Persona> findAll() {
+        return this.repository.findAll();
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of {@link ZonedDateTimeType}: java to sql and sql to java, against the {@link DateTimeFormatter}.
+ * ./gradlew jmh -Pjmh="ZonedDateTimeTypeBenchmark"
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZonedDateTimeTypeBenchmark {
+
+    /**
+     * The type.
+     */
+    private final ZonedDateTimeType type = ZonedDateTimeType.getSingleton();
+
+    /**
+     * The date.
+     */
+    private ZonedDateTime date;
+
+    /**
+     * The date in the database.
+     */
+    private Object sqlArg;
+
+    /**
+     * The values.
+     */
+    @Setup
+    public void setup() {
+        this.date = ZonedDateTime.now();
+        this.sqlArg = this.type.javaToSqlArg(null, this.date);
+    }
+
+    /**
+     * @return the sql argument of the date.
+     */
+    @Benchmark
+    public Object javaToSqlArg() {
+        return this.type.javaToSqlArg(null, this.date);
+    }
+
+    /**
+     * @return the date of the sql argument.
+     */
+    @Benchmark
+    public Object sqlArgToJava() {
+        return this.type.sqlArgToJava(null, this.sqlArg, 0);
+    }
+
+    /**
+     * @return the text of the date (the formatter).
+     */
+    @Benchmark
+    public Object format() {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(this.date);
+    }
+
+    /**
+     * @return the date of the text (the formatter).
+     */
+    @Benchmark
+    public Object parse() {
+        return ZonedDateTime.parse((CharSequence) this.sqlArg, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.json;
+
+import cl.ucn.disc.pdbp.tdd.Datasets;
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of the json of a page of Controles (with the Ficha and the Personas):
+ * the reflective Gson (pretty and compact) against the adapters of {@link ModelTypeAdapterFactory}.
+ * The reflective Gson uses the adapter of the dates too (the JDK 9+ don't allow the reflection on java.time).
+ * ./gradlew jmh -Pjmh="SerializationBenchmark"
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    /**
+     * Number of Controles.
+     */
+    @Param({"100", "1000"})
+    public int size;
+
+    /**
+     * The reflective Gson, compact.
+     */
+    private final Gson reflective = new GsonBuilder()
+            .registerTypeAdapter(ZonedDateTime.class, new ModelTypeAdapterFactory.ZonedDateTimeAdapter().nullSafe())
+            .create();
+
+    /**
+     * The reflective Gson, pretty (the previous configuration).
+     */
+    private final Gson reflectivePretty = this.reflective.newBuilder()
+            .setPrettyPrinting()
+            .create();
+
+    /**
+     * The Controles.
+     */
+    private List<Control> controles;
+
+    /**
+     * The data.
+     */
+    @Setup
+    public void setup() {
+        this.controles = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            Persona duenio = Datasets.persona(i);
+            Ficha ficha = Datasets.ficha(i, duenio);
+            ZonedDateTime fecha = ZonedDateTime.now();
+            this.controles.add(new Control(fecha, fecha.plusDays(15), 38.5d, 10d, 0.5d, "Ok", duenio, ficha));
+        }
+    }
+
+    /**
+     * @return the json (reflective, pretty).
+     */
+    @Benchmark
+    public String reflectivePretty() {
+        return this.reflectivePretty.toJson(this.controles);
+    }
+
+    /**
+     * @return the json (reflective, compact).
+     */
+    @Benchmark
+    public String reflective() {
+        return this.reflective.toJson(this.controles);
+    }
+
+    /**
+     * @return the json (adapters, compact).
+     */
+    @Benchmark
+    public String adapters() {
+        return Json.GSON.toJson(this.controles);
+    }
+
+    /**
+     * @return the json (adapters, compact, buffer of the thread).
+     */
+    @Benchmark
+    public String adaptersBuffer() {
+        return Json.toJson(this.controles, false);
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The benchmark of {@link Validation} against the implementation with regular expressions (legacy).
+ * ./gradlew jmh -Pjmh="ValidationBenchmark" (with -prof gc: the allocations)
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    /**
+     * The rut: valid, wrong dv and not a number.
+     */
+    @State(Scope.Benchmark)
+    public static class Rut {
+        /**
+         * The rut.
+         */
+        @Param({"152532873", "152532874", "15253287a3"})
+        public String value;
+    }
+
+    /**
+     * The email: valid, long valid and without domain.
+     */
+    @State(Scope.Benchmark)
+    public static class Email {
+        /**
+         * The email.
+         */
+        @Param({"andrea.contreras@feik.com", "nombre.apellido.segundo.apellido@alumnos.ucn.cl", "andrea.contreras@"})
+        public String value;
+    }
+
+    /**
+     * The records of an import: 100.000 emails (one of ten without domain).
+     */
+    @State(Scope.Benchmark)
+    public static class Records {
+        /**
+         * The emails.
+         */
+        public String[] emails;
+
+        /**
+         * Build the emails.
+         */
+        @Setup
+        public void setup() {
+            this.emails = new String[100_000];
+            for (int i = 0; i < this.emails.length; i++) {
+                this.emails[i] = "nombre" + i + ".apellido@" + (i % 10 == 0 ? "" : "alumnos.ucn.cl");
+            }
+        }
+    }
+
+    /**
+     * @param rut to validate.
+     * @return true if the rut is valid.
+     */
+    @Benchmark
+    public boolean isRutValid(Rut rut) {
+        return Validation.isRutValid(rut.value);
+    }
+
+    /**
+     * @param email to validate.
+     * @return true if the email is valid.
+     */
+    @Benchmark
+    public boolean isEmailValid(Email email) {
+        return Validation.isEmailValid(email.value);
+    }
+
+    /**
+     * @param rut to validate.
+     * @return true if the rut is valid (legacy).
+     */
+    @Benchmark
+    public boolean isRutValidLegacy(Rut rut) {
+        return Legacy.isRutValid(rut.value);
+    }
+
+    /**
+     * @param email to validate.
+     * @return true if the email is valid (legacy).
+     */
+    @Benchmark
+    public boolean isEmailValidLegacy(Email email) {
+        return Legacy.isEmailValid(email.value);
+    }
+
+    /**
+     * @param records to validate.
+     * @return the failures (in parallel).
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BitSet validateAll(Records records) {
+        return Validation.validateAll(records.emails, Validation::isEmailValid);
+    }
+
+    /**
+     * @param records to validate.
+     * @return the failures (one by one, legacy).
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BitSet validateAllLegacy(Records records) {
+        BitSet failures = new BitSet(records.emails.length);
+        for (int i = 0; i < records.emails.length; i++) {
+            if (!Legacy.isEmailValid(records.emails[i])) {
+                failures.set(i);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * The validations before (with regular expressions).
+     */
+    private static final class Legacy {
+
+        /**
+         * The regular expression of the email.
+         */
+        private static final Pattern PATTERN = Pattern.compile("^[\\w!#$%&'*+/=?`{|}~^-]+(?:\\.[\\w!#$%&'*+/=?`{|}~^-]+)*@"
+                + "(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,6}$");
+
+        /**
+         * @param rut to validate.
+         * @return true if rut is valid.
+         */
+        static boolean isRutValid(String rut) {
+            if (rut == null || rut.length() < 2) {
+                return false;
+            }
+            char dv = rut.charAt(rut.length() - 1);
+            String numbers = rut.substring(0, rut.length() - 1);
+            if (!Pattern.matches("[0-9]+", numbers)) {
+                return false;
+            }
+            int m = 0, s = 1;
+            for (int r = Integer.parseInt(numbers); r != 0; r /= 10) {
+                s = (s + r % 10 * (9 - m++ % 6)) % 11;
+            }
+            return dv == (char) (s != 0 ? s + 47 : 75);
+        }
+
+        /**
+         * @param email to validate.
+         * @return true is email is valid.
+         */
+        static boolean isEmailValid(String email) {
+            return PATTERN.matcher(email).find();
+        }
+
+    }
+
+}
@@ -24,13 +24,44 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
+import cl.ucn.disc.pdbp.tdd.json.Json;
+import cl.ucn.disc.pdbp.tdd.metrics.Metrics;
+import cl.ucn.disc.pdbp.tdd.metrics.QueryTrace;
 import cl.ucn.disc.pdbp.tdd.model.*;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import cl.ucn.disc.pdbp.tdd.dao.ConnectionPoolConfig;
+import io.javalin.core.util.Header;
+import io.javalin.http.BadRequestResponse;
+import io.javalin.http.ConflictResponse;
 import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+import io.javalin.http.ServiceUnavailableResponse;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.server.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.DeflaterOutputStream;
 
 
 public final class ApiRestEndpoints {
@@ -41,9 +72,82 @@ public final class ApiRestEndpoints {
     private static final Logger log = LoggerFactory.getLogger(ApiRestEndpoints.class);
 
     /**
-     * The Contratos (using SQLite).
+     * The header with the tenant (clinic).
      */
-    private static final Contratos CONTRATOS = new ContratosImpl("jdbc:sqlite:fivet.db");
+    private static final String TENANT_HEADER = "X-Tenant";
+
+    /**
+     * Max number of tenants opened at the same time.
+     */
+    private static final int MAX_TENANTS = 16;
+
+    /**
+     * Time to close a tenant not used.
+     */
+    private static final long TENANT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Max number of requests of one tenant running or waiting (one per connection of its pool, then 503).
+     */
+    private static final int MAX_TENANT_REQUESTS = ConnectionPoolConfig.DEFAULT.getMaxSize();
+
+    /**
+     * Number of tenants with all their requests running at the same time.
+     */
+    private static final int BUSY_TENANTS = 4;
+
+    /**
+     * The Contratos of each tenant (using SQLite).
+     */
+    private static volatile ContratosRegistry registry = new ContratosRegistry(
+            ContratosRegistry::sqlite, MAX_TENANTS, TENANT_IDLE_MILLIS, MAX_TENANT_REQUESTS);
+
+    /**
+     * Max number of requests waiting for the database (then 503).
+     */
+    private static final int MAX_QUEUE = 256;
+
+    /**
+     * The executor of the work with the database, shared by the tenants (each one limited by the registry,
+     * so a busy tenant can't take all the threads).
+     */
+    private static final DatabaseExecutor DATABASE = new DatabaseExecutor(
+            MAX_TENANT_REQUESTS * BUSY_TENANTS, MAX_QUEUE);
+
+    /**
+     * The attribute of the {@link Context} with the number of queries to the database.
+     */
+    static final String QUERIES_ATTRIBUTE = "db.queries";
+
+    /**
+     * The attribute of the {@link Context} with the Server-Timing of the queries (the trailer of the streams).
+     */
+    private static final String SERVER_TIMING_ATTRIBUTE = "db.serverTiming";
+
+    /**
+     * Times of the same query in a request to warn about N+1.
+     */
+    private static final int N_PLUS_ONE_REPEATS = 10;
+
+    /**
+     * Time of the queries of a request to warn (milliseconds).
+     */
+    private static final long SLOW_DB_MILLIS = 250;
+
+    /**
+     * Number of queries of a request to warn.
+     */
+    private static final int MAX_STATEMENTS = 50;
+
+    /**
+     * The size of the page (if not provided).
+     */
+    private static final long DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The max size of a page.
+     */
+    private static final long MAX_PAGE_SIZE = 1000;
 
     /**
      * Private constructor.
@@ -52,14 +156,65 @@ public final class ApiRestEndpoints {
         // Nothing here
     }
 
+    /**
+     * Replace the Contratos of the tenants (the previous registry isn't closed).
+     * @param theRegistry the Contratos of each tenant.
+     */
+    static void setRegistry(ContratosRegistry theRegistry) {
+        if (theRegistry == null) throw new IllegalArgumentException("Can't use a registry null");
+        registry = theRegistry;
+    }
+
+    /**
+     * @return the Contratos of each tenant.
+     */
+    static ContratosRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Register the gauges of the executor and the tenants in {@link Metrics}.
+     */
+    static void registerMetrics() {
+        Metrics.gauge("db_executor_pending", "Requests running or waiting for the database.",
+                DATABASE::getPendingCount);
+        Metrics.counter("db_executor_submitted_total", "Requests sent to the database.",
+                DATABASE::getSubmittedCount);
+        Metrics.counter("db_executor_rejected_total", "Requests rejected with 503.",
+                DATABASE::getRejectedCount);
+        Metrics.gauge("tenants_open", "Tenants with the database open.", () -> registry.getOpenCount());
+        Metrics.counter("tenants_rejected_total", "Requests rejected with 503 by the limit of its tenant.",
+                () -> registry.getRejectedCount());
+    }
+
+    /**
+     * GET -> /metrics
+     * @param ctx the Javalin {@link Context}.
+     */
+    public static void getMetrics(Context ctx){
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(Metrics.scrape());
+    }
+
     /**
      * Ruta 1 GET
      * @param ctx the Javalin {@link Context}.
      */
     public static void getAllFichas(Context ctx){
-        log.debug("Getting all the Fichas ..");
-        List<Ficha> fichas = CONTRATOS.getAllFichas();
-        ctx.json(fichas);
+
+        if (notModified(ctx, Ficha.class, Persona.class)) {
+            return;
+        }
+
+        // GET -> /fichas?pageSize={size}&page={number} or /fichas?pageSize={size}&after={id}
+        if (isPaginated(ctx)) {
+            log.debug("Getting a page of Fichas ..");
+            json(ctx, async(ctx, contratos -> page(ctx, contratos::getAllFichas, contratos::getAllFichasAfter, Ficha::getId)));
+            return;
+        }
+
+        log.debug("Streaming all the Fichas ..");
+        ctx.result(async(ctx, contratos -> stream(ctx, Ficha.class, contratos::forEachFicha)));
     }
 
     /**
@@ -90,11 +245,13 @@ public final class ApiRestEndpoints {
         }
         // Create the entitys
         Long idDuenio = Long.parseLong(ctx.queryParam("duenio"));
-        Persona duenio = CONTRATOS.getPersona(idDuenio);
+        json(ctx, async(ctx, contratos -> {
+            Persona duenio = contratos.getPersona(idDuenio);
 
-        Ficha ficha = new Ficha(numero,nombrePaciente,especie,ZonedDateTime.now(),raza,sexo,color,tipo,duenio);
-        CONTRATOS.registrarPaciente(ficha);
-        ctx.json(ficha);
+            Ficha ficha = new Ficha(numero,nombrePaciente,especie,ZonedDateTime.now(),raza,sexo,color,tipo,duenio);
+            contratos.registrarPaciente(ficha);
+            return ficha;
+        }));
     }
 
     /**
@@ -104,9 +261,11 @@ public final class ApiRestEndpoints {
     public static void findFichas(Context ctx){
         String query = ctx.pathParam("query");
         log.debug("Finding Fichas with query <{}> ..", query);
+        if (notModified(ctx, Ficha.class, Persona.class)) {
+            return;
+        }
 
-        List<Ficha> fichas = CONTRATOS.buscarFicha(query);
-        ctx.json(fichas);
+        json(ctx, async(ctx, contratos -> contratos.buscarFicha(query)));
     }
 
     /**
@@ -114,9 +273,20 @@ public final class ApiRestEndpoints {
      * @param ctx the Javalin {@link Context}.
      */
     public static void getAllPersonas(Context ctx){
-        log.debug("Getting all the Personas ..");
-        List<Persona> personas = CONTRATOS.getAllPersonas();
-        ctx.json(personas);
+
+        if (notModified(ctx, Persona.class)) {
+            return;
+        }
+
+        // GET -> /personas?pageSize={size}&page={number} or /personas?pageSize={size}&after={id}
+        if (isPaginated(ctx)) {
+            log.debug("Getting a page of Personas ..");
+            json(ctx, async(ctx, contratos -> page(ctx, contratos::getAllPersonas, contratos::getAllPersonasAfter, Persona::getId)));
+            return;
+        }
+
+        log.debug("Streaming all the Personas ..");
+        ctx.result(async(ctx, contratos -> stream(ctx, Persona.class, contratos::forEachPersona)));
     }
 
     /**
@@ -137,20 +307,37 @@ public final class ApiRestEndpoints {
         // Create the entitys
         Persona persona = new Persona(nombre, apellido, rut, direccion, telefonoFijo, telefonoMovil, email);
 
-        CONTRATOS.registrarPersona(persona);
-
-        ctx.json(persona);
+        json(ctx, async(ctx, contratos -> {
+            try {
+                contratos.registrarPersona(persona);
+            } catch (IllegalArgumentException ex) {
+                throw new ConflictResponse(ex.getMessage());
+            }
+            return persona;
+        }));
     }
 
     /**
      * Ruta 5 GET
+     * GET -> /fichas/{numeroFicha}/controles?pageSize={size}&page={number} (the most recent first)
      * @param ctx the Javalin {@link Context}.
      */
     public static void getControlesOfFicha(Context ctx){
-        log.debug("Finding Controles of Ficha <{}> ..", 1L);
 
-        List<Control> controles = CONTRATOS.getControlesOfFicha(1L);
-        ctx.json(controles);
+        long numero = parsePathLong(ctx, "numeroFicha");
+        log.debug("Finding Controles of Ficha <{}> ..", numero);
+        if (notModified(ctx, Control.class, Ficha.class, Persona.class)) {
+            return;
+        }
+
+        // Only the Controles of the page (ORDER BY fecha DESC LIMIT/OFFSET)
+        if (isPaginated(ctx)) {
+            json(ctx, async(ctx, contratos -> page(ctx,
+                    (limit, offset) -> contratos.getControlesOfFicha(numero, limit, offset), null, Control::getIdControl)));
+            return;
+        }
+
+        json(ctx, async(ctx, contratos -> contratos.getControlesOfFicha(numero)));
     }
 
 
@@ -171,33 +358,437 @@ public final class ApiRestEndpoints {
         String diagnostico = ctx.queryParam("diagnostico");
 
         Long numeroFicha = Long.parseLong(ctx.queryParam("ficha"));
-        Ficha ficha = CONTRATOS.getFicha(numeroFicha);
         Long idVeterinario = Long.parseLong(ctx.queryParam("veterinario"));
-        Persona veterinario = CONTRATOS.getPersona(idVeterinario);
-
-        // New Control
-        Control control = new Control(ZonedDateTime.now(),
-                ZonedDateTime.now().plusDays(15),
-                temperatura,
-                peso,
-                altura,
-                diagnostico,
-                veterinario,
-                ficha);
-        CONTRATOS.registrarControl(control);
-        ctx.json(control);
+        json(ctx, async(ctx, contratos -> {
+            Ficha ficha = contratos.getFicha(numeroFicha);
+            Persona veterinario = contratos.getPersona(idVeterinario);
+            if (ficha == null || veterinario == null) {
+                throw new NotFoundResponse("Ficha or Veterinario not found");
+            }
+
+            // New Control
+            Control control = new Control(ZonedDateTime.now(),
+                    ZonedDateTime.now().plusDays(15),
+                    temperatura,
+                    peso,
+                    altura,
+                    diagnostico,
+                    veterinario,
+                    ficha);
+            contratos.registrarControl(control);
+            return control;
+        }));
     }
 
 
+    /**
+     * Ruta 7 GET: the Controles due between from and to (default: the next 7 days).
+     * GET -> /controles/due?from={iso date}&to={iso date}
+     * @param ctx the Javalin {@link Context}.
+     */
+    public static void getControlesDue(Context ctx){
+
+        ZonedDateTime from = parseDate(ctx, "from", ZonedDateTime.now());
+        ZonedDateTime to = parseDate(ctx, "to", from.plusDays(7));
+        if (from.isAfter(to)) {
+            throw new BadRequestResponse("The from must be before the to");
+        }
+        log.debug("Finding Controles due between {} and {} ..", from, to);
+
+        json(ctx, async(ctx, contratos -> contratos.getControlesDueBetween(from, to)));
+    }
+
     /**
      * Ruta 6 GET
      * @param ctx the Javalin {@link Context}.
      */
     public static void getDuenioOfFicha(Context ctx){
-        log.debug("Finding Persona of Ficha <{}> ..", 1L);
 
-        Persona persona = CONTRATOS.getDuenioOfFicha(1L);
-        ctx.json(persona);
+        long numero = parsePathLong(ctx, "numeroFicha");
+        log.debug("Finding Persona of Ficha <{}> ..", numero);
+        if (notModified(ctx, Ficha.class, Persona.class)) {
+            return;
+        }
+
+        json(ctx, async(ctx, contratos -> {
+            Persona duenio = contratos.getDuenioOfFicha(numero);
+            if (duenio == null) {
+                throw new NotFoundResponse("Ficha not found: " + numero);
+            }
+            return duenio;
+        }));
+    }
+
+    /**
+     * Import (bulk) of Personas, Fichas or Controles.
+     * POST -> /import?tipo={personas|fichas|controles}&format={ndjson|csv}&chunkSize={size}
+     * The body is read as a stream: the rows are never all in memory.
+     * @param ctx the Javalin {@link Context}.
+     */
+    public static void importData(Context ctx){
+
+        String tipo = ctx.queryParam("tipo");
+        String format = ctx.queryParam("format");
+        if (format == null) {
+            String contentType = ctx.contentType();
+            format = contentType != null && contentType.contains("csv") ? "csv" : "ndjson";
+        }
+        long chunkSize = parseLong(ctx, "chunkSize", BulkImporter.DEFAULT_CHUNK_SIZE);
+        if (chunkSize < 1 || chunkSize > BulkImporter.MAX_CHUNK_SIZE) {
+            throw new BadRequestResponse("The chunkSize must be between 1 and " + BulkImporter.MAX_CHUNK_SIZE);
+        }
+        log.debug("Importing {} from {} in chunks of {} ..", tipo, format, chunkSize);
+
+        Reader body;
+        try {
+            body = new InputStreamReader(ctx.req.getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        String theFormat = format;
+        json(ctx, async(ctx, contratos -> {
+            try {
+                return new BulkImporter(contratos).importar(body, tipo, theFormat, (int) chunkSize);
+            } catch (IllegalArgumentException ex) {
+                throw new BadRequestResponse(ex.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * Write the json array to the output stream of the response, one element at time: the list is never
+     * in memory and the first bytes go out before the end of the query (compressed if the client accepts).
+     * @param ctx the Javalin {@link Context}.
+     * @param type of the elements.
+     * @param forEach the iteration over the elements.
+     * @param <T> the type of the elements.
+     * @return nothing (for the future).
+     */
+    private static <T> Void stream(Context ctx, Class<T> type, Consumer<Consumer<T>> forEach) {
+
+        ctx.contentType("application/json");
+        Gson gson = Json.gson(isPretty(ctx));
+        String encoding = contentEncoding(ctx);
+
+        // The headers go out with the first bytes: the Server-Timing of the queries goes after the body
+        if (ctx.res instanceof Response) {
+            ctx.header("Trailer", "Server-Timing");
+            ((Response) ctx.res).setTrailers(() -> {
+                HttpFields trailers = new HttpFields();
+                String timing = ctx.attribute(SERVER_TIMING_ATTRIBUTE);
+                if (timing != null) {
+                    trailers.add("Server-Timing", timing);
+                }
+                return trailers;
+            });
+        }
+
+        try {
+            OutputStream out = ctx.res.getOutputStream();
+            if (encoding != null) {
+                ctx.header(Header.CONTENT_ENCODING, encoding);
+                out = ContentEncoding.wrap(out, encoding);
+            }
+            JsonWriter writer = gson.newJsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            writer.beginArray();
+            forEach.accept(t -> gson.toJson(t, type, writer));
+            writer.endArray();
+            writer.flush();
+
+            // The end of the compressed stream (the response stays open for the trailer)
+            if (out instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) out).finish();
+                out.flush();
+            }
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Write the result as json (compact, or pretty with ?pretty=true) when the future ends.
+     * @param ctx the Javalin {@link Context}.
+     * @param future the result.
+     */
+    private static void json(Context ctx, CompletableFuture<?> future) {
+        boolean pretty = isPretty(ctx);
+        String encoding = contentEncoding(ctx);
+        ctx.contentType("application/json");
+        ctx.result(future.thenApply(result -> {
+            byte[] body = Json.toJson(result, pretty).getBytes(StandardCharsets.UTF_8);
+            if (encoding != null && body.length >= ContentEncoding.MIN_SIZE) {
+                ctx.header(Header.CONTENT_ENCODING, encoding);
+                body = ContentEncoding.encode(body, encoding);
+            }
+            return new ByteArrayInputStream(body);
+        }));
+    }
+
+    /**
+     * @param ctx the Javalin {@link Context}.
+     * @return the compression accepted by the client (gzip, deflate or null).
+     */
+    private static String contentEncoding(Context ctx) {
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        return ContentEncoding.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+    }
+
+    /**
+     * Conditional GET: the ETag is the version of the tables of the response, if the client has the same
+     * (If-None-Match) the answer is 304 without reading the database.
+     * Only with the tenant opened (a new Contratos has new versions, the ETag goes in the next response).
+     * @param ctx the Javalin {@link Context}.
+     * @param tipos the tables of the response.
+     * @return true if answered with 304.
+     */
+    private static boolean notModified(Context ctx, Class<?>... tipos) {
+
+        String tenant = tenant(ctx);
+        Contratos contratos = registry.peek(tenant);
+        if (contratos == null) {
+            return false;
+        }
+
+        // "tenant-version.version-hash of the url and the encoding"
+        StringBuilder etag = new StringBuilder(64).append('"').append(tenant);
+        char separator = '-';
+        for (Class<?> tipo : tipos) {
+            etag.append(separator).append(Long.toHexString(contratos.getVersion(tipo)));
+            separator = '.';
+        }
+        String variant = ctx.path() + '?' + ctx.queryString() + '#'
+                + ContentEncoding.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+        etag.append('-').append(Integer.toHexString(variant.hashCode())).append('"');
+
+        String theEtag = etag.toString();
+        ctx.header(Header.ETAG, theEtag);
+        if (matches(ctx.header(Header.IF_NONE_MATCH), theEtag)) {
+            log.debug("Not modified: {}", theEtag);
+            ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+            ctx.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param ifNoneMatch the header If-None-Match (can be null).
+     * @param etag the ETag of the response.
+     * @return true if some ETag of the client is the same (weak comparison).
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if ("*".equals(trimmed) || etag.equals(trimmed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param ctx the Javalin {@link Context}.
+     * @return true if the json must be indented (?pretty=true).
+     */
+    private static boolean isPretty(Context ctx) {
+        return Boolean.parseBoolean(ctx.queryParam("pretty"));
+    }
+
+    /**
+     * Run the work with the Contratos of the tenant out of the thread of the HTTP server.
+     * The lease is taken before the thread: the requests over the limit of the tenant don't wait.
+     * @param ctx the Javalin {@link Context}.
+     * @param work the work with the database.
+     * @param <T> the type of the result.
+     * @return the future of the result.
+     * @throws ServiceUnavailableResponse if there are too many requests of the tenant or waiting for the database.
+     */
+    private static <T> CompletableFuture<T> async(Context ctx, Function<Contratos, T> work) {
+        String tenant = tenant(ctx);
+        ContratosRegistry.Lease lease = null;
+        try {
+            lease = registry.acquire(tenant);
+            ContratosRegistry.Lease theLease = lease;
+            return DATABASE.supply(() -> {
+                QueryTrace.begin();
+                try {
+                    return work.apply(theLease.get());
+                } finally {
+                    theLease.close();
+                    trace(ctx, QueryTrace.end());
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            if (lease != null) {
+                lease.close();
+            }
+            log.warn("Request rejected: {}", ex.getMessage());
+            ctx.header("Retry-After", "1");
+            throw new ServiceUnavailableResponse("Too many requests, try again later");
+        }
+    }
+
+    /**
+     * Report the queries of the request: Server-Timing (db, the trailer if the body is already sent), a warning
+     * if slow or N+1 and the count for the metrics.
+     * @param ctx the Javalin {@link Context}.
+     * @param trace the queries of the request.
+     */
+    private static void trace(Context ctx, QueryTrace trace) {
+
+        ctx.attribute(QUERIES_ATTRIBUTE, trace.getStatements());
+        if (trace.getStatements() == 0) {
+            return;
+        }
+
+        double millis = trace.getNanos() / 1_000_000d;
+        String desc = trace.getStatements() + " queries";
+        if (trace.getRepeatedCount() >= N_PLUS_ONE_REPEATS) {
+            desc = "N+1 (" + trace.getRepeatedCount() + " repeated of " + trace.getStatements() + ")";
+            Metrics.counter("http_request_n_plus_one_total", "Requests with the same query repeated.",
+                    "route", ctx.matchedPath()).incrementAndGet();
+            log.warn("N+1 in {} {}: {} of {} queries are {}", ctx.method(), ctx.path(),
+                    trace.getRepeatedCount(), trace.getStatements(), trace.getRepeatedShape());
+        } else if (millis >= SLOW_DB_MILLIS || trace.getStatements() >= MAX_STATEMENTS) {
+            log.warn("Slow database in {} {}: {} queries in {} ms", ctx.method(), ctx.path(),
+                    trace.getStatements(), Math.round(millis));
+        }
+        String timing = String.format(Locale.ROOT, "db;dur=%.3f;desc=\"%s\"", millis, desc);
+        ctx.attribute(SERVER_TIMING_ATTRIBUTE, timing);
+        if (!ctx.res.isCommitted()) {
+            ctx.header("Server-Timing", timing);
+        }
+    }
+
+    /**
+     * The tenant from the path (/tenants/{tenant}/v1/..), the header X-Tenant or the default.
+     * @param ctx the Javalin {@link Context}.
+     * @return the name of the tenant.
+     */
+    private static String tenant(Context ctx) {
+        String tenant = ctx.pathParamMap().get("tenant");
+        if (tenant == null) {
+            tenant = ctx.header(TENANT_HEADER);
+        }
+        if (tenant == null || tenant.isEmpty()) {
+            return ContratosRegistry.DEFAULT_TENANT;
+        }
+        if (!ContratosRegistry.isValidTenant(tenant)) {
+            throw new BadRequestResponse("Invalid tenant: " + tenant);
+        }
+        return tenant;
+    }
+
+    /**
+     * @param ctx the Javalin {@link Context}.
+     * @return true if the request has some parameter of pagination.
+     */
+    private static boolean isPaginated(Context ctx) {
+        return ctx.queryParam("pageSize") != null
+                || ctx.queryParam("page") != null
+                || ctx.queryParam("after") != null;
+    }
+
+    /**
+     * Run the paginated query.
+     * - after={id}: keyset (the next page starts after the id), the next url uses the last id of the page.
+     * - page={number}: limit/offset (the first page is 1).
+     * @param ctx the Javalin {@link Context}.
+     * @param byOffset the query (limit, offset).
+     * @param byKeyset the query (lastId, limit), null if only by offset.
+     * @param getId the id of the items.
+     * @param <T> the type of the items.
+     * @return the page.
+     */
+    private static <T> Page<T> page(Context ctx,
+                                    BiFunction<Long, Long, List<T>> byOffset,
+                                    BiFunction<Long, Long, List<T>> byKeyset,
+                                    Function<T, Long> getId) {
+
+        long pageSize = parseLong(ctx, "pageSize", DEFAULT_PAGE_SIZE);
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestResponse("The pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        // Keyset
+        if (ctx.queryParam("after") != null) {
+            if (byKeyset == null) {
+                throw new BadRequestResponse("Paginated by page, the after isn't supported");
+            }
+            Long after = parseLong(ctx, "after", 0);
+            List<T> items = byKeyset.apply(after, pageSize);
+            String next = items.size() < pageSize ? null
+                    : ctx.path() + "?pageSize=" + pageSize + "&after=" + getId.apply(items.get(items.size() - 1));
+            return new Page<>(items, next);
+        }
+
+        // Offset
+        long page = parseLong(ctx, "page", 1);
+        if (page < 1) {
+            throw new BadRequestResponse("The page must be greater than 0");
+        }
+        List<T> items = byOffset.apply(pageSize, (page - 1) * pageSize);
+        String next = items.size() < pageSize ? null
+                : ctx.path() + "?pageSize=" + pageSize + "&page=" + (page + 1);
+        return new Page<>(items, next);
+    }
+
+    /**
+     * @param ctx the Javalin {@link Context}.
+     * @param name of the path parameter.
+     * @return the value of the parameter.
+     */
+    private static long parsePathLong(Context ctx, String name) {
+        try {
+            return Long.parseLong(ctx.pathParam(name));
+        } catch (NumberFormatException ex) {
+            throw new BadRequestResponse("The " + name + " must be a number");
+        }
+    }
+
+    /**
+     * @param ctx the Javalin {@link Context}.
+     * @param name of the query parameter.
+     * @param defaultValue if the parameter is not provided.
+     * @return the value of the parameter (ISO 8601, 2020-05-01T10:15:30-04:00).
+     */
+    private static ZonedDateTime parseDate(Context ctx, String name, ZonedDateTime defaultValue) {
+        String value = ctx.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return ZonedDateTime.parse(value);
+        } catch (DateTimeParseException ex) {
+            throw new BadRequestResponse("The " + name + " must be a date (2020-05-01T10:15:30-04:00)");
+        }
+    }
+
+    /**
+     * @param ctx the Javalin {@link Context}.
+     * @param name of the query parameter.
+     * @param defaultValue if the parameter is not provided.
+     * @return the value of the parameter.
+     */
+    private static long parseLong(Context ctx, String name, long defaultValue) {
+        String value = ctx.queryParam(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new BadRequestResponse("The " + name + " must be a number");
+        }
     }
 
 }
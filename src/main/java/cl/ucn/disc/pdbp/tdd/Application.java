@@ -24,10 +24,11 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
+import cl.ucn.disc.pdbp.tdd.json.Json;
+import cl.ucn.disc.pdbp.tdd.metrics.JvmMetrics;
+import cl.ucn.disc.pdbp.tdd.metrics.Metrics;
 import cl.ucn.disc.pdbp.tdd.model.Ficha;
 import cl.ucn.disc.pdbp.tdd.model.Persona;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import io.javalin.Javalin;
 import io.javalin.apibuilder.ApiBuilder;
 import io.javalin.core.util.RouteOverviewPlugin;
@@ -63,84 +64,59 @@ public final class Application {
      */
     public static void main(String[] args){
 
-        // Gson configuration
-        Gson gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .create();
+        // Gson configuration (compact, pretty only with ?pretty=true)
+        JavalinJson.setFromJsonMapper(Json.GSON::fromJson);
+        JavalinJson.setToJsonMapper(Json.GSON::toJson);
 
-        JavalinJson.setFromJsonMapper(gson::fromJson);
-        JavalinJson.setToJsonMapper(gson::toJson);
+        // The metrics of the JVM and the database
+        JvmMetrics.register();
+        ApiRestEndpoints.registerMetrics();
 
         // The Javalin application
         log.debug("Starting Javalin ..");
         Javalin javalin = Javalin.create(javalinConfig -> {
 
-            // enable extensive development logging for http and websocket
-            javalinConfig.enableDevLogging();
+            // enable extensive development logging for http and websocket (not in production)
+            if (log.isDebugEnabled()) {
+                javalinConfig.enableDevLogging();
+            }
 
             // Measure the time
             javalinConfig.requestLogger(((ctx, executionTimeMs) -> {
                 // Tiempo que se ejecuta en iniciar el servidor
-                log.info("Server {} in {} ms.", ctx.fullUrl(), executionTimeMs);
-                ctx.header("Server-Timing", "total;dur=" + executionTimeMs);
+                if (log.isInfoEnabled()) {
+                    log.info("Server {} in {} ms.", ctx.fullUrl(), executionTimeMs);
+                }
+                // After the db timing of the endpoint (if any)
+                ctx.res.addHeader("Server-Timing", "total;dur=" + executionTimeMs);
+
+                // The latency and queries of the route (the template, not the url)
+                String route = ctx.matchedPath().isEmpty() ? "unmatched" : ctx.matchedPath();
+                Metrics.timer("http_request_duration_seconds", "Latency of the requests.",
+                        "method", ctx.method(), "route", route)
+                        .record((long) (executionTimeMs * 1_000_000));
+                Integer queries = ctx.attribute(ApiRestEndpoints.QUERIES_ATTRIBUTE);
+                if (queries != null) {
+                    Metrics.distribution("http_request_db_queries", "Queries to the database by request.",
+                            "method", ctx.method(), "route", route)
+                            .record(queries);
+                }
             }));
 
+            // The compression (gzip or deflate) is done by the endpoints
+            javalinConfig.compressionStrategy(null, null);
+
             // Enable routes helper
             javalinConfig.registerPlugin(new RouteOverviewPlugin("/routes"));
         // Define the routes
         }).routes(() -> {
 
-            // The version
-            ApiBuilder.path("v1", () -> {
-
-                // /fichas
-                ApiBuilder.path("fichas", () -> {
-
-                    // GET -> /fichas
-                    ApiBuilder.get(ApiRestEndpoints::getAllFichas);
-
-                    // POST -> /fichas
-                    ApiBuilder.post(ApiRestEndpoints::createFicha);
-
-                    // GET -> /fichas/find/{query}
-                    ApiBuilder.path("find/:query",()->{
-                        ApiBuilder.get(ApiRestEndpoints::findFichas);
-                    });
-
-                    // /fichas/{numeroFicha}/controles
-                    ApiBuilder.path(":numeroFicha/controles",()->{
-
-                        // POST -> /fichas/{numeroFicha}/controles
-                        ApiBuilder.post(ApiRestEndpoints::createControl);
-
-                        // GET -> /fichas/{numeroFicha}/controles
-                        ApiBuilder.get(ApiRestEndpoints::getControlesOfFicha);
-
-                    });
-
-                    // /fichas/{numeroFicha}/persona
-                    ApiBuilder.path(":numeroFicha/persona",()->{
-
-                        // GET -> /fichas/{numeroFicha}/persona
-                        ApiBuilder.get(ApiRestEndpoints::getDuenioOfFicha);
-
-                    });
-                });
+            // The version (the default tenant or the header X-Tenant)
+            ApiBuilder.path("v1", Application::routesV1);
 
-                // /personas
-                ApiBuilder.path("personas",()->{
+            // The version of a tenant (clinic)
+            ApiBuilder.path("tenants/:tenant/v1", Application::routesV1);
 
-                    // GET -> /personas
-                    ApiBuilder.get(ApiRestEndpoints::getAllPersonas);
-
-                    // POST -> /personas
-                    ApiBuilder.path("?",()->{
-                        ApiBuilder.post(ApiRestEndpoints::createPersona);
-                    });
-                    // GET -> /personas/?/pageSize={size}&page={number}
-
-                });
-            });
             // Start the server at port 7000
         }).start(7000);
 
@@ -148,9 +124,13 @@ public final class Application {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 log.debug("Stopping the server ..");
                 javalin.stop();
+                ApiRestEndpoints.getRegistry().close();
                 log.debug("The end.");
         }));
 
+        // GET -> /metrics (Prometheus)
+        javalin.get("/metrics", ApiRestEndpoints::getMetrics);
+
         // A simple route to show time
         javalin.get("/", ctx -> {
             // Show the date.
@@ -185,4 +165,76 @@ public final class Application {
 
     }
 
+    /**
+     * The routes of the version 1.
+     */
+    private static void routesV1() {
+
+        // /fichas
+        ApiBuilder.path("fichas", () -> {
+
+            // GET -> /fichas
+            // GET -> /fichas?pageSize={size}&page={number}
+            // GET -> /fichas?pageSize={size}&after={id}
+            ApiBuilder.get(ApiRestEndpoints::getAllFichas);
+
+            // POST -> /fichas
+            ApiBuilder.post(ApiRestEndpoints::createFicha);
+
+            // GET -> /fichas/find/{query}
+            ApiBuilder.path("find/:query",()->{
+                ApiBuilder.get(ApiRestEndpoints::findFichas);
+            });
+
+            // /fichas/{numeroFicha}/controles
+            ApiBuilder.path(":numeroFicha/controles",()->{
+
+                // POST -> /fichas/{numeroFicha}/controles
+                ApiBuilder.post(ApiRestEndpoints::createControl);
+
+                // GET -> /fichas/{numeroFicha}/controles
+                ApiBuilder.get(ApiRestEndpoints::getControlesOfFicha);
+
+            });
+
+            // /fichas/{numeroFicha}/persona
+            ApiBuilder.path(":numeroFicha/persona",()->{
+
+                // GET -> /fichas/{numeroFicha}/persona
+                ApiBuilder.get(ApiRestEndpoints::getDuenioOfFicha);
+
+            });
+        });
+
+        // /personas
+        ApiBuilder.path("personas",()->{
+
+            // GET -> /personas
+            // GET -> /personas?pageSize={size}&page={number}
+            // GET -> /personas?pageSize={size}&after={id}
+            ApiBuilder.get(ApiRestEndpoints::getAllPersonas);
+
+            // POST -> /personas
+            ApiBuilder.path("?",()->{
+                ApiBuilder.post(ApiRestEndpoints::createPersona);
+            });
+
+        });
+
+        // /controles
+        ApiBuilder.path("controles",()->{
+
+            // GET -> /controles/due?from={date}&to={date}
+            ApiBuilder.path("due",()->{
+                ApiBuilder.get(ApiRestEndpoints::getControlesDue);
+            });
+
+        });
+
+        // POST -> /import?tipo={personas|fichas|controles}&format={ndjson|csv}&chunkSize={size}
+        ApiBuilder.path("import",()->{
+            ApiBuilder.post(ApiRestEndpoints::importData);
+        });
+    }
+
 }
@@ -0,0 +1,570 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd;
+
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.model.Sexo;
+import cl.ucn.disc.pdbp.tdd.model.Tipo;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Import of Personas, Fichas or Controles from NDJSON (one json object per line) or CSV (with header).
+ * The rows are read one by one, validated by the constructors of the model and registered in chunks
+ * (one transaction per chunk): a wrong row is skipped, a failed chunk is rolled back and the import goes on.
+ * The names of the fields are the same of the parameters of the POST routes.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class BulkImporter {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BulkImporter.class);
+
+    /**
+     * The size of the chunk (if not provided).
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * The max size of the chunk.
+     */
+    public static final int MAX_CHUNK_SIZE = 10_000;
+
+    /**
+     * Max number of errors in the report.
+     */
+    private static final int MAX_ERRORS = 100;
+
+    /**
+     * Max number of Fichas remembered by numero (for the Controles).
+     */
+    private static final int MAX_FICHAS = 10_000;
+
+    /**
+     * The Contratos.
+     */
+    private final Contratos contratos;
+
+    /**
+     * The Constructor.
+     *
+     * @param contratos to use.
+     */
+    public BulkImporter(Contratos contratos) {
+        if (contratos == null) throw new IllegalArgumentException("Can't import with contratos null");
+        this.contratos = contratos;
+    }
+
+    /**
+     * Import the rows.
+     *
+     * @param reader    of the rows.
+     * @param tipo      personas, fichas or controles.
+     * @param format    ndjson or csv.
+     * @param chunkSize number of rows by transaction.
+     * @return the report.
+     */
+    public Report importar(Reader reader, String tipo, String format, int chunkSize) {
+
+        // Nullity
+        if (reader == null) throw new IllegalArgumentException("Can't import with reader null");
+        if (tipo == null) throw new IllegalArgumentException("The tipo is required (personas, fichas or controles)");
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("The chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+
+        boolean csv;
+        if ("csv".equalsIgnoreCase(format)) {
+            csv = true;
+        } else if (format == null || "ndjson".equalsIgnoreCase(format)) {
+            csv = false;
+        } else {
+            throw new IllegalArgumentException("The format must be ndjson or csv");
+        }
+
+        switch (tipo.toLowerCase()) {
+            case "personas":
+                return this.run(reader, csv, chunkSize, "personas", BulkImporter::toPersona,
+                        this.contratos::registrarPersonas);
+            case "fichas":
+                return this.run(reader, csv, chunkSize, "fichas", this::toFicha,
+                        this.contratos::registrarPacientes);
+            case "controles":
+                Map<Long, Ficha> fichas = new HashMap<>();
+                return this.run(reader, csv, chunkSize, "controles", row -> this.toControl(row, fichas),
+                        this.contratos::registrarControles);
+            default:
+                throw new IllegalArgumentException("The tipo must be personas, fichas or controles");
+        }
+    }
+
+    /**
+     * Read, validate and register the rows.
+     *
+     * @param reader    of the rows.
+     * @param csv       true if CSV, false if NDJSON.
+     * @param chunkSize number of rows by transaction.
+     * @param tipo      of the rows.
+     * @param mapper    from the row to T.
+     * @param registrar of the chunk of T.
+     * @param <T>       the type of model domain.
+     * @return the report.
+     */
+    private <T> Report run(Reader reader,
+                           boolean csv,
+                           int chunkSize,
+                           String tipo,
+                           Function<Map<String, String>, T> mapper,
+                           Function<List<T>, Integer> registrar) {
+
+        Report report = new Report(tipo, csv ? "csv" : "ndjson", chunkSize);
+        long start = System.nanoTime();
+
+        List<T> chunk = new ArrayList<>(chunkSize);
+        long chunkFirstLine = 0;
+        long line = 0;
+
+        try {
+            BufferedReader lines = reader instanceof BufferedReader
+                    ? (BufferedReader) reader : new BufferedReader(reader);
+
+            // The header of the CSV
+            String[] header = null;
+            if (csv) {
+                String first = lines.readLine();
+                line++;
+                if (first == null) {
+                    return report.finish(start);
+                }
+                header = splitCsv(first);
+            }
+
+            String text;
+            while ((text = lines.readLine()) != null) {
+                line++;
+                if (text.trim().isEmpty()) {
+                    continue;
+                }
+                report.rows++;
+
+                // Validate
+                T t;
+                try {
+                    t = mapper.apply(csv ? toRow(header, splitCsv(text)) : toRow(text));
+                } catch (RuntimeException ex) {
+                    report.failed++;
+                    report.error("line " + line + ": " + ex.getMessage());
+                    continue;
+                }
+
+                if (chunk.isEmpty()) {
+                    chunkFirstLine = line;
+                }
+                chunk.add(t);
+
+                // Commit
+                if (chunk.size() == chunkSize) {
+                    this.commit(report, chunk, registrar, chunkFirstLine, line);
+                }
+            }
+            this.commit(report, chunk, registrar, chunkFirstLine, line);
+
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        report.finish(start);
+        log.debug("Imported {} of {} {} in {} ms ({} rows/s).",
+                report.imported, report.rows, tipo, report.millis, report.rowsPerSecond);
+        return report;
+    }
+
+    /**
+     * Register the chunk (all or nothing) and clear it.
+     */
+    private <T> void commit(Report report,
+                            List<T> chunk,
+                            Function<List<T>, Integer> registrar,
+                            long firstLine,
+                            long lastLine) {
+
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            report.imported += registrar.apply(chunk);
+        } catch (RuntimeException ex) {
+            log.warn("Can't import the lines {} to {}", firstLine, lastLine, ex);
+            report.failed += chunk.size();
+            report.error("lines " + firstLine + "-" + lastLine + ": " + ex.getMessage());
+        }
+        report.chunks++;
+        chunk.clear();
+    }
+
+    /**
+     * @param row the fields.
+     * @return the Persona.
+     */
+    private static Persona toPersona(Map<String, String> row) {
+        return new Persona(row.get("nombre"),
+                row.get("apellido"),
+                row.get("rut"),
+                row.get("direccion"),
+                Integer.parseInt(required(row, "telefonoFijo")),
+                Integer.parseInt(required(row, "telefonoMovil")),
+                row.get("email"));
+    }
+
+    /**
+     * @param row the fields.
+     * @return the Ficha.
+     */
+    private Ficha toFicha(Map<String, String> row) {
+
+        Long idDuenio = Long.parseLong(required(row, "duenio"));
+        Persona duenio = this.contratos.getPersona(idDuenio);
+        if (duenio == null) {
+            throw new IllegalArgumentException("Persona " + idDuenio + " not found");
+        }
+
+        String fechaNacimiento = row.get("fechaNacimiento");
+        return new Ficha(Long.parseLong(required(row, "numero")),
+                row.get("nombrePaciente"),
+                row.get("especie"),
+                fechaNacimiento == null ? ZonedDateTime.now() : ZonedDateTime.parse(fechaNacimiento),
+                row.get("raza"),
+                "hembra".equalsIgnoreCase(row.get("sexo")) ? Sexo.HEMBRA : Sexo.MACHO,
+                row.get("color"),
+                "externo".equalsIgnoreCase(row.get("tipo")) ? Tipo.EXTERNO : Tipo.INTERNO,
+                duenio);
+    }
+
+    /**
+     * @param row    the fields.
+     * @param fichas already found, by numero.
+     * @return the Control.
+     */
+    private Control toControl(Map<String, String> row, Map<Long, Ficha> fichas) {
+
+        Long idVeterinario = Long.parseLong(required(row, "veterinario"));
+        Persona veterinario = this.contratos.getPersona(idVeterinario);
+        if (veterinario == null) {
+            throw new IllegalArgumentException("Persona " + idVeterinario + " not found");
+        }
+
+        Long numero = Long.parseLong(required(row, "ficha"));
+        Ficha ficha = fichas.get(numero);
+        if (ficha == null) {
+            ficha = this.contratos.getFicha(numero);
+            if (ficha == null) {
+                throw new IllegalArgumentException("Ficha " + numero + " not found");
+            }
+            if (fichas.size() == MAX_FICHAS) {
+                fichas.clear();
+            }
+            fichas.put(numero, ficha);
+        }
+
+        return new Control(ZonedDateTime.parse(required(row, "fecha")),
+                ZonedDateTime.parse(required(row, "fechaProximoControl")),
+                Double.parseDouble(required(row, "temperatura")),
+                Double.parseDouble(required(row, "peso")),
+                Double.parseDouble(required(row, "altura")),
+                row.get("diagnostico"),
+                veterinario,
+                ficha);
+    }
+
+    /**
+     * @param row  the fields.
+     * @param name of the field.
+     * @return the value of the field.
+     */
+    private static String required(Map<String, String> row, String name) {
+        String value = row.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("The " + name + " is required");
+        }
+        return value;
+    }
+
+    /**
+     * @param text the json object.
+     * @return the fields (without the nulls).
+     */
+    private static Map<String, String> toRow(String text) {
+
+        JsonElement json = JsonParser.parseString(text);
+        if (!json.isJsonObject()) {
+            throw new IllegalArgumentException("Not a json object");
+        }
+
+        Map<String, String> row = new HashMap<>();
+        for (Map.Entry<String, JsonElement> field : ((JsonObject) json).entrySet()) {
+            if (!field.getValue().isJsonNull()) {
+                row.put(field.getKey(), field.getValue().getAsString());
+            }
+        }
+        return row;
+    }
+
+    /**
+     * @param header the names of the columns.
+     * @param values the values of the columns.
+     * @return the fields (without the empty values).
+     */
+    private static Map<String, String> toRow(String[] header, String[] values) {
+
+        if (values.length != header.length) {
+            throw new IllegalArgumentException("Expected " + header.length + " columns, found " + values.length);
+        }
+
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            if (!values[i].isEmpty()) {
+                row.put(header[i], values[i]);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Split a line of CSV: the values with comma or quotes go between quotes, the quotes are doubled.
+     *
+     * @param line to split.
+     * @return the values.
+     */
+    static String[] splitCsv(String line) {
+
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quotes");
+        }
+        values.add(value.toString().trim());
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * The result of the import.
+     */
+    public static final class Report {
+
+        /**
+         * Personas, fichas or controles.
+         */
+        private final String tipo;
+
+        /**
+         * Ndjson or csv.
+         */
+        private final String format;
+
+        /**
+         * Number of rows by transaction.
+         */
+        private final int chunkSize;
+
+        /**
+         * Number of rows read.
+         */
+        private long rows;
+
+        /**
+         * Number of rows registered.
+         */
+        private long imported;
+
+        /**
+         * Number of rows not registered.
+         */
+        private long failed;
+
+        /**
+         * Number of transactions.
+         */
+        private long chunks;
+
+        /**
+         * Time of the import.
+         */
+        private long millis;
+
+        /**
+         * Rows registered by second.
+         */
+        private long rowsPerSecond;
+
+        /**
+         * The first errors.
+         */
+        private final List<String> errors = new ArrayList<>();
+
+        /**
+         * The Constructor.
+         */
+        Report(String tipo, String format, int chunkSize) {
+            this.tipo = tipo;
+            this.format = format;
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * @param error to save (only the first ones).
+         */
+        void error(String error) {
+            if (this.errors.size() < MAX_ERRORS) {
+                this.errors.add(error);
+            }
+        }
+
+        /**
+         * @param start of the import (nanos).
+         * @return the report.
+         */
+        Report finish(long start) {
+            long nanos = Math.max(1, System.nanoTime() - start);
+            this.millis = nanos / 1_000_000;
+            this.rowsPerSecond = this.imported * 1_000_000_000L / nanos;
+            return this;
+        }
+
+        /**
+         * @return personas, fichas or controles.
+         */
+        public String getTipo() {
+            return this.tipo;
+        }
+
+        /**
+         * @return ndjson or csv.
+         */
+        public String getFormat() {
+            return this.format;
+        }
+
+        /**
+         * @return the number of rows by transaction.
+         */
+        public int getChunkSize() {
+            return this.chunkSize;
+        }
+
+        /**
+         * @return the number of rows read.
+         */
+        public long getRows() {
+            return this.rows;
+        }
+
+        /**
+         * @return the number of rows registered.
+         */
+        public long getImported() {
+            return this.imported;
+        }
+
+        /**
+         * @return the number of rows not registered.
+         */
+        public long getFailed() {
+            return this.failed;
+        }
+
+        /**
+         * @return the number of transactions.
+         */
+        public long getChunks() {
+            return this.chunks;
+        }
+
+        /**
+         * @return the time of the import.
+         */
+        public long getMillis() {
+            return this.millis;
+        }
+
+        /**
+         * @return the rows registered by second.
+         */
+        public long getRowsPerSecond() {
+            return this.rowsPerSecond;
+        }
+
+        /**
+         * @return the first errors.
+         */
+        public List<String> getErrors() {
+            return this.errors;
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression of the responses: gzip or deflate, as the client accepts (Accept-Encoding).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+final class ContentEncoding {
+
+    /**
+     * The gzip encoding.
+     */
+    static final String GZIP = "gzip";
+
+    /**
+     * The deflate encoding.
+     */
+    static final String DEFLATE = "deflate";
+
+    /**
+     * The smaller bodies aren't compressed (the headers of gzip cost more than they save).
+     */
+    static final int MIN_SIZE = 1024;
+
+    /**
+     * Private constructor.
+     */
+    private ContentEncoding() {
+        // Nothing here
+    }
+
+    /**
+     * @param acceptEncoding the header Accept-Encoding (can be null).
+     * @return gzip, deflate (in that order) or null if the client accepts none.
+     */
+    static String negotiate(String acceptEncoding) {
+
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String coding : acceptEncoding.split(",")) {
+
+            // gzip;q=0.5
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException ex) {
+                        accepted = false;
+                    }
+                }
+            }
+
+            if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+                gzip = gzip || accepted;
+            } else if (DEFLATE.equalsIgnoreCase(name)) {
+                deflate = accepted;
+            }
+        }
+        return gzip ? GZIP : deflate ? DEFLATE : null;
+    }
+
+    /**
+     * @param out      the stream of the response.
+     * @param encoding gzip or deflate.
+     * @return the stream that compress to out (must be closed to finish).
+     */
+    static OutputStream wrap(OutputStream out, String encoding) {
+        try {
+            return GZIP.equals(encoding) ? new GZIPOutputStream(out) : new DeflaterOutputStream(out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @param body     the bytes.
+     * @param encoding gzip or deflate.
+     * @return the bytes compressed.
+     */
+    static byte[] encode(byte[] body, String encoding) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream out = wrap(compressed, encoding)) {
+            out.write(body);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return compressed.toByteArray();
+    }
+
+}
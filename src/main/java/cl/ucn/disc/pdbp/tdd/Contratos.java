@@ -28,7 +28,9 @@ import cl.ucn.disc.pdbp.tdd.model.Control;
 import cl.ucn.disc.pdbp.tdd.model.Ficha;
 import cl.ucn.disc.pdbp.tdd.model.Persona;
 
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * @author Ignacio Santander Quiñones
@@ -49,10 +51,24 @@ public interface Contratos {
      */
     Persona registrarPersona(Persona persona);
 
+    /**
+     * Contrato: C01 - Registrar los datos de varios Pacientes en una sola transaccion.
+     * @param fichas las fichas
+     * @return la cantidad de fichas registradas
+     */
+    int registrarPacientes(List<Ficha> fichas);
+
+    /**
+     * Contrato: C02 - Registrar los datos de varias Personas en una sola transaccion.
+     * @param personas las personas
+     * @return la cantidad de personas registradas
+     */
+    int registrarPersonas(List<Persona> personas);
+
     /**
      *  Contrato: C03 - Buscar una Ficha.
      * @param query la consulta
-     * @return la lista de fichas
+     * @return la lista de fichas, las mas relevantes primero
      */
     List<Ficha> buscarFicha(String query);
 
@@ -62,6 +78,28 @@ public interface Contratos {
      */
     List<Ficha> getAllFichas();
 
+    /**
+     * Ruta 1 GET (paginada)
+     * @param limit cantidad maxima de fichas.
+     * @param offset cantidad de fichas a saltar.
+     * @return la pagina de fichas, ordenadas por id.
+     */
+    List<Ficha> getAllFichas(long limit, long offset);
+
+    /**
+     * Ruta 1 GET (paginada por cursor)
+     * @param lastId el id de la ultima ficha de la pagina anterior (null para la primera pagina).
+     * @param limit cantidad maxima de fichas.
+     * @return las fichas con id mayor a lastId, ordenadas por id.
+     */
+    List<Ficha> getAllFichasAfter(Long lastId, long limit);
+
+    /**
+     * Ruta 1 GET (streaming): recorre todas las fichas sin cargar la lista en memoria.
+     * @param consumer que recibe cada ficha, ordenadas por id.
+     */
+    void forEachFicha(Consumer<Ficha> consumer);
+
     /**
      * Ruta 1 POST getPersona para duenio
      */
@@ -73,6 +111,28 @@ public interface Contratos {
      */
     List<Persona> getAllPersonas();
 
+    /**
+     * Ruta 3 GET (paginada)
+     * @param limit cantidad maxima de personas.
+     * @param offset cantidad de personas a saltar.
+     * @return la pagina de personas, ordenadas por id.
+     */
+    List<Persona> getAllPersonas(long limit, long offset);
+
+    /**
+     * Ruta 3 GET (paginada por cursor)
+     * @param lastId el id de la ultima persona de la pagina anterior (null para la primera pagina).
+     * @param limit cantidad maxima de personas.
+     * @return las personas con id mayor a lastId, ordenadas por id.
+     */
+    List<Persona> getAllPersonasAfter(Long lastId, long limit);
+
+    /**
+     * Ruta 3 GET (streaming): recorre todas las personas sin cargar la lista en memoria.
+     * @param consumer que recibe cada persona, ordenadas por id.
+     */
+    void forEachPersona(Consumer<Persona> consumer);
+
     /**
      * Ruta 5 GET
      * @param numero de la ficha
@@ -80,13 +140,49 @@ public interface Contratos {
      */
     List<Control> getControlesOfFicha(Long numero);
 
+    /**
+     * Ruta 5 GET (paginada): solo se leen los controles de la pagina.
+     * @param numero de la ficha.
+     * @param limit cantidad maxima de controles.
+     * @param offset cantidad de controles a saltar.
+     * @return la pagina de Controles de la Ficha, del mas reciente al mas antiguo (vacia si la ficha no existe).
+     */
+    List<Control> getControlesOfFicha(Long numero, long limit, long offset);
+
+    /**
+     * Ruta 7 GET
+     * @param from fecha inicial (inclusive).
+     * @param to fecha final (inclusive).
+     * @return los controles con fecha del proximo control entre from y to, ordenados por esa fecha.
+     */
+    List<Control> getControlesDueBetween(ZonedDateTime from, ZonedDateTime to);
+
+    /**
+     * La version de los datos de una tabla, cambia con cada registro (sin consultar la base de datos).
+     * @param tipo la clase de la tabla (Ficha, Persona o Control).
+     * @return la version.
+     */
+    long getVersion(Class<?> tipo);
+
     /**
      * Ruta 5 POST
      * @param numero de la ficha
-     * @return la ficha.
+     * @return la ficha (null si no existe).
      */
     Ficha getFicha(Long numero);
 
+    /**
+     * @param rut de la persona
+     * @return la persona (null si no existe).
+     */
+    Persona getPersonaByRut(String rut);
+
+    /**
+     * @param email de la persona
+     * @return la persona (null si no existe).
+     */
+    Persona getPersonaByEmail(String email);
+
     /**
      * Ruta 5 POST
      * @param control el control a registrar
@@ -94,10 +190,17 @@ public interface Contratos {
      */
     Control registrarControl(Control control);
 
+    /**
+     * Ruta 5 POST: registrar varios controles en una sola transaccion.
+     * @param controles los controles a registrar
+     * @return la cantidad de controles registrados.
+     */
+    int registrarControles(List<Control> controles);
+
     /**
      * Ruta 6 GET
      * @param numero de la ficha
-     * @return la Persona (Duenio) de Ficha.
+     * @return la Persona (Duenio) de Ficha (null si la ficha no existe).
      */
     Persona getDuenioOfFicha(Long numero);
 
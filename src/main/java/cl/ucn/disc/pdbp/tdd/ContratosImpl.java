@@ -24,35 +24,67 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
+import cl.ucn.disc.pdbp.tdd.dao.CachedRepository;
+import cl.ucn.disc.pdbp.tdd.dao.ConnectionPoolConfig;
+import cl.ucn.disc.pdbp.tdd.dao.Cursor;
+import cl.ucn.disc.pdbp.tdd.dao.GroupCommitWriter;
+import cl.ucn.disc.pdbp.tdd.dao.Migration;
+import cl.ucn.disc.pdbp.tdd.dao.PooledConnectionSource;
 import cl.ucn.disc.pdbp.tdd.dao.Repository;
 import cl.ucn.disc.pdbp.tdd.dao.RepositoryOrmLite;
+import cl.ucn.disc.pdbp.tdd.dao.SchemaMigrator;
+import cl.ucn.disc.pdbp.tdd.dao.SqliteConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.TracingConnectionSource;
+import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeEpochType;
+import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeMigration;
+import cl.ucn.disc.pdbp.tdd.index.FichaSearchIndex;
+import cl.ucn.disc.pdbp.tdd.index.NaturalKeyIndex;
+import cl.ucn.disc.pdbp.tdd.metrics.Metrics;
 
 import cl.ucn.disc.pdbp.tdd.model.Control;
 import cl.ucn.disc.pdbp.tdd.model.Ficha;
 import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.utils.ScalableBloomFilter;
+import cl.ucn.disc.pdbp.utils.Validation;
 
-import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.field.SqlType;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.StatementBuilder;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.stmt.Where;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
 import com.j256.ormlite.table.TableUtils;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
+import java.time.ZonedDateTime;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Implementation of Contratos.
  * @author Ignacio Santander Quiñones
  */
-public class ContratosImpl implements Contratos{
+public class ContratosImpl implements Contratos, AutoCloseable{
 
     /**
      * Logger
@@ -60,9 +92,60 @@ public class ContratosImpl implements Contratos{
     private static final Logger log = LoggerFactory.getLogger(ContratosImpl.class);
 
     /**
-     * ConnectionSource
+     * Max number of Fichas and Personas in the cache
      */
-    private ConnectionSource connectionSource;
+    private static final int CACHE_SIZE = 10_000;
+
+    /**
+     * Time to live of the Fichas and Personas in the cache
+     */
+    private static final long CACHE_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Max number of writes committed together (SQLite)
+     */
+    private static final int MAX_GROUP_SIZE = 256;
+
+    /**
+     * Capacidad inicial del filtro de ruts
+     */
+    private static final int RUTS_CAPACITY = 16_384;
+
+    /**
+     * Tasa maxima de falsos positivos del filtro de ruts
+     */
+    private static final double RUTS_FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * The versions of the schema (append only: a change of the schema is a new version)
+     */
+    private static final SchemaMigrator MIGRATIONS = new SchemaMigrator()
+            .add(1, "Dates of Control as epoch", cs -> ZonedDateTimeMigration.migrate(cs, Control.class))
+            .add(2, "Tables of Ficha, Persona and Control", cs -> {
+                TableUtils.createTableIfNotExists(cs, Ficha.class);
+                TableUtils.createTableIfNotExists(cs, Persona.class);
+                TableUtils.createTableIfNotExists(cs, Control.class);
+            })
+            .add(3, "Indexes of Persona and Control in the tables created before the indexes", Migration.sql(
+                    "CREATE INDEX IF NOT EXISTS `Persona_rut_idx` ON `Persona` (`rut`)",
+                    "CREATE INDEX IF NOT EXISTS `Persona_email_idx` ON `Persona` (`email`)",
+                    "CREATE INDEX IF NOT EXISTS `control_fecha_idx` ON `control` (`fecha`)",
+                    "CREATE INDEX IF NOT EXISTS `control_fechaProximoControl_idx` ON `control` (`fechaProximoControl`)",
+                    "CREATE INDEX IF NOT EXISTS `control_ficha_idx` ON `control` (`ficha_id`)"))
+            .add(4, "Ruts of Persona without zeros at left (as normalized by Persona)", ContratosImpl::normalizeRuts)
+            .add(5, "Unique index of the rut of Persona", Migration.sql(
+                    "DROP INDEX IF EXISTS `Persona_rut_idx`",
+                    "CREATE UNIQUE INDEX `Persona_rut_idx` ON `Persona` (`rut`)"));
+
+    /**
+     * ConnectionSource (pool of connections)
+     */
+    private PooledConnectionSource connectionSource;
+
+    /**
+     * The single writer (only with SQLite, null otherwise)
+     */
+    private GroupCommitWriter writer;
 
     /**
      * Repositorio Ficha
@@ -80,22 +163,157 @@ public class ContratosImpl implements Contratos{
     private Repository<Control, Long> repoControl;
 
     /**
-     * The Constructor.
+     * Indice de busqueda de Fichas
+     */
+    private final FichaSearchIndex fichaIndex = new FichaSearchIndex();
+
+    /**
+     * Indice de la clave natural de Ficha: numero -> id
+     */
+    private final NaturalKeyIndex<Long, Ficha> fichaPorNumero = new NaturalKeyIndex<>(Ficha::getNumero, Ficha::getId);
+
+    /**
+     * Indice de la clave natural de Persona: rut -> id
+     */
+    private final NaturalKeyIndex<String, Persona> personaPorRut = new NaturalKeyIndex<>(Persona::getRut, Persona::getId);
+
+    /**
+     * Indice de la clave natural de Persona: email -> id
+     */
+    private final NaturalKeyIndex<String, Persona> personaPorEmail = new NaturalKeyIndex<>(Persona::getEmail, Persona::getId);
+
+    /**
+     * Filtro de Bloom de los ruts registrados
+     */
+    private final ScalableBloomFilter ruts = new ScalableBloomFilter(RUTS_CAPACITY, RUTS_FALSE_POSITIVE_RATE);
+
+    /**
+     * true cuando el filtro tiene todos los ruts de la BD
+     */
+    private volatile boolean rutsLoaded;
+
+    /**
+     * Ruts nuevos (el filtro dijo que no)
+     */
+    private final AtomicLong rutsNegative = new AtomicLong();
+
+    /**
+     * Falsos positivos del filtro
+     */
+    private final AtomicLong rutsFalsePositive = new AtomicLong();
+
+    /**
+     * Ruts revisados en la BD mientras el filtro se carga
+     */
+    private final AtomicLong rutsUnloaded = new AtomicLong();
+
+    /**
+     * Ruts repetidos (rechazados)
+     */
+    private final AtomicLong rutsDuplicate = new AtomicLong();
+
+    /**
+     * The load of the index (in background)
+     */
+    private CompletableFuture<Void> fichaIndexLoad;
+
+    /**
+     * true after the close (the load of the index stops)
+     */
+    private volatile boolean closed;
+
+    /**
+     * The Constructor (with the default pool of connections).
      * @param databaseUrl jdbc string to connect to backend.
      */
     public ContratosImpl(String databaseUrl){
+        this(databaseUrl, ConnectionPoolConfig.DEFAULT);
+    }
+
+    /**
+     * The Constructor.
+     * @param databaseUrl jdbc string to connect to backend.
+     * @param poolConfig the configuration of the pool of connections.
+     */
+    public ContratosImpl(String databaseUrl, ConnectionPoolConfig poolConfig){
         if(databaseUrl == null) throw new IllegalArgumentException("Can't create Contratos with databaseUrl null");
+        if(poolConfig == null) throw new IllegalArgumentException("Can't create Contratos with poolConfig null");
 
         try{
-            this.connectionSource = new JdbcConnectionSource(databaseUrl);
+            // SQLite: WAL, a pool of readers and one writer
+            this.connectionSource = SqliteConnectionSource.isSqlite(databaseUrl)
+                    ? new SqliteConnectionSource(databaseUrl, poolConfig)
+                    : new PooledConnectionSource(databaseUrl, poolConfig);
+
+            // The schema (only a query if the version is the last one)
+            try {
+                MIGRATIONS.migrate(this.connectionSource);
+            } catch (SQLException ex) {
+                this.connectionSource.closeQuietly();
+                throw ex;
+            }
 
-            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
-            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
-            TableUtils.createTableIfNotExists(connectionSource, Control.class);
+            // The statements of the repositories are counted in the trace of the request
+            ConnectionSource traced = new TracingConnectionSource(this.connectionSource);
+
+            // Fichas and Personas (veterinarios) by id from memory
+            CachedRepository<Ficha, Long> cacheFicha = new CachedRepository<>(
+                    new RepositoryOrmLite<>(traced,Ficha.class), CACHE_SIZE, CACHE_TTL);
+            CachedRepository<Persona, Long> cachePersona = new CachedRepository<>(
+                    new RepositoryOrmLite<>(traced,Persona.class), CACHE_SIZE, CACHE_TTL);
+            this.repoFicha = cacheFicha;
+            this.repoPersona = cachePersona;
+            this.repoControl = new RepositoryOrmLite<>(traced,Control.class);
+
+            // Fetch plan: the foreign objects are loaded in batch (one query per foreign field)
+            this.repoFicha.fetch("duenio", this.repoPersona);
+            this.repoControl.fetch("veterinario", this.repoPersona);
+            this.repoControl.fetch("ficha", this.repoFicha);
+
+            // The writes of all the threads in groups (the versions change after the commit, a rollback
+            // leaves ids in the cache)
+            if (this.connectionSource instanceof SqliteConnectionSource) {
+                this.writer = new GroupCommitWriter(traced, MAX_GROUP_SIZE, () -> {
+                    this.repoFicha.afterCommit();
+                    this.repoPersona.afterCommit();
+                    this.repoControl.afterCommit();
+                }, () -> {
+                    this.repoFicha.afterRollback();
+                    this.repoPersona.afterRollback();
+                    this.repoControl.afterRollback();
+                    cacheFicha.invalidateAll();
+                    cachePersona.invalidateAll();
+                });
+            }
 
-            this.repoFicha = new RepositoryOrmLite<>(this.connectionSource,Ficha.class);
-            this.repoPersona = new RepositoryOrmLite<>(this.connectionSource,Persona.class);
-            this.repoControl = new RepositoryOrmLite<>(this.connectionSource,Control.class);
+            // Cargo los indices en segundo plano (mientras, se busca en la BD)
+            this.fichaIndexLoad = CompletableFuture.runAsync(() -> {
+                if (this.closed) {
+                    return;
+                }
+                List<Persona> personas = this.repoPersona.findAll();
+                if (this.closed) {
+                    return;
+                }
+                List<Ficha> fichas = this.repoFicha.findAll();
+                this.fichaIndex.addAll(personas, fichas);
+                this.personaPorRut.addAll(personas);
+                this.personaPorEmail.addAll(personas);
+                this.fichaPorNumero.addAll(fichas);
+                for (Persona persona : personas) {
+                    this.ruts.add(Validation.normalizeRut(persona.getRut()));
+                }
+                this.rutsLoaded = true;
+                log.debug("Fichas indexed: {}", this.fichaIndex.size());
+            }, runnable -> {
+                Thread thread = new Thread(runnable, "fichas-index-loader");
+                thread.setDaemon(true);
+                thread.start();
+            });
+            this.fichaIndexLoad.exceptionally(ex -> {
+                log.error("Can't load the index of Fichas, searching in the database", ex);
+                return null;
+            });
 
         }catch(SQLException throwables ){
             throw new RuntimeException(throwables);
@@ -103,6 +321,98 @@ public class ContratosImpl implements Contratos{
 
     }
 
+    /**
+     * Quita los ceros a la izquierda de los ruts.
+     * @param connectionSource a usar.
+     * @throws SQLException si dos ruts son iguales sin los ceros.
+     */
+    private static void normalizeRuts(ConnectionSource connectionSource) throws SQLException {
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+        try {
+            List<String> repetidos = new ArrayList<>();
+            try (CompiledStatement statement = connection.compileStatement(
+                    "SELECT LTRIM(`rut`, '0') FROM `Persona` GROUP BY LTRIM(`rut`, '0') HAVING COUNT(*) > 1",
+                    StatementBuilder.StatementType.SELECT, new FieldType[0], DatabaseConnection.DEFAULT_RESULT_FLAGS,
+                    false);
+                 DatabaseResults results = statement.runQuery(null)) {
+                while (results.next()) {
+                    repetidos.add(results.getString(0));
+                }
+            } catch (IOException ex) {
+                throw new SQLException(ex);
+            }
+            if (!repetidos.isEmpty()) {
+                throw new SQLException("Ruts of Persona repeated without the zeros at left: " + repetidos);
+            }
+            connection.executeStatement("UPDATE `Persona` SET `rut` = LTRIM(`rut`, '0') WHERE `rut` LIKE '0%'",
+                    DatabaseConnection.DEFAULT_RESULT_FLAGS);
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Wait until the index of Fichas is loaded.
+     * @return true if the index was loaded.
+     */
+    public boolean awaitFichaIndex() {
+        try {
+            this.fichaIndexLoad.join();
+            return true;
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Run a write: in the next group of the writer (SQLite) or at once.
+     * @param write the write.
+     * @param <T> the type of the result.
+     * @return the result of the write.
+     * @throws Exception the error of the write.
+     */
+    private <T> T write(Callable<T> write) throws Exception {
+        return this.writer != null ? this.writer.write(write) : write.call();
+    }
+
+    /**
+     * @return the single writer (null if the database isn't SQLite).
+     */
+    public GroupCommitWriter getWriter() {
+        return this.writer;
+    }
+
+    /**
+     * @return the pool of connections (metrics).
+     */
+    public PooledConnectionSource getConnectionPool() {
+        return this.connectionSource;
+    }
+
+    /**
+     * Close the connections with the database.
+     */
+    @Override
+    public void close() {
+
+        // The loader stops before its next query: wait for the query in progress
+        this.closed = true;
+        try {
+            this.fichaIndexLoad.join();
+        } catch (RuntimeException ex) {
+            // Already logged
+        }
+
+        if (this.writer != null) {
+            this.writer.close();
+        }
+        try {
+            this.connectionSource.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
     /**
      * Contrato: C01 - Registrar los datos de un Paciente.
      * @param ficha la ficha del paciente
@@ -116,12 +426,16 @@ public class ContratosImpl implements Contratos{
 
         // Crear persona en la BD
         try{
-            this.repoFicha.create(ficha);
+            this.write(() -> this.repoFicha.create(ficha));
         }catch (Exception ex) {
             throw new RuntimeException(ex);
         }
         // Obtengo Ficha de la BD
         Ficha ficha2 = repoFicha.findById(ficha.getId());
+
+        // Actualizo los indices
+        this.fichaIndex.add(ficha2);
+        this.fichaPorNumero.add(ficha2);
         return ficha2;
     }
 
@@ -135,17 +449,206 @@ public class ContratosImpl implements Contratos{
 
         // Nullity
         if (persona == null) throw new IllegalArgumentException("Persona was null!");
-        // Crear persona en la BD
+        // Crear persona en la BD (si el rut no existe)
         try {
-            this.repoPersona.create(persona);
+            this.write(() -> {
+                this.checkRutUnico(persona.getRut());
+                return this.repoPersona.create(persona);
+            });
+        } catch (IllegalArgumentException ex) {
+            throw ex;
         } catch (Exception ex) {
-            throw new RuntimeException(ex);
+            throw this.rutRepetido(ex, persona.getRut());
         }
         // Obtengo persona de la BD
         Persona persona2 = repoPersona.findById(persona.getId());
+
+        // Actualizo los indices
+        this.fichaIndex.add(persona2);
+        this.personaPorRut.add(persona2);
+        this.personaPorEmail.add(persona2);
         return persona2;
     }
 
+    /**
+     * El rut no debe existir anteriormente en los registros (filtro de Bloom, luego la BD).
+     * @param rut a revisar (queda en el filtro).
+     * @throws IllegalArgumentException si el rut ya existe.
+     */
+    private void checkRutUnico(String rut) {
+
+        // Nuevo en el filtro (y ya cargado): no existe
+        String normalizado = Validation.normalizeRut(rut);
+        boolean loaded = this.rutsLoaded;
+        boolean nuevo = this.ruts.add(normalizado);
+        if (nuevo && loaded) {
+            this.countRut(this.rutsNegative, "negative");
+            return;
+        }
+
+        // Posible repetido: a la BD (como se guarda)
+        if (this.getPersonaByRut(normalizado) != null) {
+            this.countRut(this.rutsDuplicate, "duplicate");
+            throw new IllegalArgumentException("El rut ya existe: " + rut);
+        }
+        if (loaded) {
+            this.countRut(this.rutsFalsePositive, "false_positive");
+        } else {
+            this.countRut(this.rutsUnloaded, "unloaded");
+        }
+    }
+
+    /**
+     * @param ex de la escritura.
+     * @param rut escrito (null en lote).
+     * @return IllegalArgumentException si se violo el indice unico del rut, si no RuntimeException.
+     */
+    private RuntimeException rutRepetido(Exception ex, String rut) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String message = String.valueOf(cause.getMessage());
+                boolean unique = "23505".equals(((SQLException) cause).getSQLState())
+                        || message.contains("UNIQUE constraint failed");
+                if (unique && message.contains("rut")) {
+                    this.countRut(this.rutsDuplicate, "duplicate");
+                    return new IllegalArgumentException(rut == null ? "Un rut ya existe" : "El rut ya existe: " + rut, ex);
+                }
+            }
+        }
+        return ex instanceof RuntimeException ? (RuntimeException) ex : new RuntimeException(ex);
+    }
+
+    /**
+     * @param counter de la instancia.
+     * @param result de la revision del rut (label de la metrica).
+     */
+    private void countRut(AtomicLong counter, String result) {
+        counter.incrementAndGet();
+        Metrics.counter("rut_guard_checks_total", "Checks of the uniqueness of the ruts.", "result", result)
+                .incrementAndGet();
+    }
+
+    /**
+     * @return los ruts nuevos sin ir a la BD.
+     */
+    public long getRutNegativeCount() {
+        return this.rutsNegative.get();
+    }
+
+    /**
+     * @return los falsos positivos del filtro.
+     */
+    public long getRutFalsePositiveCount() {
+        return this.rutsFalsePositive.get();
+    }
+
+    /**
+     * @return los ruts revisados en la BD mientras el filtro se carga.
+     */
+    public long getRutUnloadedCount() {
+        return this.rutsUnloaded.get();
+    }
+
+    /**
+     * @return los ruts repetidos.
+     */
+    public long getRutDuplicateCount() {
+        return this.rutsDuplicate.get();
+    }
+
+    /**
+     * @return el filtro de Bloom de los ruts.
+     */
+    public ScalableBloomFilter getRutFilter() {
+        return this.ruts;
+    }
+
+    /**
+     * Contrato: C01 - Registrar los datos de varios Pacientes.
+     * @param fichas las fichas de los pacientes
+     * @return la cantidad de fichas registradas
+     */
+    @Override
+    public int registrarPacientes(List<Ficha> fichas) {
+
+        // Nullity
+        if (fichas == null) throw new IllegalArgumentException("Fichas was null!");
+
+        // Crear las fichas en la BD (all or nothing)
+        int created;
+        try {
+            created = this.write(() -> this.repoFicha.createAll(fichas));
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+
+        // Obtengo las fichas de la BD (en el cache)
+        List<Long> ids = new ArrayList<>(fichas.size());
+        for (Ficha ficha : fichas) {
+            ids.add(ficha.getId());
+        }
+
+        // Actualizo los indices
+        for (Ficha ficha : this.repoFicha.findAllById(ids)) {
+            this.fichaIndex.add(ficha);
+            this.fichaPorNumero.add(ficha);
+        }
+        return created;
+    }
+
+    /**
+     * Contrato: C02 - Registrar los datos de varias Personas.
+     * @param personas las personas a registrar
+     * @return la cantidad de personas registradas
+     */
+    @Override
+    public int registrarPersonas(List<Persona> personas) {
+
+        // Nullity
+        if (personas == null) throw new IllegalArgumentException("Personas was null!");
+
+        // Los ruts no pueden repetirse en las personas ni existir en la BD
+        Set<String> nuevos = new HashSet<>();
+        for (Persona persona : personas) {
+            if (persona == null) throw new IllegalArgumentException("Persona was null!");
+            if (!nuevos.add(Validation.normalizeRut(persona.getRut()))) {
+                this.countRut(this.rutsDuplicate, "duplicate");
+                throw new IllegalArgumentException("El rut esta repetido: " + persona.getRut());
+            }
+        }
+
+        // Crear las personas en la BD (all or nothing)
+        int created;
+        try {
+            created = this.write(() -> {
+                for (Persona persona : personas) {
+                    this.checkRutUnico(persona.getRut());
+                }
+                return this.repoPersona.createAll(personas);
+            });
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw this.rutRepetido(ex, null);
+        }
+
+        // Obtengo las personas de la BD (en el cache)
+        List<Long> ids = new ArrayList<>(personas.size());
+        for (Persona persona : personas) {
+            ids.add(persona.getId());
+        }
+
+        // Actualizo los indices
+        for (Persona persona : this.repoPersona.findAllById(ids)) {
+            this.fichaIndex.add(persona);
+            this.personaPorRut.add(persona);
+            this.personaPorEmail.add(persona);
+        }
+        return created;
+    }
+
     /**
      * Contrato: C03 - Buscar una Ficha.
      * @param query la consulta
@@ -157,57 +660,57 @@ public class ContratosImpl implements Contratos{
         // Nullity
         if (query == null) throw new IllegalArgumentException("Query was null!");
 
-        // The result: List of Ficha.
-        List<Ficha> fichas = new ArrayList<>();
+        // Index not loaded yet (or failed): one query to the database
+        if (!this.fichaIndexLoad.isDone() || this.fichaIndexLoad.isCompletedExceptionally()) {
+            return this.buscarFichaEnBaseDeDatos(query);
+        }
 
-        try{
-            // 1. Find by number
-            if (StringUtils.isNumeric(query)){
-                // All the Fichas with number
-                log.debug("Finding Fichas with numero ..");
-                fichas.addAll(this.repoFicha.findAll("numero", query));
-
-                // 2. Find by rut of Duenio
-                log.debug("Finding Fichas with rut of duenio ..");
-                QueryBuilder<Persona, Long> queryPersona = this.repoPersona.getQuery();
-                queryPersona.where().like("rut", "%" + query + "%");
-
-                // Run the Join
-                fichas.addAll(this.repoFicha
-                        .getQuery()
-                        .join(queryPersona)
-                        .query());
-            }
+        // Numero, rut of Duenio, nombre of Paciente and nombre of Duenio: one lookup in the index
+        log.debug("Finding Fichas with query <{}> in the index ..", query);
+        return this.fichaIndex.search(query);
+    }
 
-            // 3. Find by name of Paciente
-            log.debug("Finding Fichas with nombre of Paciente");
-            fichas.addAll(this.repoFicha.getQuery()
-                    .where()
-                    .like("nombrePaciente", "%" + query + "%")
-                    .query());
+    /**
+     * Contrato: C03 - Buscar una Ficha, con una sola consulta a la base de datos:
+     * SELECT Ficha.* FROM Ficha INNER JOIN Persona ON Ficha.duenio_id = Persona.id
+     * WHERE (LOWER(Ficha.nombrePaciente) LIKE ? OR Ficha.numero = ?) OR (LOWER(Persona.nombre) LIKE ? OR Persona.rut LIKE ?)
+     * The join is to-one (one Duenio per Ficha) so each Ficha appears only once. Without case, as the index.
+     * @param query la consulta
+     * @return la lista de fichas, en el orden del indice (la mejor primero)
+     */
+    public List<Ficha> buscarFichaEnBaseDeDatos(String query) {
 
-            // 4. Find by rut of Duenio
-            log.debug("Finding Fichas with nombre of duenio ..");
-            QueryBuilder<Persona, Long> queryPersona = this.repoPersona.getQuery();
-            queryPersona.where().like("nombre", "%" + query + "%");
+        // Nullity
+        if (query == null) throw new IllegalArgumentException("Query was null!");
+
+        String like = "%" + query.toLowerCase(Locale.ROOT) + "%";
+        boolean numeric = StringUtils.isNumeric(query);
+
+        try {
+            log.debug("Finding Fichas with query <{}> in the database ..", query);
+
+            // 1. Nombre of Paciente or numero
+            QueryBuilder<Ficha, Long> queryFicha = this.repoFicha.getQuery();
+            Where<Ficha, Long> whereFicha = queryFicha.where()
+                    .raw("LOWER(`Ficha`.`nombrePaciente`) LIKE ?", new SelectArg(SqlType.STRING, like));
+            if (numeric && query.length() < 19) {
+                whereFicha.or().eq("numero", Long.parseLong(query));
+            }
 
-            // Run the Join
-            fichas.addAll(this.repoFicha
-                    .getQuery()
-                    .join(queryPersona)
-                    .query());
+            // 2. Nombre or rut of Duenio
+            QueryBuilder<Persona, Long> queryPersona = this.repoPersona.getQuery();
+            Where<Persona, Long> wherePersona = queryPersona.where()
+                    .raw("LOWER(`Persona`.`nombre`) LIKE ?", new SelectArg(SqlType.STRING, like));
+            if (numeric) {
+                wherePersona.or().like("rut", like);
+            }
 
+            // Run the Join: (1) OR (2), ranked as the index (the same order while the index loads)
+            return FichaSearchIndex.rank(this.repoFicha.findAll(queryFicha.joinOr(queryPersona)), query);
 
-        }catch(SQLException ex){
+        } catch (SQLException ex) {
             throw new RuntimeException(ex);
         }
-
-        // Remove duplicated (by id)
-        return new ArrayList<>(
-                fichas.stream().collect(
-                        Collectors.toCollection(() -> new TreeSet<>(Comparator.comparing(Ficha::getId)))
-                )
-        );
     }
 
     /**
@@ -219,12 +722,39 @@ public class ContratosImpl implements Contratos{
         return this.repoFicha.findAll();
     }
 
+    /**
+     * Ruta 1 GET (paginada)
+     * @return la pagina de Fichas.
+     */
+    @Override
+    public List<Ficha> getAllFichas(long limit, long offset){
+        return this.repoFicha.findAll(limit, offset);
+    }
+
+    /**
+     * Ruta 1 GET (paginada por cursor)
+     * @return las Fichas despues de lastId.
+     */
+    @Override
+    public List<Ficha> getAllFichasAfter(Long lastId, long limit){
+        return this.repoFicha.findAllAfter(lastId, limit);
+    }
+
+    /**
+     * Ruta 1 GET (streaming)
+     * @param consumer que recibe cada Ficha.
+     */
+    @Override
+    public void forEachFicha(Consumer<Ficha> consumer){
+        forEach(this.repoFicha, consumer);
+    }
+
     /**
      * Ruta 1 POST getPersona para duenio
      */
     @Override
     public Persona getPersona(Long idDuenio) {
-        return this.repoPersona.findAll("id",idDuenio).get(0);
+        return this.repoPersona.findById(idDuenio);
     }
 
 
@@ -238,21 +768,191 @@ public class ContratosImpl implements Contratos{
     }
 
     /**
-     * Ruta 5 GET
-     * @return la lista de todas las Personas.
+     * Ruta 3 GET (paginada)
+     * @return la pagina de Personas.
+     */
+    @Override
+    public List<Persona> getAllPersonas(long limit, long offset){
+        return this.repoPersona.findAll(limit, offset);
+    }
+
+    /**
+     * Ruta 3 GET (paginada por cursor)
+     * @return las Personas despues de lastId.
+     */
+    @Override
+    public List<Persona> getAllPersonasAfter(Long lastId, long limit){
+        return this.repoPersona.findAllAfter(lastId, limit);
+    }
+
+    /**
+     * Ruta 3 GET (streaming)
+     * @param consumer que recibe cada Persona.
+     */
+    @Override
+    public void forEachPersona(Consumer<Persona> consumer){
+        forEach(this.repoPersona, consumer);
+    }
+
+    /**
+     * Recorre el repositorio con un {@link Cursor}.
+     * @param repository a recorrer.
+     * @param consumer que recibe cada elemento.
+     */
+    private static <T> void forEach(Repository<T, Long> repository, Consumer<T> consumer){
+
+        if (consumer == null) {
+            throw new IllegalArgumentException("Can't iterate with consumer null");
+        }
+
+        try (Cursor<T> cursor = repository.cursor()) {
+            while (cursor.hasNext()) {
+                consumer.accept(cursor.next());
+            }
+        }
+    }
+
+    /**
+     * Ruta 5 GET.
+     * @param numero de la ficha.
+     * @return la lista de todos los Controles de la Ficha, del mas reciente al mas antiguo.
      */
     @Override
     public List<Control> getControlesOfFicha(Long numero){
-        return this.repoFicha.findAll("numero", numero).get(0).getControles();
+        return this.findControlesOfFicha(numero, null, null);
     }
 
     /**
-     * Ruta 5 POST
-     * @return la lista.
+     * Ruta 5 GET (paginada).
+     * @param numero de la ficha.
+     * @param limit cantidad maxima de controles.
+     * @param offset cantidad de controles a saltar.
+     * @return la pagina de Controles, del mas reciente al mas antiguo.
+     */
+    @Override
+    public List<Control> getControlesOfFicha(Long numero, long limit, long offset){
+        return this.findControlesOfFicha(numero, limit, offset);
+    }
+
+    /**
+     * @param numero de la ficha.
+     * @param limit cantidad maxima de controles (null: todos).
+     * @param offset cantidad de controles a saltar (null: ninguno).
+     * @return los Controles de la Ficha por fecha e id, del mas reciente al mas antiguo.
+     */
+    private List<Control> findControlesOfFicha(Long numero, Long limit, Long offset) {
+
+        Ficha ficha = this.getFicha(numero);
+        if (ficha == null) {
+            return Collections.emptyList();
+        }
+
+        try {
+            QueryBuilder<Control, Long> query = this.repoControl.getQuery();
+            query.orderBy("fecha", false)
+                    .orderBy("idControl", false)
+                    .limit(limit)
+                    .offset(offset)
+                    .where().eq("ficha_id", ficha.getId());
+            return this.repoControl.findAll(query);
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * La version de los datos de una tabla.
+     * @param tipo la clase de la tabla (Ficha, Persona o Control).
+     * @return la version.
+     */
+    @Override
+    public long getVersion(Class<?> tipo) {
+        if (tipo == Ficha.class) return this.repoFicha.getVersion();
+        if (tipo == Persona.class) return this.repoPersona.getVersion();
+        if (tipo == Control.class) return this.repoControl.getVersion();
+        throw new IllegalArgumentException("Tipo sin tabla: " + tipo);
+    }
+
+    /**
+     * Ruta 7 GET: una consulta por rango en el indice de fechaProximoControl.
+     * @param from fecha inicial (inclusive).
+     * @param to fecha final (inclusive).
+     * @return los controles pendientes entre from y to.
+     */
+    @Override
+    public List<Control> getControlesDueBetween(ZonedDateTime from, ZonedDateTime to){
+
+        // Nullity
+        if (from == null || to == null) throw new IllegalArgumentException("From or To was null!");
+        if (from.isAfter(to)) throw new IllegalArgumentException("From is after To!");
+
+        // The bounds of the instants, with any offset
+        return this.repoControl.findAllBetween("fechaProximoControl",
+                ZonedDateTimeEpochType.lowerBound(from.toInstant()),
+                ZonedDateTimeEpochType.upperBound(to.toInstant()));
+    }
+
+    /**
+     * Ruta 5 POST: la Ficha por su numero (indice en memoria y luego el cache por id).
+     * @param numero de la ficha.
+     * @return la ficha (null si no existe).
      */
     @Override
     public Ficha getFicha(Long numero){
-        return this.repoFicha.findAll("numero",numero).get(0);
+        return findByNaturalKey(this.fichaPorNumero, this.repoFicha, "numero", numero);
+    }
+
+    /**
+     * La Persona por su rut (indice en memoria y luego el cache por id).
+     * @param rut de la persona (con o sin ceros a la izquierda).
+     * @return la persona (null si no existe).
+     */
+    @Override
+    public Persona getPersonaByRut(String rut){
+        return findByNaturalKey(this.personaPorRut, this.repoPersona, "rut",
+                rut == null ? null : Validation.normalizeRut(rut));
+    }
+
+    /**
+     * La Persona por su email (indice en memoria y luego el cache por id).
+     * @param email de la persona.
+     * @return la persona (null si no existe).
+     */
+    @Override
+    public Persona getPersonaByEmail(String email){
+        return findByNaturalKey(this.personaPorEmail, this.repoPersona, "email", email);
+    }
+
+    /**
+     * Busca por clave natural: el id en el indice, si no en la BD.
+     * @param index de la clave.
+     * @param repository del modelo.
+     * @param column de la clave.
+     * @param key a buscar.
+     * @param <K> tipo de la clave.
+     * @param <T> tipo del modelo.
+     * @return el modelo (null si no existe).
+     */
+    private static <K, T> T findByNaturalKey(NaturalKeyIndex<K, T> index,
+                                             Repository<T, Long> repository,
+                                             String column,
+                                             K key) {
+
+        // Nullity
+        if (key == null) throw new IllegalArgumentException("Can't find with " + column + " null");
+
+        Long id = index.get(key);
+        if (id != null) {
+            T t = repository.findById(id);
+            if (index.matches(t, key)) {
+                return t;
+            }
+            index.remove(key, id);
+        }
+
+        T t = repository.findFirst(column, key);
+        index.add(t);
+        return t;
     }
 
     /**
@@ -266,7 +966,7 @@ public class ContratosImpl implements Contratos{
         if (control == null) throw new IllegalArgumentException("Control was null!");
         // Crear persona en la BD
         try {
-            this.repoControl.create(control);
+            this.write(() -> this.repoControl.create(control));
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
@@ -275,6 +975,27 @@ public class ContratosImpl implements Contratos{
         return control2;
     }
 
+    /**
+     * Ruta 5 POST
+     * @param controles los controles a registrar
+     * @return la cantidad de controles registrados
+     */
+    @Override
+    public int registrarControles(List<Control> controles){
+
+        // Nullity
+        if (controles == null) throw new IllegalArgumentException("Controles was null!");
+
+        // Crear los controles en la BD (all or nothing)
+        try {
+            return this.write(() -> this.repoControl.createAll(controles));
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
     /**
      * Ruta 6
      * @param numero de la ficha
@@ -282,8 +1003,8 @@ public class ContratosImpl implements Contratos{
      */
     @Override
     public Persona getDuenioOfFicha(Long numero) {
-        return this.repoFicha.findAll("numero", numero).get(0).getDuenio();
+        Ficha ficha = this.getFicha(numero);
+        return ficha == null ? null : ficha.getDuenio();
     }
-    // Puede retornar un null findDuenioOfFicha, numero no puede ser null, no puede ser negativo
 
 }
@@ -0,0 +1,483 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * The {@link Contratos} of each tenant (clinic), every one with its own database.
+ * - The Contratos are opened with the first use of the tenant.
+ * - Beyond maxOpen, the least recently used tenants (not in use) are closed.
+ * - The tenants not used in idleMillis are closed.
+ * - Each tenant has at most maxLeases at the same time (bulkhead): a busy clinic can't take the threads
+ *   of the others, the leases over the limit are rejected at once.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class ContratosRegistry implements AutoCloseable {
+
+    /**
+     * The tenant without header or path prefix.
+     */
+    public static final String DEFAULT_TENANT = "default";
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ContratosRegistry.class);
+
+    /**
+     * The valid names of tenant (part of the name of the database).
+     */
+    private static final Pattern TENANT_NAME = Pattern.compile("[a-z0-9][a-z0-9_-]{0,31}");
+
+    /**
+     * The opener of the Contratos of a tenant.
+     */
+    private final Function<String, ? extends Contratos> factory;
+
+    /**
+     * Max number of tenants opened (not in use).
+     */
+    private final int maxOpen;
+
+    /**
+     * Time to close a tenant not used.
+     */
+    private final long idleMillis;
+
+    /**
+     * Max number of leases of one tenant at the same time.
+     */
+    private final int maxLeases;
+
+    /**
+     * The clock (millis).
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The tenants in access order (least recently used first).
+     */
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The background check of the idle tenants.
+     */
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Number of Contratos opened.
+     */
+    private final AtomicLong opened = new AtomicLong();
+
+    /**
+     * Number of Contratos closed.
+     */
+    private final AtomicLong closed = new AtomicLong();
+
+    /**
+     * Number of leases rejected (over maxLeases).
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * The Constructor (the idle tenants are checked in background).
+     *
+     * @param factory    the opener of the Contratos of a tenant.
+     * @param maxOpen    max number of tenants opened (not in use).
+     * @param idleMillis time to close a tenant not used (0 = never).
+     */
+    public ContratosRegistry(Function<String, ? extends Contratos> factory, int maxOpen, long idleMillis) {
+        this(factory, maxOpen, idleMillis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The Constructor (the idle tenants are checked in background).
+     *
+     * @param factory    the opener of the Contratos of a tenant.
+     * @param maxOpen    max number of tenants opened (not in use).
+     * @param idleMillis time to close a tenant not used (0 = never).
+     * @param maxLeases  max number of leases of one tenant at the same time.
+     */
+    public ContratosRegistry(Function<String, ? extends Contratos> factory, int maxOpen, long idleMillis, int maxLeases) {
+        this(factory, maxOpen, idleMillis, maxLeases, System::currentTimeMillis, idleMillis > 0);
+    }
+
+    /**
+     * The Constructor (the idle tenants are checked only in {@link #evictIdle()}).
+     *
+     * @param factory    the opener of the Contratos of a tenant.
+     * @param maxOpen    max number of tenants opened (not in use).
+     * @param idleMillis time to close a tenant not used (0 = never).
+     * @param clock      the clock (millis).
+     */
+    ContratosRegistry(Function<String, ? extends Contratos> factory, int maxOpen, long idleMillis, LongSupplier clock) {
+        this(factory, maxOpen, idleMillis, Integer.MAX_VALUE, clock, false);
+    }
+
+    /**
+     * The Constructor.
+     */
+    private ContratosRegistry(Function<String, ? extends Contratos> factory,
+                              int maxOpen,
+                              long idleMillis,
+                              int maxLeases,
+                              LongSupplier clock,
+                              boolean background) {
+
+        if (factory == null) throw new IllegalArgumentException("Can't create the registry with factory null");
+        if (clock == null) throw new IllegalArgumentException("Can't create the registry with clock null");
+        if (maxOpen < 1) throw new IllegalArgumentException("The maxOpen must be at least 1");
+        if (idleMillis < 0) throw new IllegalArgumentException("The idleMillis can't be negative");
+        if (maxLeases < 1) throw new IllegalArgumentException("The maxLeases must be at least 1");
+
+        this.factory = factory;
+        this.maxOpen = maxOpen;
+        this.idleMillis = idleMillis;
+        this.maxLeases = maxLeases;
+        this.clock = clock;
+
+        if (background) {
+            this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tenants-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, idleMillis / 2);
+            this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            this.evictor = null;
+        }
+    }
+
+    /**
+     * The Contratos of a tenant stored in a file of SQLite (the default tenant in the original fivet.db).
+     *
+     * @param tenant the name of the tenant.
+     * @return the Contratos.
+     */
+    public static Contratos sqlite(String tenant) {
+        return new ContratosImpl(DEFAULT_TENANT.equals(tenant)
+                ? "jdbc:sqlite:fivet.db"
+                : "jdbc:sqlite:fivet-" + tenant + ".db");
+    }
+
+    /**
+     * @param tenant the name to check.
+     * @return true if the name of tenant is valid (lowercase letters, digits, - and _, up to 32).
+     */
+    public static boolean isValidTenant(String tenant) {
+        return tenant != null && TENANT_NAME.matcher(tenant).matches();
+    }
+
+    /**
+     * Borrow the Contratos of a tenant without waiting: the Contratos are opened with the first
+     * {@link Lease#get()} (only the callers of the same tenant wait).
+     *
+     * @param tenant the name of the tenant.
+     * @return the lease of the Contratos, to close after use.
+     * @throws RejectedExecutionException if the tenant has maxLeases in use.
+     */
+    public Lease acquire(String tenant) {
+
+        if (!isValidTenant(tenant)) throw new IllegalArgumentException("Invalid tenant: " + tenant);
+
+        Tenant theTenant;
+        synchronized (this.tenants) {
+            theTenant = this.tenants.computeIfAbsent(tenant, Tenant::new);
+            if (!theTenant.leases.tryAcquire()) {
+                this.rejected.incrementAndGet();
+                throw new RejectedExecutionException("The tenant " + tenant + " has " + this.maxLeases
+                        + " requests in use");
+            }
+            theTenant.inUse++;
+        }
+        this.evict(false);
+        return new Lease(theTenant);
+    }
+
+    /**
+     * The Contratos of a tenant only if opened (without lease: to read the versions, not the database).
+     *
+     * @param tenant the name of the tenant.
+     * @return the Contratos or null if the tenant isn't opened.
+     */
+    public Contratos peek(String tenant) {
+        synchronized (this.tenants) {
+            Tenant theTenant = this.tenants.get(tenant);
+            return theTenant == null ? null : theTenant.contratos;
+        }
+    }
+
+    /**
+     * @param tenant given back.
+     */
+    private void release(Tenant tenant) {
+        synchronized (this.tenants) {
+            tenant.leases.release();
+            tenant.inUse--;
+            tenant.lastUsed = this.clock.getAsLong();
+        }
+        this.evict(false);
+    }
+
+    /**
+     * Close the tenants not used in idleMillis.
+     */
+    public void evictIdle() {
+        if (this.idleMillis > 0) {
+            this.evict(true);
+        }
+    }
+
+    /**
+     * Close the least recently used tenants beyond maxOpen (and the idle ones).
+     *
+     * @param idle true to close the idle tenants too.
+     */
+    private void evict(boolean idle) {
+
+        List<Tenant> toClose = new ArrayList<>();
+        synchronized (this.tenants) {
+            long now = this.clock.getAsLong();
+            int excess = this.tenants.size() - this.maxOpen;
+            Iterator<Tenant> iterator = this.tenants.values().iterator();
+            while (iterator.hasNext()) {
+                Tenant tenant = iterator.next();
+                if (tenant.inUse > 0) {
+                    continue;
+                }
+                if (excess > 0 || (idle && now - tenant.lastUsed >= this.idleMillis)) {
+                    iterator.remove();
+                    toClose.add(tenant);
+                    excess--;
+                }
+            }
+        }
+
+        // Out of the lock (the close can be slow)
+        for (Tenant tenant : toClose) {
+            tenant.close();
+        }
+    }
+
+    /**
+     * @return the number of tenants in the registry.
+     */
+    public int getOpenCount() {
+        synchronized (this.tenants) {
+            return this.tenants.size();
+        }
+    }
+
+    /**
+     * @return the number of Contratos opened.
+     */
+    public long getOpenedCount() {
+        return this.opened.get();
+    }
+
+    /**
+     * @return the number of Contratos closed.
+     */
+    public long getClosedCount() {
+        return this.closed.get();
+    }
+
+    /**
+     * @return the number of leases rejected (the tenant at maxLeases).
+     */
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+
+    /**
+     * Close all the tenants (the leases in use keep working until the database is closed).
+     */
+    @Override
+    public void close() {
+
+        if (this.evictor != null) {
+            this.evictor.shutdownNow();
+        }
+
+        List<Tenant> toClose;
+        synchronized (this.tenants) {
+            toClose = new ArrayList<>(this.tenants.values());
+            this.tenants.clear();
+        }
+        for (Tenant tenant : toClose) {
+            tenant.close();
+        }
+    }
+
+    /**
+     * The Contratos of a tenant, opened with the first use.
+     */
+    private final class Tenant {
+
+        /**
+         * The name.
+         */
+        private final String name;
+
+        /**
+         * The Contratos (null until the first use).
+         */
+        private volatile Contratos contratos;
+
+        /**
+         * The leases available (bulkhead).
+         */
+        private final Semaphore leases = new Semaphore(maxLeases);
+
+        /**
+         * True if closed (removed from the registry: not opened again).
+         */
+        private boolean removed;
+
+        /**
+         * Number of leases (guarded by the map of tenants).
+         */
+        private int inUse;
+
+        /**
+         * Last time given back (guarded by the map of tenants).
+         */
+        private long lastUsed;
+
+        /**
+         * @param name of the tenant.
+         */
+        private Tenant(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the Contratos, opened if needed.
+         */
+        private synchronized Contratos open() {
+            if (this.removed) {
+                throw new IllegalStateException("The tenant " + this.name + " is closed");
+            }
+            if (this.contratos == null) {
+                log.debug("Opening the tenant {} ..", this.name);
+                this.contratos = factory.apply(this.name);
+                opened.incrementAndGet();
+            }
+            return this.contratos;
+        }
+
+        /**
+         * Close the Contratos (if opened).
+         */
+        private synchronized void close() {
+            this.removed = true;
+            if (this.contratos instanceof AutoCloseable) {
+                log.debug("Closing the tenant {} ..", this.name);
+                try {
+                    ((AutoCloseable) this.contratos).close();
+                } catch (Exception ex) {
+                    log.warn("Can't close the tenant {}", this.name, ex);
+                }
+            }
+            if (this.contratos != null) {
+                closed.incrementAndGet();
+                this.contratos = null;
+            }
+        }
+    }
+
+    /**
+     * The Contratos of a tenant borrowed (the tenant isn't closed until the lease is closed).
+     */
+    public final class Lease implements AutoCloseable {
+
+        /**
+         * The tenant.
+         */
+        private final Tenant tenant;
+
+        /**
+         * The Contratos (null until the first get).
+         */
+        private Contratos contratos;
+
+        /**
+         * True if given back.
+         */
+        private boolean released;
+
+        /**
+         * @param tenant borrowed.
+         */
+        private Lease(Tenant tenant) {
+            this.tenant = tenant;
+        }
+
+        /**
+         * @return the Contratos of the tenant (opened if needed).
+         */
+        public synchronized Contratos get() {
+            if (this.released) {
+                throw new IllegalStateException("The lease was closed");
+            }
+            if (this.contratos == null) {
+                this.contratos = this.tenant.open();
+            }
+            return this.contratos;
+        }
+
+        /**
+         * Give back the tenant.
+         */
+        @Override
+        public synchronized void close() {
+            if (!this.released) {
+                this.released = true;
+                release(this.tenant);
+            }
+        }
+    }
+
+}
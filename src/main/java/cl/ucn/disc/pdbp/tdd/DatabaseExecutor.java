@@ -0,0 +1,218 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The executor of the work with the database, out of the threads of the HTTP server.
+ * - maxConcurrent tasks run at the same time (one per connection of the pool), maxQueue wait.
+ * - When the queue is full the new tasks are rejected at once (load shedding), never queued without limit.
+ * - Virtual threads if the JVM has them (Java 21+), a fixed pool of platform threads otherwise.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class DatabaseExecutor implements AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(DatabaseExecutor.class);
+
+    /**
+     * The threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * True if the threads are virtual.
+     */
+    private final boolean virtual;
+
+    /**
+     * The tasks running or waiting (maxConcurrent + maxQueue).
+     */
+    private final Semaphore admission;
+
+    /**
+     * The tasks running (only with virtual threads, the pool of platform threads has the size).
+     */
+    private final Semaphore running;
+
+    /**
+     * Max number of tasks running or waiting.
+     */
+    private final int capacity;
+
+    /**
+     * Number of tasks rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Number of tasks submitted.
+     */
+    private final AtomicLong submitted = new AtomicLong();
+
+    /**
+     * The Constructor.
+     *
+     * @param maxConcurrent max number of tasks running at the same time.
+     * @param maxQueue      max number of tasks waiting.
+     */
+    public DatabaseExecutor(int maxConcurrent, int maxQueue) {
+
+        if (maxConcurrent < 1 || maxQueue < 0) {
+            throw new IllegalArgumentException("The maxConcurrent must be at least 1 and the maxQueue positive");
+        }
+
+        this.capacity = maxConcurrent + maxQueue;
+        this.admission = new Semaphore(this.capacity);
+
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.virtual = true;
+            this.running = new Semaphore(maxConcurrent, true);
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(maxConcurrent, runnable -> {
+                Thread thread = new Thread(runnable, "db-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.virtual = false;
+            this.running = null;
+        }
+        log.debug("Database executor with {} {} threads and a queue of {}.",
+                maxConcurrent, this.virtual ? "virtual" : "platform", maxQueue);
+    }
+
+    /**
+     * @return the executor of virtual threads (null if the JVM doesn't have them).
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Run the supplier in the executor.
+     *
+     * @param supplier the work with the database.
+     * @param <T>      the type of the result.
+     * @return the future of the result.
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+
+        if (supplier == null) throw new IllegalArgumentException("Can't run a supplier null");
+
+        // Load shedding
+        if (!this.admission.tryAcquire()) {
+            this.rejected.incrementAndGet();
+            throw new RejectedExecutionException("The database queue is full (" + this.capacity + " tasks)");
+        }
+
+        try {
+            this.submitted.incrementAndGet();
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.virtual ? this.runLimited(supplier) : supplier.get();
+                } finally {
+                    this.admission.release();
+                }
+            }, this.executor);
+        } catch (RejectedExecutionException ex) {
+            // Shutdown
+            this.admission.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param supplier to run when there is a place (the virtual thread waits).
+     * @return the result.
+     */
+    private <T> T runLimited(Supplier<T> supplier) {
+        this.running.acquireUninterruptibly();
+        try {
+            return supplier.get();
+        } finally {
+            this.running.release();
+        }
+    }
+
+    /**
+     * @return true if the threads are virtual.
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * @return the number of tasks running or waiting.
+     */
+    public int getPendingCount() {
+        return this.capacity - this.admission.availablePermits();
+    }
+
+    /**
+     * @return the number of tasks submitted.
+     */
+    public long getSubmittedCount() {
+        return this.submitted.get();
+    }
+
+    /**
+     * @return the number of tasks rejected.
+     */
+    public long getRejectedCount() {
+        return this.rejected.get();
+    }
+
+    /**
+     * Stop the threads (the tasks submitted end).
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd;
+
+import java.util.List;
+
+/**
+ * A page of a list (the response of the paginated routes).
+ * @param <T> the type of the items.
+ * @author Ignacio Santander Quiñones
+ */
+public final class Page<T> {
+
+    /**
+     * The items of the page.
+     */
+    private final List<T> items;
+
+    /**
+     * The url of the next page (null if this is the last page).
+     */
+    private final String next;
+
+    /**
+     * The Constructor.
+     * @param items of the page.
+     * @param next the url of the next page (null if this is the last page).
+     */
+    public Page(List<T> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    /**
+     * @return the items of the page.
+     */
+    public List<T> getItems() {
+        return this.items;
+    }
+
+    /**
+     * @return the url of the next page (null if this is the last page).
+     */
+    public String getNext() {
+        return this.next;
+    }
+
+}
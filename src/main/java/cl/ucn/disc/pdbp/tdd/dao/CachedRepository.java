@@ -0,0 +1,546 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.stmt.QueryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The {@link Repository} with a cache of T by id in front of another {@link Repository}.
+ * - findById and findAllById are read-through: the misses go to the repository and stay in the cache.
+ * - create, update and delete invalidate the T (inside a transaction, again after the commit): the next read
+ *   caches a fresh T from the repository, never the T of the caller. A T read before a write isn't cached.
+ * - The cache is bounded: the least recently used T is evicted, and each T expires after the time to live.
+ * The other reads (lists, queries, cursors) go to the repository without touching the cache.
+ * The foreign objects inside a cached T are refreshed only when the T expires or is written.
+ * The T in the cache are shared by all the threads: don't change them.
+ *
+ * @param <T> the type of model domain to use.
+ * @param <K> the type of id.
+ * @author Ignacio Santander Quiñones
+ */
+public class CachedRepository<T, K> implements Repository<T, K> {
+
+    /**
+     * The Repository to cache.
+     */
+    private final Repository<T, K> repository;
+
+    /**
+     * Max number of T in the cache.
+     */
+    private final int maxSize;
+
+    /**
+     * Time to live of the T in the cache (nanos).
+     */
+    private final long ttlNanos;
+
+    /**
+     * The clock (nanos).
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The cache in access order: the first entry is the least recently used.
+     */
+    private final LinkedHashMap<K, CacheEntry<T>> cache;
+
+    /**
+     * Number of invalidations: a T read before one isn't put in the cache (guarded by this).
+     */
+    private long generation;
+
+    /**
+     * The ids written inside the transaction of the thread (invalidated again after the commit).
+     */
+    private final ThreadLocal<Set<K>> uncommitted = ThreadLocal.withInitial(LinkedHashSet::new);
+
+    /**
+     * Number of T found in the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of T not found in the cache.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Number of T evicted (by size or by time).
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The Constructor.
+     *
+     * @param repository to cache.
+     * @param maxSize    max number of T in the cache.
+     * @param ttlMillis  time to live of the T in the cache.
+     */
+    public CachedRepository(Repository<T, K> repository, int maxSize, long ttlMillis) {
+        this(repository, maxSize, ttlMillis, System::nanoTime);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param repository to cache.
+     * @param maxSize    max number of T in the cache.
+     * @param ttlMillis  time to live of the T in the cache.
+     * @param clock      the source of time (nanos).
+     */
+    CachedRepository(Repository<T, K> repository, int maxSize, long ttlMillis, LongSupplier clock) {
+
+        // Nullity
+        if (repository == null) throw new IllegalArgumentException("Can't cache a repository null");
+        if (clock == null) throw new IllegalArgumentException("Can't cache with clock null");
+
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maxSize of the cache must be at least 1");
+        }
+        if (ttlMillis < 1) {
+            throw new IllegalArgumentException("The ttl of the cache must be positive");
+        }
+
+        this.repository = repository;
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = clock;
+        this.cache = new LinkedHashMap<K, CacheEntry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<T>> eldest) {
+                if (size() > CachedRepository.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param id to search.
+     * @return the T in the cache (or null if not found or expired).
+     */
+    private synchronized T get(K id) {
+
+        CacheEntry<T> entry = this.cache.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - this.clock.getAsLong() <= 0) {
+            this.cache.remove(id);
+            this.evictions.incrementAndGet();
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * @return the generation before a read from the repository.
+     */
+    private synchronized long generation() {
+        return this.generation;
+    }
+
+    /**
+     * @param id         of t.
+     * @param t          to save in the cache.
+     * @param generation before the read of t (if changed, t can be older than a write).
+     */
+    private synchronized void put(K id, T t, long generation) {
+        if (id != null && t != null && generation == this.generation) {
+            this.cache.put(id, new CacheEntry<>(t, this.clock.getAsLong() + this.ttlNanos));
+        }
+    }
+
+    /**
+     * @param id to remove from the cache.
+     */
+    private synchronized void invalidate(K id) {
+        this.generation++;
+        if (id != null) {
+            this.cache.remove(id);
+        }
+    }
+
+    /**
+     * Remove all the T from the cache.
+     */
+    public synchronized void invalidateAll() {
+        this.generation++;
+        this.cache.clear();
+    }
+
+    /**
+     * @return the number of T in the cache.
+     */
+    public synchronized int size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return the number of T found in the cache.
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of T not found in the cache.
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of T evicted from the cache.
+     */
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return a List of T.
+     */
+    @Override
+    public List<T> findAll() {
+        return this.repository.findAll();
+    }
+
+    /**
+     * @param limit  max number of T.
+     * @param offset number of T to skip.
+     * @return the page of T, ordered by id.
+     */
+    @Override
+    public List<T> findAll(long limit, long offset) {
+        return this.repository.findAll(limit, offset);
+    }
+
+    /**
+     * @param lastId the last id of the previous page (null for the first page).
+     * @param limit  max number of T.
+     * @return the T with id greater than lastId, ordered by id.
+     */
+    @Override
+    public List<T> findAllAfter(K lastId, long limit) {
+        return this.repository.findAllAfter(lastId, limit);
+    }
+
+    /**
+     * @return the {@link Cursor} of T, ordered by id (must be closed).
+     */
+    @Override
+    public Cursor<T> cursor() {
+        return this.repository.cursor();
+    }
+
+    /**
+     * @param key   to filter.
+     * @param value to search.
+     * @return the list of T.
+     */
+    @Override
+    public List<T> findAll(String key, Object value) {
+        return this.repository.findAll(key, value);
+    }
+
+    /**
+     * @param key  to filter.
+     * @param from the min value (inclusive).
+     * @param to   the max value (inclusive).
+     * @return the list of T with key between from and to.
+     */
+    @Override
+    public List<T> findAllBetween(String key, Object from, Object to) {
+        return this.repository.findAllBetween(key, from, to);
+    }
+
+    /**
+     * @param query to run.
+     * @return the list of T.
+     */
+    @Override
+    public List<T> findAll(QueryBuilder<T, K> query) {
+        return this.repository.findAll(query);
+    }
+
+    /**
+     * @return the {@link QueryBuilder}.
+     */
+    @Override
+    public QueryBuilder<T, K> getQuery() {
+        return this.repository.getQuery();
+    }
+
+    /**
+     * @param key   to filter (a unique column).
+     * @param value to search.
+     * @return the first T with key = value (null if not found).
+     */
+    @Override
+    public T findFirst(String key, Object value) {
+        long generation = this.generation();
+        T t = this.repository.findFirst(key, value);
+        if (t != null) {
+            this.put(this.repository.extractId(t), t, generation);
+        }
+        return t;
+    }
+
+    /**
+     * @param id to search.
+     * @return the T with id (from the cache if possible).
+     */
+    @Override
+    public T findById(K id) {
+
+        T t = this.get(id);
+        if (t != null) {
+            this.hits.incrementAndGet();
+            return t;
+        }
+
+        this.misses.incrementAndGet();
+        long generation = this.generation();
+        t = this.repository.findById(id);
+        this.put(id, t, generation);
+        return t;
+    }
+
+    /**
+     * @param ids to search.
+     * @return the list of T with the ids (the misses in one call to the repository).
+     */
+    @Override
+    public List<T> findAllById(Collection<K> ids) {
+
+        // Nullity
+        if (ids == null) {
+            throw new IllegalArgumentException("Can't find with ids null");
+        }
+
+        List<T> list = new ArrayList<>(ids.size());
+        Set<K> missing = new LinkedHashSet<>();
+        for (K id : new LinkedHashSet<>(ids)) {
+            T t = this.get(id);
+            if (t != null) {
+                list.add(t);
+            } else if (id != null) {
+                missing.add(id);
+            }
+        }
+        this.hits.addAndGet(list.size());
+
+        if (!missing.isEmpty()) {
+            this.misses.addAndGet(missing.size());
+            long generation = this.generation();
+            for (T t : this.repository.findAllById(missing)) {
+                this.put(this.repository.extractId(t), t, generation);
+                list.add(t);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param t to inspect.
+     * @return the id of t.
+     */
+    @Override
+    public K extractId(T t) {
+        return this.repository.extractId(t);
+    }
+
+    /**
+     * @param fieldName  of the foreign field.
+     * @param repository of the foreign objects.
+     */
+    @Override
+    public void fetch(String fieldName, Repository<?, ?> repository) {
+        this.repository.fetch(fieldName, repository);
+    }
+
+    /**
+     * @param t to save.
+     * @return true.
+     */
+    @Override
+    public boolean create(T t) {
+        long version = this.repository.getVersion();
+        boolean created = false;
+        try {
+            created = this.repository.create(t);
+            return created;
+        } finally {
+            this.written(this.repository.extractId(t), created, version);
+        }
+    }
+
+    /**
+     * @param ts to save.
+     * @return the number of T saved.
+     */
+    @Override
+    public int createAll(Collection<T> ts) {
+        long version = this.repository.getVersion();
+        int created = 0;
+        try {
+            created = this.repository.createAll(ts);
+            return created;
+        } finally {
+            for (T t : ts) {
+                this.written(this.repository.extractId(t), created > 0, version);
+            }
+        }
+    }
+
+    /**
+     * @param t to upate.
+     * @return true.
+     */
+    @Override
+    public boolean update(T t) {
+        long version = this.repository.getVersion();
+        boolean updated = false;
+        try {
+            updated = this.repository.update(t);
+            return updated;
+        } finally {
+            this.written(this.repository.extractId(t), updated, version);
+        }
+    }
+
+    /**
+     * @param id to delete.
+     * @return true.
+     */
+    @Override
+    public boolean delete(K id) {
+        long version = this.repository.getVersion();
+        boolean deleted = false;
+        try {
+            deleted = this.repository.delete(id);
+            return deleted;
+        } finally {
+            this.written(id, deleted, version);
+        }
+    }
+
+    /**
+     * Invalidate the T written. A write without a new version is inside a transaction: a read before the
+     * commit can cache the old T, so the T is invalidated again after the commit.
+     *
+     * @param id      of the T.
+     * @param changed true if the row was written.
+     * @param version before the write.
+     */
+    private void written(K id, boolean changed, long version) {
+        this.invalidate(id);
+        if (changed && id != null && this.repository.getVersion() == version) {
+            this.uncommitted.get().add(id);
+        }
+    }
+
+    /**
+     * @return the version of the table.
+     */
+    @Override
+    public long getVersion() {
+        return this.repository.getVersion();
+    }
+
+    /**
+     * The version after the commit (and the T written inside the transaction invalidated again).
+     */
+    @Override
+    public void afterCommit() {
+        this.repository.afterCommit();
+        this.invalidateUncommitted();
+    }
+
+    /**
+     * Invalidate the T written inside the transaction of the thread.
+     */
+    private void invalidateUncommitted() {
+        for (K id : this.uncommitted.get()) {
+            this.invalidate(id);
+        }
+        this.uncommitted.remove();
+    }
+
+    /**
+     * The version after the rollback.
+     */
+    @Override
+    public void afterRollback() {
+        this.repository.afterRollback();
+        this.invalidateUncommitted();
+    }
+
+    /**
+     * A T in the cache.
+     *
+     * @param <T> the type of model domain.
+     */
+    private static final class CacheEntry<T> {
+
+        /**
+         * The T.
+         */
+        final T value;
+
+        /**
+         * The time of expiration (nanos).
+         */
+        final long expiresAt;
+
+        /**
+         * The Constructor.
+         *
+         * @param value     the T.
+         * @param expiresAt the time of expiration.
+         */
+        CacheEntry(T value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
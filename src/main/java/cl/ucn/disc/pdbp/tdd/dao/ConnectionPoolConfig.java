@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+/**
+ * The configuration of the {@link PooledConnectionSource}.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class ConnectionPoolConfig {
+
+    /**
+     * The default configuration: the pool grows up to two connections per core.
+     */
+    public static final ConnectionPoolConfig DEFAULT = new ConnectionPoolConfig(
+            1,
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2),
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            0,
+            0,
+            false,
+            30_000);
+
+    /**
+     * Number of connections opened at startup.
+     */
+    private final int minSize;
+
+    /**
+     * Maximum number of connections borrowed at the same time.
+     */
+    private final int maxSize;
+
+    /**
+     * Maximum number of idle connections kept in the pool, the rest are closed on release.
+     */
+    private final int maxIdle;
+
+    /**
+     * Maximum age of a connection in milliseconds (0 = forever).
+     */
+    private final long maxAgeMillis;
+
+    /**
+     * Period of the background check of the idle connections in milliseconds (0 = disabled).
+     */
+    private final long checkEveryMillis;
+
+    /**
+     * Test the connection before give it to the caller.
+     */
+    private final boolean validateOnBorrow;
+
+    /**
+     * Time to wait for a free connection in milliseconds.
+     */
+    private final long acquireTimeoutMillis;
+
+    /**
+     * The Constructor.
+     *
+     * @param minSize              number of connections opened at startup.
+     * @param maxSize              maximum number of connections borrowed at the same time.
+     * @param maxIdle              maximum number of idle connections kept in the pool.
+     * @param maxAgeMillis         maximum age of a connection (0 = forever).
+     * @param checkEveryMillis     period of the background check of idle connections (0 = disabled).
+     * @param validateOnBorrow     test the connection before give it to the caller.
+     * @param acquireTimeoutMillis time to wait for a free connection.
+     */
+    public ConnectionPoolConfig(int minSize,
+                                int maxSize,
+                                int maxIdle,
+                                long maxAgeMillis,
+                                long checkEveryMillis,
+                                boolean validateOnBorrow,
+                                long acquireTimeoutMillis) {
+
+        // The sizes
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maxSize of the pool must be at least 1");
+        }
+        if (minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("The minSize of the pool must be between 0 and maxSize");
+        }
+        if (maxIdle < minSize) {
+            throw new IllegalArgumentException("The maxIdle of the pool can't be less than minSize");
+        }
+
+        // The times
+        if (maxAgeMillis < 0 || checkEveryMillis < 0 || acquireTimeoutMillis < 0) {
+            throw new IllegalArgumentException("The times of the pool can't be negative");
+        }
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxIdle = maxIdle;
+        this.maxAgeMillis = maxAgeMillis;
+        this.checkEveryMillis = checkEveryMillis;
+        this.validateOnBorrow = validateOnBorrow;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * @return the number of connections opened at startup.
+     */
+    public int getMinSize() {
+        return this.minSize;
+    }
+
+    /**
+     * @return the maximum number of connections borrowed at the same time.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return the maximum number of idle connections.
+     */
+    public int getMaxIdle() {
+        return this.maxIdle;
+    }
+
+    /**
+     * @return the maximum age of a connection (0 = forever).
+     */
+    public long getMaxAgeMillis() {
+        return this.maxAgeMillis;
+    }
+
+    /**
+     * @return the period of the background check (0 = disabled).
+     */
+    public long getCheckEveryMillis() {
+        return this.checkEveryMillis;
+    }
+
+    /**
+     * @return true if the connection is tested before borrow.
+     */
+    public boolean isValidateOnBorrow() {
+        return this.validateOnBorrow;
+    }
+
+    /**
+     * @return the time to wait for a free connection.
+     */
+    public long getAcquireTimeoutMillis() {
+        return this.acquireTimeoutMillis;
+    }
+
+}
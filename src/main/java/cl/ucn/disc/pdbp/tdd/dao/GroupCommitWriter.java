@@ -0,0 +1,383 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The single writer of a database: the writes of all the threads wait in a queue and the writer runs
+ * the pending ones together, in one transaction (group commit: one fsync for all of them).
+ * If the transaction of a group fails, it's rolled back and each write of the group runs again in its own
+ * transaction, so a bad write doesn't fail the rest.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class GroupCommitWriter implements AutoCloseable {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    /**
+     * The end of the queue.
+     */
+    private static final Write<Object> STOP = new Write<>(() -> null);
+
+    /**
+     * The connections (the transactions use the connection to write).
+     */
+    private final ConnectionSource connectionSource;
+
+    /**
+     * Max number of writes in one transaction.
+     */
+    private final int maxGroupSize;
+
+    /**
+     * Called after each commit, before the writes are completed (to publish the new versions).
+     */
+    private final Runnable onCommit;
+
+    /**
+     * Called after each rollback, before the writes fail (to forget the changes cached).
+     */
+    private final Runnable onRollback;
+
+    /**
+     * The writes waiting.
+     */
+    private final BlockingQueue<Write<?>> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The thread of the writer.
+     */
+    private final Thread thread;
+
+    /**
+     * Guards the queue against the close (no write after the STOP).
+     */
+    private final Object lock = new Object();
+
+    /**
+     * True if closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Number of transactions committed (or rolled back).
+     */
+    private final AtomicLong groups = new AtomicLong();
+
+    /**
+     * Number of writes.
+     */
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * Number of writes run again alone.
+     */
+    private final AtomicLong retried = new AtomicLong();
+
+    /**
+     * The Constructor.
+     *
+     * @param connectionSource the connections to the database.
+     * @param maxGroupSize     max number of writes in one transaction.
+     * @param onRollback       called after each rollback.
+     */
+    public GroupCommitWriter(ConnectionSource connectionSource, int maxGroupSize, Runnable onRollback) {
+        this(connectionSource, maxGroupSize, () -> { }, onRollback);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param connectionSource the connections to the database.
+     * @param maxGroupSize     max number of writes in one transaction.
+     * @param onCommit         called after each commit (before the writes return).
+     * @param onRollback       called after each rollback.
+     */
+    public GroupCommitWriter(ConnectionSource connectionSource, int maxGroupSize, Runnable onCommit, Runnable onRollback) {
+
+        if (connectionSource == null) throw new IllegalArgumentException("Can't create the writer with connectionSource null");
+        if (onCommit == null) throw new IllegalArgumentException("Can't create the writer with onCommit null");
+        if (onRollback == null) throw new IllegalArgumentException("Can't create the writer with onRollback null");
+        if (maxGroupSize < 1) throw new IllegalArgumentException("The maxGroupSize must be at least 1");
+
+        this.connectionSource = connectionSource;
+        this.maxGroupSize = maxGroupSize;
+        this.onCommit = onCommit;
+        this.onRollback = onRollback;
+
+        this.thread = new Thread(this::run, "db-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Run the write in the next group and wait until committed.
+     *
+     * @param task the write.
+     * @param <T>  the type of the result.
+     * @return the result of the write.
+     */
+    public <T> T write(Callable<T> task) {
+
+        // The writer writing (a write inside other): already in the transaction
+        if (Thread.currentThread() == this.thread) {
+            try {
+                return task.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        try {
+            return this.submit(task).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Put the write in the queue.
+     *
+     * @param task the write.
+     * @param <T>  the type of the result.
+     * @return the future of the result (completed after the commit).
+     * @throws RejectedExecutionException if the writer is closed.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+
+        if (task == null) throw new IllegalArgumentException("Can't write a task null");
+
+        Write<T> write = new Write<>(task);
+        synchronized (this.lock) {
+            if (this.closed) throw new RejectedExecutionException("The writer is closed");
+            this.queue.add(write);
+        }
+        return write.future;
+    }
+
+    /**
+     * The loop of the writer.
+     */
+    private void run() {
+
+        List<Write<?>> group = new ArrayList<>(this.maxGroupSize);
+        boolean stop = false;
+        while (!stop) {
+
+            // Wait for the first, then all the pending ones
+            try {
+                group.add(this.queue.take());
+            } catch (InterruptedException ex) {
+                break;
+            }
+            this.queue.drainTo(group, this.maxGroupSize - 1);
+            stop = group.remove(STOP);
+
+            if (!group.isEmpty()) {
+                this.commit(group);
+            }
+            group.clear();
+        }
+
+        // The writes after the close
+        List<Write<?>> pending = new ArrayList<>();
+        this.queue.drainTo(pending);
+        for (Write<?> write : pending) {
+            write.future.completeExceptionally(new RejectedExecutionException("The writer is closed"));
+        }
+    }
+
+    /**
+     * Run the group in one transaction, or each write alone if the transaction fails.
+     *
+     * @param group the writes.
+     */
+    private void commit(List<Write<?>> group) {
+
+        this.groups.incrementAndGet();
+        this.writes.addAndGet(group.size());
+        try {
+            TransactionManager.callInTransaction(this.connectionSource, () -> {
+                for (Write<?> write : group) {
+                    write.call();
+                }
+                return null;
+            });
+            this.onCommit.run();
+            for (Write<?> write : group) {
+                write.complete();
+            }
+            return;
+        } catch (Exception ex) {
+            this.onRollback.run();
+            if (group.size() == 1) {
+                group.get(0).future.completeExceptionally(ex);
+                return;
+            }
+            log.debug("Group of {} writes rolled back, writing one by one: {}", group.size(), ex.getMessage());
+        }
+
+        // One by one
+        for (Write<?> write : group) {
+            this.retried.incrementAndGet();
+            this.groups.incrementAndGet();
+            try {
+                TransactionManager.callInTransaction(this.connectionSource, () -> {
+                    write.call();
+                    return null;
+                });
+                this.onCommit.run();
+                write.complete();
+            } catch (Exception ex) {
+                this.onRollback.run();
+                write.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * @return the number of transactions.
+     */
+    public long getGroupCount() {
+        return this.groups.get();
+    }
+
+    /**
+     * @return the number of writes.
+     */
+    public long getWriteCount() {
+        return this.writes.get();
+    }
+
+    /**
+     * @return the number of writes run again alone (after the rollback of the group).
+     */
+    public long getRetriedCount() {
+        return this.retried.get();
+    }
+
+    /**
+     * @return the number of writes waiting.
+     */
+    public int getPendingCount() {
+        return this.queue.size();
+    }
+
+    /**
+     * Write the pending writes and stop the writer.
+     */
+    @Override
+    public void close() {
+
+        synchronized (this.lock) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.queue.add(STOP);
+        }
+        try {
+            this.thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        // The writer interrupted before the STOP
+        List<Write<?>> pending = new ArrayList<>();
+        this.queue.drainTo(pending);
+        for (Write<?> write : pending) {
+            write.future.completeExceptionally(new RejectedExecutionException("The writer is closed"));
+        }
+    }
+
+    /**
+     * A write and its result.
+     *
+     * @param <T> the type of the result.
+     */
+    private static final class Write<T> {
+
+        /**
+         * The write.
+         */
+        private final Callable<T> task;
+
+        /**
+         * The future of the result.
+         */
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /**
+         * The result (until the commit).
+         */
+        private T result;
+
+        /**
+         * @param task the write.
+         */
+        private Write(Callable<T> task) {
+            this.task = task;
+        }
+
+        /**
+         * Run the write (inside the transaction).
+         */
+        private void call() throws Exception {
+            this.result = this.task.call();
+        }
+
+        /**
+         * The transaction was committed.
+         */
+        private void complete() {
+            this.future.complete(this.result);
+        }
+    }
+
+}
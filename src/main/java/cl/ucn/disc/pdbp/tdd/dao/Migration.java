@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.sql.SQLException;
+
+/**
+ * A change of the schema, applied one time by the {@link SchemaMigrator} (in Java or in SQL).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@FunctionalInterface
+public interface Migration {
+
+    /**
+     * Apply the change (inside the transaction of the migrator).
+     *
+     * @param connectionSource to use.
+     * @throws SQLException in case of error.
+     */
+    void migrate(ConnectionSource connectionSource) throws SQLException;
+
+    /**
+     * @param statements the SQL to execute, in order.
+     * @return the migration.
+     */
+    static Migration sql(String... statements) {
+
+        // Nullity
+        if (statements == null || statements.length == 0) {
+            throw new IllegalArgumentException("Can't create a migration without statements");
+        }
+
+        return connectionSource -> {
+            DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+            try {
+                for (String statement : statements) {
+                    connection.executeStatement(statement, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+                }
+            } finally {
+                connectionSource.releaseConnection(connection);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.jdbc.JdbcPooledConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe pool of JDBC connections.
+ * The {@link JdbcPooledConnectionSource} keep the idle connections, this class bound the number of
+ * connections borrowed at the same time (the callers wait until the acquire timeout) and count the metrics.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public class PooledConnectionSource extends JdbcPooledConnectionSource {
+
+    /**
+     * The configuration.
+     */
+    private final ConnectionPoolConfig config;
+
+    /**
+     * The permits to borrow a connection (fair, first come first served).
+     */
+    private final Semaphore permits;
+
+    /**
+     * Number of connections given.
+     */
+    private final AtomicLong acquired = new AtomicLong();
+
+    /**
+     * Number of callers that waited more than the acquire timeout.
+     */
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Total time waiting for a connection (nanos).
+     */
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Max time waiting for a connection (nanos).
+     */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * The Constructor.
+     *
+     * @param databaseUrl jdbc string to connect to backend.
+     * @param config      the configuration of the pool.
+     * @throws SQLException in case of error opening the connections.
+     */
+    public PooledConnectionSource(String databaseUrl, ConnectionPoolConfig config) throws SQLException {
+
+        // Nullity
+        if (databaseUrl == null) throw new IllegalArgumentException("Can't create the pool with databaseUrl null");
+        if (config == null) throw new IllegalArgumentException("Can't create the pool with config null");
+
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+
+        // The idle connections
+        super.setUrl(databaseUrl);
+        super.setMaxConnectionsFree(config.getMaxIdle());
+        if (config.getMaxAgeMillis() > 0) {
+            super.setMaxConnectionAgeMillis(config.getMaxAgeMillis());
+        }
+        super.setCheckConnectionsEveryMillis(config.getCheckEveryMillis());
+        super.setTestBeforeGet(config.isValidateOnBorrow());
+        super.initialize();
+
+        // Open the first connections
+        this.warmUp();
+    }
+
+    /**
+     * Open the minSize connections and give back to the pool.
+     */
+    private void warmUp() throws SQLException {
+
+        List<DatabaseConnection> connections = new ArrayList<>(this.config.getMinSize());
+        try {
+            for (int i = 0; i < this.config.getMinSize(); i++) {
+                connections.add(this.getReadWriteConnection(null));
+            }
+        } finally {
+            for (DatabaseConnection connection : connections) {
+                this.releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Wait for a permit and then borrow a connection from the pool.
+     *
+     * @see JdbcPooledConnectionSource#getReadWriteConnection(String)
+     */
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+
+        // Inside a transaction: the same connection, already counted
+        if (super.getSavedConnection() != null) {
+            return super.getReadWriteConnection(tableName);
+        }
+
+        // Wait for a permit
+        long start = System.nanoTime();
+        try {
+            if (!this.permits.tryAcquire(this.config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                this.timeouts.incrementAndGet();
+                throw new SQLException("Timeout waiting for a connection after "
+                        + this.config.getAcquireTimeoutMillis() + " ms (" + this.config.getMaxSize() + " in use)");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", ex);
+        } finally {
+            this.recordWait(System.nanoTime() - start);
+        }
+
+        // Borrow from the pool
+        try {
+            DatabaseConnection connection = super.getReadWriteConnection(tableName);
+            this.acquired.incrementAndGet();
+            return connection;
+        } catch (SQLException | RuntimeException ex) {
+            this.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Give back the connection to the pool and the permit to the next caller.
+     *
+     * @see JdbcPooledConnectionSource#releaseConnection(DatabaseConnection)
+     */
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+
+        // Inside a transaction: the connection is released at the end of the transaction
+        if (super.isSavedConnection(connection)) {
+            super.releaseConnection(connection);
+            return;
+        }
+
+        try {
+            super.releaseConnection(connection);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * @param nanos waited for a permit.
+     */
+    private void recordWait(long nanos) {
+        this.waitNanos.addAndGet(nanos);
+        long max = this.maxWaitNanos.get();
+        while (nanos > max && !this.maxWaitNanos.compareAndSet(max, nanos)) {
+            max = this.maxWaitNanos.get();
+        }
+    }
+
+    /**
+     * @return the configuration.
+     */
+    public ConnectionPoolConfig getConfig() {
+        return this.config;
+    }
+
+    /**
+     * @return the number of connections borrowed now.
+     */
+    public int getActiveCount() {
+        return this.config.getMaxSize() - this.permits.availablePermits();
+    }
+
+    /**
+     * @return the number of idle connections in the pool.
+     */
+    public int getIdleCount() {
+        return super.getCurrentConnectionsFree();
+    }
+
+    /**
+     * @return the (estimated) number of callers waiting for a connection.
+     */
+    public int getWaitersCount() {
+        return this.permits.getQueueLength();
+    }
+
+    /**
+     * @return the number of connections given.
+     */
+    public long getAcquiredCount() {
+        return this.acquired.get();
+    }
+
+    /**
+     * @return the number of callers that waited more than the acquire timeout.
+     */
+    public long getTimeoutCount() {
+        return this.timeouts.get();
+    }
+
+    /**
+     * @return the total time waiting for a connection in milliseconds.
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.waitNanos.get());
+    }
+
+    /**
+     * @return the max time waiting for a connection in milliseconds.
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos.get());
+    }
+
+}
@@ -26,6 +26,7 @@ package cl.ucn.disc.pdbp.tdd.dao;
 
 import com.j256.ormlite.stmt.QueryBuilder;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -41,6 +42,30 @@ public interface Repository<T, K> {
      */
     List<T> findAll();
 
+    /**
+     * @param limit  max number of T.
+     * @param offset number of T to skip.
+     * @return the page of T, ordered by id.
+     */
+    List<T> findAll(long limit, long offset);
+
+    /**
+     * Keyset pagination: the cost doesn't depend on the position of the page.
+     *
+     * @param lastId the last id of the previous page (null for the first page).
+     * @param limit  max number of T.
+     * @return the T with id greater than lastId, ordered by id.
+     */
+    List<T> findAllAfter(K lastId, long limit);
+
+    /**
+     * Iterate over all the T without loading the list in memory.
+     * The foreign fields of the fetch plan are loaded in chunks while iterating.
+     *
+     * @return the {@link Cursor} of T, ordered by id (must be closed).
+     */
+    Cursor<T> cursor();
+
     /**
      *
      * @param key to filter.
@@ -49,23 +74,72 @@ public interface Repository<T, K> {
      */
     List<T> findAll(String key, Object value);
 
+    /**
+     * @param key  to filter (a column with index).
+     * @param from the min value (inclusive).
+     * @param to   the max value (inclusive).
+     * @return the list of T with key between from and to, ordered by key.
+     */
+    List<T> findAllBetween(String key, Object from, Object to);
+
+    /**
+     * @param query to run.
+     * @return the list of T (with the foreign fields of the fetch plan).
+     */
+    List<T> findAll(QueryBuilder<T, K> query);
+
     /**
      * @return the{@link QueryBuilder}
      */
     QueryBuilder<T,K> getQuery();
 
+    /**
+     * @param key   to filter (a unique column).
+     * @param value to search.
+     * @return the first T with key = value (null if not found).
+     */
+    T findFirst(String key, Object value);
+
     /**
      * @param id to search.
      * @return the T with id.
      */
     T findById(K id);
 
+    /**
+     * @param ids to search.
+     * @return the list of T with the ids (in any order, without the ids not found).
+     */
+    List<T> findAllById(Collection<K> ids);
+
+    /**
+     * @param t to inspect.
+     * @return the id of t.
+     */
+    K extractId(T t);
+
+    /**
+     * Load the foreign field after each read, in batch ({@link #findAllById(Collection)}).
+     *
+     * @param fieldName  of the foreign field.
+     * @param repository of the foreign objects.
+     */
+    void fetch(String fieldName, Repository<?, ?> repository);
+
     /**
      * @param t to save.
      * @return true.
      */
     boolean create(T t);
 
+    /**
+     * Save all the T in one transaction: all or nothing.
+     *
+     * @param ts to save.
+     * @return the number of T saved.
+     */
+    int createAll(Collection<T> ts);
+
     /**
      * @param t to upate.
      * @return true.
@@ -78,4 +152,23 @@ public interface Repository<T, K> {
      */
     boolean delete(K id);
 
+    /**
+     * The version of the table: changes with each create, update or delete of this repository once committed
+     * (the writes of other processes aren't seen) and never repeats after a restart.
+     *
+     * @return the version.
+     */
+    long getVersion();
+
+    /**
+     * Change the version after the commit of a transaction with writes of this repository
+     * (inside a transaction the version doesn't change until then).
+     */
+    void afterCommit();
+
+    /**
+     * Forget the writes of this repository inside a transaction rolled back (the version doesn't change).
+     */
+    void afterRollback();
+
 }
@@ -24,13 +24,33 @@
 
 package cl.ucn.disc.pdbp.tdd.dao;
 
+import cl.ucn.disc.pdbp.tdd.metrics.Histogram;
+import cl.ucn.disc.pdbp.tdd.metrics.Metrics;
+import cl.ucn.disc.pdbp.tdd.metrics.QueryTrace;
+import com.j256.ormlite.dao.BaseDaoImpl;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableInfo;
 
+import java.lang.reflect.Field;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The {@link Repository} implementation with ORMLite.
@@ -40,11 +60,46 @@ import java.util.List;
  */
 public class RepositoryOrmLite<T, K> implements Repository<T, K> {
 
+    /**
+     * Max number of ids in one IN (...) clause (SQLite supports 999 arguments).
+     */
+    private static final int MAX_IN_SIZE = 500;
+
+    /**
+     * Number of T read by the cursor in each page (keyset) before loading the foreign fields.
+     */
+    private static final int CURSOR_CHUNK_SIZE = 100;
+
     /**
      * The Generic Dao.
      */
     private final Dao<T, K> theDao;
 
+    /**
+     * The foreign fields loaded in batch after each read.
+     */
+    private final List<Fetch> fetchPlan = new CopyOnWriteArrayList<>();
+
+    /**
+     * The name of the table (label of the metrics).
+     */
+    private final String table;
+
+    /**
+     * The timers of the operations, by name.
+     */
+    private final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+
+    /**
+     * The version of the table: starts at the time of creation (in micros) and grows with each write.
+     */
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    /**
+     * True if a write inside the transaction of the thread (not committed yet) didn't change the version.
+     */
+    private final ThreadLocal<Boolean> uncommitted = new ThreadLocal<>();
+
     /**
      * The Constructor.
      *
@@ -57,6 +112,25 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
         }
+        this.table = theDao.getTableName();
+    }
+
+    /**
+     * Count the time of the operation (and the operation in the trace of the request).
+     *
+     * @param operation the name of the operation.
+     * @param start     the time of the start (nanos).
+     */
+    private void record(String operation, long start) {
+        long elapsed = System.nanoTime() - start;
+        Histogram timer = this.timers.get(operation);
+        if (timer == null) {
+            timer = Metrics.timer("repository_operation_duration_seconds", "Latency of the operations of the repositories.",
+                    "table", this.table, "operation", operation);
+            this.timers.put(operation, timer);
+        }
+        timer.record(elapsed);
+        QueryTrace.operation();
     }
 
     /**
@@ -64,23 +138,144 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
      */
     @Override
     public List<T> findAll() {
+        long start = System.nanoTime();
+        try {
+            return this.resolve(theDao.queryForAll());
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAll", start);
+        }
+    }
+
+    /**
+     * @param limit  max number of T.
+     * @param offset number of T to skip.
+     * @return the page of T, ordered by id.
+     */
+    @Override
+    public List<T> findAll(long limit, long offset) {
+
+        if (limit < 1 || offset < 0) {
+            throw new IllegalArgumentException("Wrong page: limit " + limit + ", offset " + offset);
+        }
+
+        long start = System.nanoTime();
+        try {
+            return this.resolve(theDao.queryBuilder()
+                    .orderBy(this.getIdField().getColumnName(), true)
+                    .limit(limit)
+                    .offset(offset)
+                    .query());
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAllPage", start);
+        }
+    }
+
+    /**
+     * @param lastId the last id of the previous page (null for the first page).
+     * @param limit  max number of T.
+     * @return the T with id greater than lastId, ordered by id.
+     */
+    @Override
+    public List<T> findAllAfter(K lastId, long limit) {
+        return this.findAllAfter(lastId, limit, "findAllAfter");
+    }
+
+    /**
+     * @param lastId    the last id of the previous page (null for the first page).
+     * @param limit     max number of T.
+     * @param operation the name of the timer.
+     * @return the T with id greater than lastId, ordered by id.
+     */
+    private List<T> findAllAfter(K lastId, long limit, String operation) {
+
+        if (limit < 1) {
+            throw new IllegalArgumentException("Wrong page: limit " + limit);
+        }
+
+        long start = System.nanoTime();
         try {
-            return theDao.queryForAll();
+            String idColumn = this.getIdField().getColumnName();
+            QueryBuilder<T, K> query = theDao.queryBuilder()
+                    .orderBy(idColumn, true)
+                    .limit(limit);
+            if (lastId != null) {
+                query.where().gt(idColumn, lastId);
+            }
+            return this.resolve(query.query());
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record(operation, start);
         }
     }
 
+    /**
+     * @return the {@link Cursor} of T, ordered by id (must be closed).
+     */
+    @Override
+    public Cursor<T> cursor() {
+        return new ChunkedCursor();
+    }
+
     /**
      * @param key to filter.
      * @param value to search.
      * @return theDao.queryForEq(key,value)
      */
     public List<T> findAll(String key, Object value){
+        long start = System.nanoTime();
         try{
-            return theDao.queryForEq(key,value);
+            return this.resolve(theDao.queryForEq(key,value));
         }catch(SQLException throwables){
             throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAllByKey", start);
+        }
+    }
+
+    /**
+     * @param key  to filter (a column with index).
+     * @param from the min value (inclusive).
+     * @param to   the max value (inclusive).
+     * @return the list of T with key between from and to, ordered by key.
+     */
+    @Override
+    public List<T> findAllBetween(String key, Object from, Object to) {
+
+        // Nullity
+        if (key == null || from == null || to == null) {
+            throw new IllegalArgumentException("Can't find between with key, from or to null");
+        }
+
+        long start = System.nanoTime();
+        try {
+            QueryBuilder<T, K> query = theDao.queryBuilder().orderBy(key, true);
+            query.where().between(key, from, to);
+            return this.resolve(query.query());
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAllBetween", start);
+        }
+    }
+
+    /**
+     * @param query to run.
+     * @return the list of T (with the foreign fields of the fetch plan).
+     */
+    @Override
+    public List<T> findAll(QueryBuilder<T, K> query) {
+        long start = System.nanoTime();
+        try {
+            return this.resolve(query.query());
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAllByQuery", start);
         }
     }
 
@@ -91,29 +286,206 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
         return theDao.queryBuilder();
     }
 
+    /**
+     * @param key   to filter (a unique column).
+     * @param value to search.
+     * @return the first T with key = value (null if not found).
+     */
+    @Override
+    public T findFirst(String key, Object value) {
+        long start = System.nanoTime();
+        try {
+            T t = theDao.queryBuilder().limit(1L).where().eq(key, value).queryForFirst();
+            if (t != null && !this.fetchPlan.isEmpty()) {
+                this.resolve(Collections.singletonList(t));
+            }
+            return t;
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findFirst", start);
+        }
+    }
+
     /**
      * @param id to search.
      * @return the T with id.
      */
     @Override
     public T findById(K id) {
+        long start = System.nanoTime();
+        try {
+            T t = theDao.queryForId(id);
+            if (t != null && !this.fetchPlan.isEmpty()) {
+                this.resolve(Collections.singletonList(t));
+            }
+            return t;
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findById", start);
+        }
+    }
+
+    /**
+     * @param ids to search.
+     * @return the list of T with the ids: SELECT * FROM T WHERE id IN (...).
+     */
+    @Override
+    public List<T> findAllById(Collection<K> ids) {
+
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        try {
+            String idColumn = this.getIdField().getColumnName();
+            List<K> all = new ArrayList<>(new LinkedHashSet<>(ids));
+            List<T> list = new ArrayList<>(all.size());
+            for (int from = 0; from < all.size(); from += MAX_IN_SIZE) {
+                List<K> chunk = all.subList(from, Math.min(all.size(), from + MAX_IN_SIZE));
+                list.addAll(theDao.queryBuilder().where().in(idColumn, chunk).query());
+            }
+            return this.resolve(list);
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("findAllById", start);
+        }
+    }
+
+    /**
+     * @param t to inspect.
+     * @return the id of t.
+     */
+    @Override
+    public K extractId(T t) {
         try {
-            return theDao.queryForId(id);
+            return theDao.extractId(t);
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
         }
     }
 
+    /**
+     * @param fieldName  of the foreign field.
+     * @param repository of the foreign objects.
+     */
+    @Override
+    public void fetch(String fieldName, Repository<?, ?> repository) {
+
+        // Nullity
+        if (fieldName == null || repository == null) {
+            throw new IllegalArgumentException("Can't fetch with fieldName or repository null");
+        }
+
+        for (FieldType fieldType : this.getTableInfo().getFieldTypes()) {
+            if (fieldType.getFieldName().equals(fieldName)) {
+                if (!fieldType.isForeign()) {
+                    throw new IllegalArgumentException("The field " + fieldName + " is not foreign");
+                }
+                this.fetchPlan.add(new Fetch(fieldType, repository));
+                return;
+            }
+        }
+        throw new IllegalArgumentException("The field " + fieldName + " doesn't exist in " + theDao.getDataClass());
+    }
+
+    /**
+     * Load the foreign objects of the fetch plan (one findAllById per field).
+     *
+     * @param list of T to resolve.
+     * @return the list.
+     */
+    private List<T> resolve(List<T> list) throws SQLException {
+
+        if (list.isEmpty()) {
+            return list;
+        }
+
+        for (Fetch fetch : this.fetchPlan) {
+            fetch.resolve(list);
+        }
+        return list;
+    }
+
+    /**
+     * @return the table info of the dao.
+     */
+    private TableInfo<T, K> getTableInfo() {
+        return ((BaseDaoImpl<T, K>) theDao).getTableInfo();
+    }
+
+    /**
+     * Give to the T created its (lazy) foreign collections, as the T read.
+     *
+     * @param t created.
+     */
+    private void assignForeignCollections(T t) throws SQLException {
+        for (FieldType fieldType : this.getTableInfo().getFieldTypes()) {
+            if (fieldType.isForeignCollection() && fieldType.extractJavaFieldValue(t) == null) {
+                theDao.assignEmptyForeignCollection(t, fieldType.getFieldName());
+            }
+        }
+    }
+
+    /**
+     * @return the id field of the table.
+     */
+    private FieldType getIdField() {
+        return this.getTableInfo().getIdField();
+    }
+
     /**
      * @param t to save.
      * @return true.
      */
     @Override
     public boolean create(T t) {
+        long start = System.nanoTime();
         try {
-            return theDao.create(t) == 1;
+            boolean created = theDao.create(t) == 1;
+            this.assignForeignCollections(t);
+            this.written(created);
+            return created;
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record("create", start);
+        }
+    }
+
+    /**
+     * One transaction with all the inserts (the same connection and prepared statement).
+     *
+     * @param ts to save.
+     * @return the number of T saved.
+     */
+    @Override
+    public int createAll(Collection<T> ts) {
+
+        // Nullity
+        if (ts == null) {
+            throw new IllegalArgumentException("Can't create with ts null");
+        }
+
+        if (ts.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        try {
+            int created = TransactionManager.callInTransaction(theDao.getConnectionSource(), () -> theDao.create(ts));
+            for (T t : ts) {
+                this.assignForeignCollections(t);
+            }
+            this.written(created > 0);
+            return created;
+        } catch (SQLException throwables) {
+            throw new RuntimeException(throwables);
+        } finally {
+            this.record("createAll", start);
         }
     }
 
@@ -123,10 +495,15 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
      */
     @Override
     public boolean update(T t) {
+        long start = System.nanoTime();
         try {
-            return theDao.update(t) == 1;
+            boolean updated = theDao.update(t) == 1;
+            this.written(updated);
+            return updated;
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record("update", start);
         }
     }
 
@@ -136,11 +513,241 @@ public class RepositoryOrmLite<T, K> implements Repository<T, K> {
      */
     @Override
     public boolean delete(K id) {
+        long start = System.nanoTime();
         try {
-            return theDao.deleteById(id) == 1;
+            boolean deleted = theDao.deleteById(id) == 1;
+            this.written(deleted);
+            return deleted;
         } catch (SQLException throwables) {
             throw new RuntimeException(throwables);
+        } finally {
+            this.record("delete", start);
+        }
+    }
+
+    /**
+     * @return the version of the table.
+     */
+    @Override
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    /**
+     * The version of the writes inside the transaction of the thread changes now.
+     */
+    @Override
+    public void afterCommit() {
+        if (this.uncommitted.get() != null) {
+            this.uncommitted.remove();
+            this.version.incrementAndGet();
+        }
+    }
+
+    /**
+     * The writes inside the transaction of the thread are gone: the version doesn't change.
+     */
+    @Override
+    public void afterRollback() {
+        this.uncommitted.remove();
+    }
+
+    /**
+     * A write done: outside a transaction (autocommit) the version changes now, inside waits for the commit
+     * (a read of the old rows can't be cached with the new version).
+     *
+     * @param changed false if no row was written.
+     */
+    private void written(boolean changed) throws SQLException {
+
+        if (!changed) {
+            return;
+        }
+
+        // The connection of the transaction (saved by the TransactionManager), or the only connection
+        ConnectionSource connectionSource = theDao.getConnectionSource();
+        DatabaseConnection connection = connectionSource.getSpecialConnection(this.table);
+        boolean inTransaction;
+        if (connection != null) {
+            inTransaction = true;
+        } else if (connectionSource.isSingleConnection(this.table)) {
+            connection = connectionSource.getReadWriteConnection(this.table);
+            try {
+                inTransaction = !connection.isAutoCommit();
+            } finally {
+                connectionSource.releaseConnection(connection);
+            }
+        } else {
+            inTransaction = false;
+        }
+
+        if (inTransaction) {
+            this.uncommitted.set(Boolean.TRUE);
+        } else {
+            this.version.incrementAndGet();
         }
     }
 
+    /**
+     * A foreign field of the fetch plan.
+     */
+    private static final class Fetch {
+
+        /**
+         * The foreign field.
+         */
+        private final FieldType fieldType;
+
+        /**
+         * The java field.
+         */
+        private final Field field;
+
+        /**
+         * The repository of the foreign objects.
+         */
+        private final Repository<Object, Object> repository;
+
+        /**
+         * The Constructor.
+         */
+        @SuppressWarnings("unchecked")
+        Fetch(FieldType fieldType, Repository<?, ?> repository) {
+            this.fieldType = fieldType;
+            this.field = fieldType.getField();
+            this.field.setAccessible(true);
+            this.repository = (Repository<Object, Object>) repository;
+        }
+
+        /**
+         * @param list of objects to complete with the foreign objects.
+         */
+        void resolve(List<?> list) throws SQLException {
+
+            // The ids of the foreign objects
+            FieldType foreignIdField = this.fieldType.getForeignIdField();
+            Set<Object> ids = new LinkedHashSet<>();
+            for (Object t : list) {
+                Object foreign = this.fieldType.extractRawJavaFieldValue(t);
+                if (foreign != null) {
+                    ids.add(foreignIdField.extractRawJavaFieldValue(foreign));
+                }
+            }
+            ids.remove(null);
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            // One query: id -> foreign object
+            Map<Object, Object> loaded = new HashMap<>();
+            for (Object foreign : this.repository.findAllById(ids)) {
+                loaded.put(this.repository.extractId(foreign), foreign);
+            }
+
+            // Replace the foreign objects (only with the id) with the loaded
+            try {
+                for (Object t : list) {
+                    Object foreign = this.fieldType.extractRawJavaFieldValue(t);
+                    if (foreign != null) {
+                        Object full = loaded.get(foreignIdField.extractRawJavaFieldValue(foreign));
+                        if (full != null) {
+                            this.field.set(t, full);
+                        }
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw new SQLException("Can't assign the field " + this.fieldType.getFieldName(), ex);
+            }
+        }
+    }
+
+    /**
+     * The {@link Cursor} by keyset pages: read a chunk of T with {@link #findAllAfter(Object, long)} (the
+     * connection is given back before loading the foreign fields of the chunk) and then give the T one by one.
+     * A stream never holds a connection while waits for other (the fetch plan uses the same pool).
+     */
+    private final class ChunkedCursor implements Cursor<T> {
+
+        /**
+         * The current chunk.
+         */
+        private List<T> chunk = Collections.emptyList();
+
+        /**
+         * Position in the chunk.
+         */
+        private int position;
+
+        /**
+         * The id of the last T read (null before the first chunk).
+         */
+        private K lastId;
+
+        /**
+         * true after the last chunk or the close.
+         */
+        private boolean closed;
+
+        /**
+         * @return true if there are more T.
+         */
+        @Override
+        public boolean hasNext() {
+
+            if (this.position < this.chunk.size()) {
+                return true;
+            }
+            if (this.closed) {
+                return false;
+            }
+
+            // Read the next chunk (a short chunk is the last one)
+            this.chunk = findAllAfter(this.lastId, CURSOR_CHUNK_SIZE, "cursor");
+            this.position = 0;
+            if (this.chunk.size() < CURSOR_CHUNK_SIZE) {
+                this.closed = true;
+            }
+            if (this.chunk.isEmpty()) {
+                return false;
+            }
+
+            this.lastId = this.idOf(this.chunk.get(this.chunk.size() - 1));
+            return true;
+        }
+
+        /**
+         * @param t the T.
+         * @return the id of T.
+         */
+        @SuppressWarnings("unchecked")
+        private K idOf(T t) {
+            try {
+                return (K) getIdField().extractJavaFieldValue(t);
+            } catch (SQLException throwables) {
+                throw new RuntimeException(throwables);
+            }
+        }
+
+        /**
+         * @return the next T.
+         */
+        @Override
+        public T next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.chunk.get(this.position++);
+        }
+
+        /**
+         * No more chunks (without connection to give back).
+         */
+        @Override
+        public void close() {
+            this.closed = true;
+            this.chunk = Collections.emptyList();
+        }
+
+    }
+
 }
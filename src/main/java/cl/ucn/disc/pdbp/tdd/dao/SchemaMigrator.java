@@ -0,0 +1,252 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The versions of the schema: the migrations are applied in order, each one in a transaction with its row in
+ * the table schema_version. When the version of the database is the last one, the start costs one query
+ * (without the creation of tables or the introspection of the schema).
+ * The migrations are append only: an applied migration can't change, a new version makes the change.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class SchemaMigrator {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    /**
+     * The table of the versions applied.
+     */
+    public static final String TABLE = "schema_version";
+
+    /**
+     * The lock of the migrations in this JVM (the same database opened by many {@link ConnectionSource}).
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * The migrations by version.
+     */
+    private final NavigableMap<Integer, Step> steps = new TreeMap<>();
+
+    /**
+     * Add a migration.
+     *
+     * @param version     of the schema after the migration (greater than 0, unique).
+     * @param description of the change.
+     * @param migration   the change.
+     * @return the migrator.
+     */
+    public SchemaMigrator add(int version, String description, Migration migration) {
+
+        // Nullity
+        if (description == null || migration == null) {
+            throw new IllegalArgumentException("Can't add a migration with description or migration null");
+        }
+        if (version < 1) {
+            throw new IllegalArgumentException("The version must be greater than 0");
+        }
+        if (this.steps.containsKey(version)) {
+            throw new IllegalArgumentException("The version " + version + " already exists");
+        }
+
+        this.steps.put(version, new Step(description, migration));
+        return this;
+    }
+
+    /**
+     * @return the last version of the schema (0 without migrations).
+     */
+    public int getLatestVersion() {
+        return this.steps.isEmpty() ? 0 : this.steps.lastKey();
+    }
+
+    /**
+     * @param connectionSource to use.
+     * @return the version of the database (0 without the table of versions).
+     * @throws SQLException in case of error.
+     */
+    public int getVersion(ConnectionSource connectionSource) throws SQLException {
+        return Math.max(0, this.version(connectionSource));
+    }
+
+    /**
+     * Apply the migrations after the version of the database.
+     *
+     * @param connectionSource to use.
+     * @return the number of migrations applied (0 if the version is the last one).
+     * @throws SQLException in case of error (the migration failed isn't applied, the next start try again).
+     */
+    public int migrate(ConnectionSource connectionSource) throws SQLException {
+
+        // Nullity
+        if (connectionSource == null) {
+            throw new IllegalArgumentException("Can't migrate with connectionSource null");
+        }
+
+        // The fast path: the version is the last one
+        int version = this.version(connectionSource);
+        if (version == this.getLatestVersion()) {
+            log.debug("Schema at version {}.", version);
+            return 0;
+        }
+
+        synchronized (LOCK) {
+
+            this.createTable(connectionSource);
+            version = this.version(connectionSource);
+            if (version > this.getLatestVersion()) {
+                log.warn("Schema at version {}, newer than the last migration {}.", version, this.getLatestVersion());
+                return 0;
+            }
+
+            int applied = 0;
+            for (Map.Entry<Integer, Step> entry : this.steps.tailMap(version, false).entrySet()) {
+                this.apply(connectionSource, entry.getKey(), entry.getValue());
+                applied++;
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * The version without the introspection of the schema: the query fails if the table doesn't exist.
+     *
+     * @param connectionSource to use.
+     * @return the version of the database (-1 without the table of versions).
+     * @throws SQLException in case of error.
+     */
+    private int version(ConnectionSource connectionSource) throws SQLException {
+
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(TABLE);
+        try {
+            return (int) connection.queryForLong("SELECT MAX(" + escape(connectionSource, "version")
+                    + ") FROM " + escape(connectionSource, TABLE));
+        } catch (SQLException ex) {
+            return -1;
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Create the table of versions (if not exists).
+     *
+     * @param connectionSource to use.
+     * @throws SQLException in case of error.
+     */
+    private void createTable(ConnectionSource connectionSource) throws SQLException {
+        Migration.sql("CREATE TABLE IF NOT EXISTS " + escape(connectionSource, TABLE) + " ("
+                + escape(connectionSource, "version") + " INTEGER NOT NULL PRIMARY KEY, "
+                + escape(connectionSource, "description") + " VARCHAR(255) NOT NULL, "
+                + escape(connectionSource, "installed_on") + " BIGINT NOT NULL, "
+                + escape(connectionSource, "duration_millis") + " BIGINT NOT NULL)").migrate(connectionSource);
+    }
+
+    /**
+     * Apply the migration and save the version in the same transaction.
+     *
+     * @param connectionSource to use.
+     * @param version          of the migration.
+     * @param step             the migration.
+     * @throws SQLException in case of error.
+     */
+    private void apply(ConnectionSource connectionSource, int version, Step step) throws SQLException {
+
+        log.info("Migrating the schema to version {}: {} ..", version, step.description);
+        long start = System.nanoTime();
+
+        TransactionManager.callInTransaction(connectionSource, () -> {
+            step.migration.migrate(connectionSource);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Migration.sql("INSERT INTO " + escape(connectionSource, TABLE) + " ("
+                    + escape(connectionSource, "version") + ", "
+                    + escape(connectionSource, "description") + ", "
+                    + escape(connectionSource, "installed_on") + ", "
+                    + escape(connectionSource, "duration_millis") + ") VALUES ("
+                    + version + ", '" + step.description.replace("'", "''") + "', "
+                    + System.currentTimeMillis() + ", " + millis + ")").migrate(connectionSource);
+            return null;
+        });
+
+        log.info("Schema at version {} in {} ms.", version, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * @param connectionSource to use.
+     * @param name             of the table or column.
+     * @return the name escaped for the database.
+     */
+    private static String escape(ConnectionSource connectionSource, String name) {
+        StringBuilder sb = new StringBuilder();
+        connectionSource.getDatabaseType().appendEscapedEntityName(sb, name);
+        return sb.toString();
+    }
+
+    /**
+     * A migration.
+     */
+    private static final class Step {
+
+        /**
+         * The description of the change.
+         */
+        private final String description;
+
+        /**
+         * The change.
+         */
+        private final Migration migration;
+
+        /**
+         * The Constructor.
+         *
+         * @param description of the change.
+         * @param migration   the change.
+         */
+        Step(String description, Migration migration) {
+            this.description = description;
+            this.migration = migration;
+        }
+
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.support.DatabaseConnection;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The connections to a database of SQLite tuned for many readers and one writer:
+ * - The journal in WAL mode: the readers don't block the writer and the writer doesn't block the readers.
+ * - One connection to write (SQLite serializes the writers anyway, so they never wait for SQLITE_BUSY).
+ * - A pool of connections to read, sized by the configuration.
+ * Inside a transaction the reads use the connection of the transaction (to see the changes not committed).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public class SqliteConnectionSource extends PooledConnectionSource {
+
+    /**
+     * The pragmas of each connection: WAL, fsync only at checkpoints, 16MB of cache, 256MB mapped in memory,
+     * temporal tables in memory and wait 5s for a lock before SQLITE_BUSY.
+     */
+    private static final String PRAGMAS = "journal_mode=WAL"
+            + "&synchronous=NORMAL"
+            + "&cache_size=-16000"
+            + "&mmap_size=268435456"
+            + "&temp_store=MEMORY"
+            + "&busy_timeout=5000";
+
+    /**
+     * The configuration of the writer: a single connection, always open.
+     */
+    private static final ConnectionPoolConfig WRITER = new ConnectionPoolConfig(1, 1, 1, 0, 0, false, 30_000);
+
+    /**
+     * The connections to read.
+     */
+    private final PooledConnectionSource readers;
+
+    /**
+     * The connections of the readers borrowed now (null while the writer starts).
+     */
+    private final Set<DatabaseConnection> borrowed = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * The Constructor.
+     *
+     * @param databaseUrl  jdbc string to connect to backend (jdbc:sqlite:..).
+     * @param readersConfig the configuration of the pool of readers.
+     * @throws SQLException in case of error opening the connections.
+     */
+    public SqliteConnectionSource(String databaseUrl, ConnectionPoolConfig readersConfig) throws SQLException {
+
+        // The writer first: the WAL mode is stored in the file
+        super(tune(databaseUrl), WRITER);
+
+        if (readersConfig == null) throw new IllegalArgumentException("Can't create the pool with config null");
+        this.readers = new PooledConnectionSource(tune(databaseUrl), readersConfig);
+    }
+
+    /**
+     * @param databaseUrl the url to check.
+     * @return true if the database is SQLite.
+     */
+    public static boolean isSqlite(String databaseUrl) {
+        return databaseUrl != null && databaseUrl.startsWith("jdbc:sqlite:");
+    }
+
+    /**
+     * Add the pragmas to the url (the driver of SQLite reads them from the query string).
+     *
+     * @param databaseUrl the jdbc url of SQLite.
+     * @return the url with the pragmas.
+     */
+    static String tune(String databaseUrl) {
+        if (!isSqlite(databaseUrl)) {
+            throw new IllegalArgumentException("Not a database of SQLite: " + databaseUrl);
+        }
+        return databaseUrl + (databaseUrl.indexOf('?') < 0 ? '?' : '&') + PRAGMAS;
+    }
+
+    /**
+     * A connection of the readers (or the connection of the transaction in progress).
+     *
+     * @see PooledConnectionSource#getReadOnlyConnection(String)
+     */
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+
+        // Inside a transaction
+        if (super.getSavedConnection() != null) {
+            return super.getReadWriteConnection(tableName);
+        }
+
+        DatabaseConnection connection = this.readers.getReadWriteConnection(tableName);
+        this.borrowed.add(connection);
+        return connection;
+    }
+
+    /**
+     * Give back the connection to the pool of the readers or to the writer.
+     *
+     * @see PooledConnectionSource#releaseConnection(DatabaseConnection)
+     */
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        if (this.borrowed != null && this.borrowed.remove(connection)) {
+            this.readers.releaseConnection(connection);
+        } else {
+            super.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * @return the pool of readers (metrics).
+     */
+    public PooledConnectionSource getReaders() {
+        return this.readers;
+    }
+
+    /**
+     * Close the writer and the readers.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            this.readers.close();
+        }
+    }
+
+}
@@ -0,0 +1,407 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import cl.ucn.disc.pdbp.tdd.metrics.QueryTrace;
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.field.SqlType;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.StatementBuilder;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+import com.j256.ormlite.support.GeneratedKeyHolder;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * A {@link ConnectionSource} that count the statements (and their time) in the {@link QueryTrace} of the thread.
+ * The connections given are wrappers: the delegate always receive (and release) its own connections.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class TracingConnectionSource implements ConnectionSource {
+
+    /**
+     * The source of the connections.
+     */
+    private final ConnectionSource delegate;
+
+    /**
+     * The Constructor.
+     *
+     * @param delegate the source of the connections.
+     */
+    public TracingConnectionSource(ConnectionSource delegate) {
+        if (delegate == null) throw new IllegalArgumentException("Can't trace a connectionSource null");
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param connection maybe traced.
+     * @return the connection of the delegate.
+     */
+    public static DatabaseConnection unwrap(DatabaseConnection connection) {
+        return connection instanceof TracedConnection ? ((TracedConnection) connection).delegate : connection;
+    }
+
+    /**
+     * @param connection of the delegate.
+     * @return the connection traced (null if null).
+     */
+    private static DatabaseConnection wrap(DatabaseConnection connection) {
+        return connection == null ? null : new TracedConnection(connection);
+    }
+
+    /**
+     * @return the source of the connections.
+     */
+    public ConnectionSource getDelegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        return wrap(this.delegate.getReadOnlyConnection(tableName));
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        return wrap(this.delegate.getReadWriteConnection(tableName));
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        this.delegate.releaseConnection(unwrap(connection));
+    }
+
+    @Override
+    public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+        return this.delegate.saveSpecialConnection(unwrap(connection));
+    }
+
+    @Override
+    public void clearSpecialConnection(DatabaseConnection connection) {
+        this.delegate.clearSpecialConnection(unwrap(connection));
+    }
+
+    @Override
+    public DatabaseConnection getSpecialConnection(String tableName) {
+        return wrap(this.delegate.getSpecialConnection(tableName));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.delegate.close();
+    }
+
+    @Override
+    public void closeQuietly() {
+        this.delegate.closeQuietly();
+    }
+
+    @Override
+    public DatabaseType getDatabaseType() {
+        return this.delegate.getDatabaseType();
+    }
+
+    @Override
+    public boolean isOpen(String tableName) {
+        return this.delegate.isOpen(tableName);
+    }
+
+    @Override
+    public boolean isSingleConnection(String tableName) {
+        return this.delegate.isSingleConnection(tableName);
+    }
+
+    /**
+     * The connection that trace the statements.
+     */
+    private static final class TracedConnection implements DatabaseConnection {
+
+        /**
+         * The connection.
+         */
+        private final DatabaseConnection delegate;
+
+        /**
+         * The Constructor.
+         *
+         * @param delegate the connection.
+         */
+        TracedConnection(DatabaseConnection delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isAutoCommitSupported() throws SQLException {
+            return this.delegate.isAutoCommitSupported();
+        }
+
+        @Override
+        public boolean isAutoCommit() throws SQLException {
+            return this.delegate.isAutoCommit();
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            this.delegate.setAutoCommit(autoCommit);
+        }
+
+        @Override
+        public Savepoint setSavePoint(String name) throws SQLException {
+            return this.delegate.setSavePoint(name);
+        }
+
+        @Override
+        public void commit(Savepoint savePoint) throws SQLException {
+            this.delegate.commit(savePoint);
+        }
+
+        @Override
+        public void rollback(Savepoint savePoint) throws SQLException {
+            this.delegate.rollback(savePoint);
+        }
+
+        @Override
+        public void releaseSavePoint(Savepoint savePoint) throws SQLException {
+            this.delegate.releaseSavePoint(savePoint);
+        }
+
+        @Override
+        public int executeStatement(String statementStr, int resultFlags) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.executeStatement(statementStr, resultFlags);
+            } finally {
+                QueryTrace.statement(statementStr, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public CompiledStatement compileStatement(String statement,
+                                                  StatementBuilder.StatementType type,
+                                                  FieldType[] argFieldTypes,
+                                                  int resultFlags,
+                                                  boolean cacheStore) throws SQLException {
+            return new TracedStatement(statement,
+                    this.delegate.compileStatement(statement, type, argFieldTypes, resultFlags, cacheStore));
+        }
+
+        @Override
+        public int insert(String statement,
+                          Object[] args,
+                          FieldType[] argfieldTypes,
+                          GeneratedKeyHolder keyHolder) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.insert(statement, args, argfieldTypes, keyHolder);
+            } finally {
+                QueryTrace.statement(statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public int update(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.update(statement, args, argfieldTypes);
+            } finally {
+                QueryTrace.statement(statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public int delete(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.delete(statement, args, argfieldTypes);
+            } finally {
+                QueryTrace.statement(statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public <T> Object queryForOne(String statement,
+                                      Object[] args,
+                                      FieldType[] argfieldTypes,
+                                      GenericRowMapper<T> rowMapper,
+                                      ObjectCache objectCache) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.queryForOne(statement, args, argfieldTypes, rowMapper, objectCache);
+            } finally {
+                QueryTrace.statement(statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public long queryForLong(String statement) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.queryForLong(statement);
+            } finally {
+                QueryTrace.statement(statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public long queryForLong(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.queryForLong(statement, args, argFieldTypes);
+            } finally {
+                QueryTrace.statement(statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+        @Override
+        public void closeQuietly() {
+            this.delegate.closeQuietly();
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return this.delegate.isClosed();
+        }
+
+        @Override
+        public boolean isTableExists(String tableName) throws SQLException {
+            return this.delegate.isTableExists(tableName);
+        }
+
+    }
+
+    /**
+     * The compiled statement that trace the executions.
+     */
+    private static final class TracedStatement implements CompiledStatement {
+
+        /**
+         * The sql.
+         */
+        private final String statement;
+
+        /**
+         * The compiled statement.
+         */
+        private final CompiledStatement delegate;
+
+        /**
+         * The Constructor.
+         *
+         * @param statement the sql.
+         * @param delegate  the compiled statement.
+         */
+        TracedStatement(String statement, CompiledStatement delegate) {
+            this.statement = statement;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int getColumnCount() throws SQLException {
+            return this.delegate.getColumnCount();
+        }
+
+        @Override
+        public String getColumnName(int columnIndex) throws SQLException {
+            return this.delegate.getColumnName(columnIndex);
+        }
+
+        @Override
+        public int runUpdate() throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.runUpdate();
+            } finally {
+                QueryTrace.statement(this.statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public DatabaseResults runQuery(ObjectCache objectCache) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.runQuery(objectCache);
+            } finally {
+                QueryTrace.statement(this.statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public int runExecute() throws SQLException {
+            long start = System.nanoTime();
+            try {
+                return this.delegate.runExecute();
+            } finally {
+                QueryTrace.statement(this.statement, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+        @Override
+        public void closeQuietly() {
+            this.delegate.closeQuietly();
+        }
+
+        @Override
+        public void cancel() throws SQLException {
+            this.delegate.cancel();
+        }
+
+        @Override
+        public void setObject(int parameterIndex, Object obj, SqlType sqlType) throws SQLException {
+            this.delegate.setObject(parameterIndex, obj, sqlType);
+        }
+
+        @Override
+        public void setMaxRows(int max) throws SQLException {
+            this.delegate.setMaxRows(max);
+        }
+
+        @Override
+        public void setQueryTimeout(long millis) throws SQLException {
+            this.delegate.setQueryTimeout(millis);
+        }
+
+    }
+
+}
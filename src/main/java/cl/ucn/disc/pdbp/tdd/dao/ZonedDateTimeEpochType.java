@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.field.SqlType;
+import com.j256.ormlite.field.types.BaseDataType;
+import com.j256.ormlite.support.DatabaseResults;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * ZonedDateTime to BIGINT: the epoch millis and the offset packed in one number.
+ * value = epochMillis * 2^17 + (offsetSeconds + 18h), so:
+ * - the order of the values is the order of the instants (the column can be indexed and used in ranges).
+ * - the read is two divisions, without parsing strings.
+ * Only the millisecond and the offset are kept: the nanos below the millisecond and the zone id are lost
+ * (America/Santiago comes back as -03:00 or -04:00, not equals to the ZonedDateTime written).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+@SuppressWarnings({"StaticVariableOfConcreteClass", "Singleton"})
+public final class ZonedDateTimeEpochType extends BaseDataType {
+
+    /**
+     * Number of values of the offset: -18:00 .. +18:00 in seconds (129601 < 2^17).
+     */
+    private static final long OFFSETS = 1L << 17;
+
+    /**
+     * The max offset in seconds.
+     */
+    private static final int MAX_OFFSET = 18 * 60 * 60;
+
+    /**
+     * The Singleton.
+     */
+    public static final ZonedDateTimeEpochType SINGLETON = new ZonedDateTimeEpochType();
+
+    /**
+     * @return the singleton.
+     */
+    public static ZonedDateTimeEpochType getSingleton() {
+        return SINGLETON;
+    }
+
+    /**
+     * The Constructor.
+     */
+    private ZonedDateTimeEpochType() {
+        // ZonedDateTime <-> Long
+        super(SqlType.LONG, new Class<?>[0]);
+    }
+
+    /**
+     * @param zonedDateTime to encode.
+     * @return the value in the database.
+     */
+    public static long encode(ZonedDateTime zonedDateTime) {
+        long millis = zonedDateTime.toInstant().toEpochMilli();
+        return Math.multiplyExact(millis, OFFSETS) + zonedDateTime.getOffset().getTotalSeconds() + MAX_OFFSET;
+    }
+
+    /**
+     * @param value in the database.
+     * @return the ZonedDateTime.
+     */
+    public static ZonedDateTime decode(long value) {
+        long millis = Math.floorDiv(value, OFFSETS);
+        int offset = (int) Math.floorMod(value, OFFSETS) - MAX_OFFSET;
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.ofTotalSeconds(offset));
+    }
+
+    /**
+     * @param instant the start of the range.
+     * @return the min value of the instant (with any offset).
+     */
+    public static long lowerBound(Instant instant) {
+        return Math.multiplyExact(instant.toEpochMilli(), OFFSETS);
+    }
+
+    /**
+     * @param instant the end of the range.
+     * @return the max value of the instant (with any offset).
+     */
+    public static long upperBound(Instant instant) {
+        return Math.multiplyExact(instant.toEpochMilli(), OFFSETS) + OFFSETS - 1;
+    }
+
+    /**
+     * @see BaseDataType#sqlArgToJava(FieldType, Object, int)
+     */
+    @Override
+    public Object sqlArgToJava(FieldType fieldType, Object sqlArg, int columnPos) {
+
+        // Nullity test
+        if (sqlArg == null) {
+            return null;
+        }
+
+        // Long to ZonedDateTime
+        return decode(((Number) sqlArg).longValue());
+    }
+
+    /**
+     * @see BaseDataType#parseDefaultString(FieldType, String)
+     */
+    @Override
+    public Object parseDefaultString(FieldType fieldType, String defaultStr) {
+        return Long.parseLong(defaultStr);
+    }
+
+    /**
+     * @see BaseDataType#javaToSqlArg(FieldType, Object)
+     */
+    @Override
+    public Object javaToSqlArg(FieldType fieldType, Object javaObject) {
+
+        // Nullity test
+        if (javaObject == null) {
+            return null;
+        }
+
+        // The bounds of a range are already encoded
+        if (javaObject instanceof Long) {
+            return javaObject;
+        }
+
+        // ZonedDateTime to Long
+        return encode((ZonedDateTime) javaObject);
+    }
+
+    /**
+     * @see BaseDataType#resultToSqlArg(FieldType, DatabaseResults, int)
+     */
+    @Override
+    public Object resultToSqlArg(FieldType fieldType, DatabaseResults results, int columnPos) throws SQLException {
+        return results.getLong(columnPos);
+    }
+
+    /**
+     * @see BaseDataType#isEscapedValue()
+     */
+    @Override
+    public boolean isEscapedValue() {
+        return false;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.dao;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Migration of the dates stored as ISO strings ({@link ZonedDateTimeType}) to the
+ * BIGINT of {@link ZonedDateTimeEpochType}.
+ * The table is renamed to {table}_old, created again with the new columns and the rows copied converting the dates.
+ * If the copy fails the {table}_old stays and the migration starts again the next time.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class ZonedDateTimeMigration {
+
+    /**
+     * The Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ZonedDateTimeMigration.class);
+
+    /**
+     * Number of rows by batch.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Not for construction.
+     */
+    private ZonedDateTimeMigration() {
+        // Empty
+    }
+
+    /**
+     * Migrate the table of the class (if needed).
+     *
+     * @param connectionSource to use.
+     * @param clazz            with fields of {@link ZonedDateTimeEpochType}.
+     * @param <T>              the type of model domain.
+     * @return the number of rows migrated (0 if the table is new or already migrated).
+     * @throws SQLException in case of error.
+     */
+    public static <T> int migrate(ConnectionSource connectionSource, Class<T> clazz) throws SQLException {
+
+        // Nullity
+        if (connectionSource == null || clazz == null) {
+            throw new IllegalArgumentException("Can't migrate with connectionSource or clazz null");
+        }
+
+        // The columns with epoch dates
+        BaseDaoImpl<T, ?> dao = DaoManager.createDao(connectionSource, clazz);
+        Set<String> dateColumns = new HashSet<>();
+        for (FieldType fieldType : dao.getTableInfo().getFieldTypes()) {
+            if (fieldType.getDataPersister() == ZonedDateTimeEpochType.getSingleton()) {
+                dateColumns.add(fieldType.getColumnName().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (dateColumns.isEmpty()) {
+            return 0;
+        }
+
+        DatabaseType databaseType = connectionSource.getDatabaseType();
+        String table = dao.getTableInfo().getTableName();
+        String old = table + "_old";
+
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(table);
+        try {
+            Connection jdbc = ((JdbcDatabaseConnection) TracingConnectionSource.unwrap(connection)).getInternalConnection();
+
+            if (connection.isTableExists(old)) {
+                // A failed migration: start again
+                log.warn("Resuming the migration of the dates of {} ..", table);
+                execute(jdbc, "DROP TABLE IF EXISTS " + escape(databaseType, table));
+            } else {
+                if (!connection.isTableExists(table) || !hasStringColumn(jdbc, escape(databaseType, table), dateColumns)) {
+                    return 0;
+                }
+                log.info("Migrating the dates of {} to epoch ..", table);
+                execute(jdbc, "ALTER TABLE " + escape(databaseType, table) + " RENAME TO " + escape(databaseType, old));
+            }
+
+            TableUtils.createTable(connectionSource, clazz);
+            int rows = copy(jdbc, databaseType, old, table, dateColumns);
+            execute(jdbc, "DROP TABLE " + escape(databaseType, old));
+
+            log.info("Migrated {} rows of {}.", rows, table);
+            return rows;
+
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * @param jdbc        the connection.
+     * @param table       the escaped name of the table.
+     * @param dateColumns the columns of dates (lower case).
+     * @return true if some column of dates is a string.
+     */
+    private static boolean hasStringColumn(Connection jdbc, String table, Set<String> dateColumns)
+            throws SQLException {
+
+        try (Statement statement = jdbc.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                if (dateColumns.contains(metaData.getColumnName(i).toLowerCase(Locale.ROOT))) {
+                    switch (metaData.getColumnType(i)) {
+                        case Types.CHAR:
+                        case Types.VARCHAR:
+                        case Types.LONGVARCHAR:
+                        case Types.NCHAR:
+                        case Types.NVARCHAR:
+                        case Types.CLOB:
+                            return true;
+                        default:
+                            break;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy the rows of from to to (in one transaction), converting the dates.
+     * Inside other transaction (the version of {@link SchemaMigrator}) the copy is part of it: the owner
+     * commits or rolls back.
+     *
+     * @return the number of rows.
+     */
+    private static int copy(Connection jdbc, DatabaseType databaseType, String from, String to, Set<String> dateColumns)
+            throws SQLException {
+
+        boolean autoCommit = jdbc.getAutoCommit();
+        if (autoCommit) {
+            jdbc.setAutoCommit(false);
+        }
+        int rows = 0;
+        try (Statement select = jdbc.createStatement();
+             ResultSet resultSet = select.executeQuery("SELECT * FROM " + escape(databaseType, from))) {
+
+            // INSERT INTO to (columns) VALUES (?, ..)
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int columns = metaData.getColumnCount();
+            boolean[] dates = new boolean[columns + 1];
+            StringBuilder names = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            for (int i = 1; i <= columns; i++) {
+                String name = metaData.getColumnName(i);
+                dates[i] = dateColumns.contains(name.toLowerCase(Locale.ROOT));
+                names.append(i > 1 ? ", " : "").append(escape(databaseType, name));
+                values.append(i > 1 ? ", ?" : "?");
+            }
+
+            try (PreparedStatement insert = jdbc.prepareStatement(
+                    "INSERT INTO " + escape(databaseType, to) + " (" + names + ") VALUES (" + values + ")")) {
+
+                while (resultSet.next()) {
+                    for (int i = 1; i <= columns; i++) {
+                        Object value = resultSet.getObject(i);
+                        if (dates[i] && value instanceof String) {
+                            value = ZonedDateTimeEpochType.encode(
+                                    ZonedDateTimeType.parse((String) value));
+                        }
+                        insert.setObject(i, value);
+                    }
+                    insert.addBatch();
+                    if (++rows % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            if (autoCommit) {
+                jdbc.commit();
+            }
+
+        } catch (SQLException | RuntimeException ex) {
+            if (autoCommit) {
+                jdbc.rollback();
+            }
+            throw ex;
+        } finally {
+            if (autoCommit) {
+                jdbc.setAutoCommit(true);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param jdbc the connection.
+     * @param sql  to run.
+     */
+    private static void execute(Connection jdbc, String sql) throws SQLException {
+        try (Statement statement = jdbc.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    /**
+     * @param databaseType of the connection.
+     * @param name         of the table.
+     * @return the name escaped.
+     */
+    private static String escape(DatabaseType databaseType, String name) {
+        StringBuilder sb = new StringBuilder();
+        databaseType.appendEscapedEntityName(sb, name);
+        return sb.toString();
+    }
+
+}
@@ -30,9 +30,10 @@ import com.j256.ormlite.field.types.BaseDataType;
 import com.j256.ormlite.support.DatabaseResults;
 
 import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.TemporalAccessor;
 
 /**
  * ZonedDateTime to String.
@@ -47,6 +48,17 @@ public final class ZonedDateTimeType extends BaseDataType {
      */
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
 
+    /**
+     * The offsets by quarter of hour, from -18:00 to +18:00 (the offsets of the dates, as -03:00 or -04:00).
+     */
+    private static final ZoneOffset[] OFFSETS = new ZoneOffset[18 * 4 * 2 + 1];
+
+    static {
+        for (int i = 0; i < OFFSETS.length; i++) {
+            OFFSETS[i] = ZoneOffset.ofTotalSeconds((i - 18 * 4) * 15 * 60);
+        }
+    }
+
     /**
      * The Singleton.
      */
@@ -89,7 +101,7 @@ public final class ZonedDateTimeType extends BaseDataType {
         }
 
         // String to ZonedDateTime
-        return ZonedDateTime.parse((CharSequence) sqlArg, FORMATTER);
+        return parse((CharSequence) sqlArg);
     }
 
     /**
@@ -112,7 +124,160 @@ public final class ZonedDateTimeType extends BaseDataType {
         }
 
         // ZonedDateTime to String
-        return FORMATTER.format((TemporalAccessor) javaObject);
+        return format((ZonedDateTime) javaObject);
+    }
+
+    /**
+     * The String written by the formatter: the fields in fixed positions, without the parse of the formatter
+     * (uuuu-MM-ddTHH:mm:ss, optional fraction of 1 to 9 digits, Z or +HH:MM). Any other text (years of more
+     * than 4 digits, offsets with seconds, invalid dates, ..) goes to the formatter.
+     *
+     * @param text to parse.
+     * @return the date.
+     */
+    static ZonedDateTime parse(CharSequence text) {
+
+        int length = text.length();
+        if (length >= 20 && text.charAt(4) == '-' && text.charAt(7) == '-' && text.charAt(10) == 'T'
+                && text.charAt(13) == ':' && text.charAt(16) == ':') {
+
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 2);
+            int day = digits(text, 8, 2);
+            int hour = digits(text, 11, 2);
+            int minute = digits(text, 14, 2);
+            int second = digits(text, 17, 2);
+
+            // The fraction
+            int i = 19;
+            int nano = 0;
+            if (text.charAt(i) == '.') {
+                int scale = 100_000_000;
+                for (i++; i < length && scale > 0; i++, scale /= 10) {
+                    int digit = text.charAt(i) - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    nano += digit * scale;
+                }
+                nano = i == 20 ? -1 : nano;
+            }
+
+            ZoneOffset offset = offset(text, i);
+            if ((year | month | day | hour | minute | second | nano) >= 0 && offset != null) {
+                try {
+                    return ZonedDateTime.of(year, month, day, hour, minute, second, nano, offset);
+                } catch (DateTimeException ex) {
+                    // Invalid date: the error of the formatter
+                }
+            }
+        }
+        return ZonedDateTime.parse(text, FORMATTER);
+    }
+
+    /**
+     * @param text  the date.
+     * @param from  the position.
+     * @param count of digits.
+     * @return the number (-1 if a char isn't a digit).
+     */
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @param text the date.
+     * @param from the position of the offset (the end of the text).
+     * @return the offset Z or +HH:MM of the cache (null if is other text).
+     */
+    private static ZoneOffset offset(CharSequence text, int from) {
+
+        int length = text.length() - from;
+        if (length == 1 && text.charAt(from) == 'Z') {
+            return ZoneOffset.UTC;
+        }
+        if (length != 6 || text.charAt(from + 3) != ':') {
+            return null;
+        }
+
+        char sign = text.charAt(from);
+        int hours = digits(text, from + 1, 2);
+        int minutes = digits(text, from + 4, 2);
+        if ((sign != '+' && sign != '-') || hours < 0 || minutes < 0 || minutes % 15 != 0) {
+            return null;
+        }
+
+        int quarters = (hours * 4 + minutes / 15) * (sign == '-' ? -1 : 1);
+        return Math.abs(quarters) <= 18 * 4 ? OFFSETS[quarters + 18 * 4] : null;
+    }
+
+    /**
+     * The same String of the formatter, written in fixed positions (years of more than 4 digits or before
+     * the year 0 go to the formatter).
+     *
+     * @param date to format.
+     * @return the text.
+     */
+    static String format(ZonedDateTime date) {
+
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return FORMATTER.format(date);
+        }
+
+        // The fraction without the zeros at right
+        int nano = date.getNano();
+        int fraction = 0;
+        if (nano != 0) {
+            fraction = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                fraction--;
+            }
+        }
+
+        String offset = date.getOffset().getId();
+        char[] chars = new char[19 + (fraction == 0 ? 0 : fraction + 1) + offset.length()];
+        write(chars, 0, year, 4);
+        chars[4] = '-';
+        write(chars, 5, date.getMonthValue(), 2);
+        chars[7] = '-';
+        write(chars, 8, date.getDayOfMonth(), 2);
+        chars[10] = 'T';
+        write(chars, 11, date.getHour(), 2);
+        chars[13] = ':';
+        write(chars, 14, date.getMinute(), 2);
+        chars[16] = ':';
+        write(chars, 17, date.getSecond(), 2);
+        int i = 19;
+        if (fraction != 0) {
+            chars[i++] = '.';
+            write(chars, i, nano, fraction);
+            i += fraction;
+        }
+        offset.getChars(0, offset.length(), chars, i);
+        return new String(chars);
+    }
+
+    /**
+     * @param chars the text.
+     * @param from  the position.
+     * @param value to write.
+     * @param count of digits (zeros at left).
+     */
+    private static void write(char[] chars, int from, int value, int count) {
+        for (int i = from + count - 1; i >= from; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
     }
 
     /**
@@ -0,0 +1,533 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd.index;
+
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In memory inverted index (trigrams) of the Fichas.
+ * Index the numero, the nombre of the Paciente and the rut and nombre of the Duenio, and answer
+ * the same questions of the "LIKE '%query%'" queries without going to the database.
+ * The search is case insensitive.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class FichaSearchIndex {
+
+    /**
+     * Size of the grams.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * Weight of each field in the ranking.
+     */
+    private static final int WEIGHT_NUMERO = 8;
+    private static final int WEIGHT_RUT = 3;
+    private static final int WEIGHT_PACIENTE = 2;
+    private static final int WEIGHT_DUENIO = 1;
+
+    /**
+     * The lock (many readers, one writer).
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The Fichas indexed: id -> document.
+     */
+    private final Map<Long, Document> documents = new HashMap<>();
+
+    /**
+     * The Personas (duenios): id -> terms.
+     */
+    private final Map<Long, Terms> personas = new HashMap<>();
+
+    /**
+     * The Fichas of each Persona: id of Persona -> id of Fichas.
+     */
+    private final Map<Long, Set<Long>> fichasOfPersona = new HashMap<>();
+
+    /**
+     * The posting lists: gram -> id of Fichas.
+     */
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+
+    /**
+     * The numero of the Fichas: numero -> id.
+     */
+    private final Map<Long, Long> numeros = new HashMap<>();
+
+    /**
+     * Add (or replace) all the Personas and then all the Fichas.
+     *
+     * @param personas to index.
+     * @param fichas   to index.
+     */
+    public void addAll(Collection<Persona> personas, Collection<Ficha> fichas) {
+        this.lock.writeLock().lock();
+        try {
+            for (Persona persona : personas) {
+                this.putPersona(persona);
+            }
+            for (Ficha ficha : fichas) {
+                this.putFicha(ficha);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add (or replace) a Persona, updating the Fichas of the Persona.
+     *
+     * @param persona to index.
+     */
+    public void add(Persona persona) {
+        this.lock.writeLock().lock();
+        try {
+            this.putPersona(persona);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add (or replace) a Ficha.
+     *
+     * @param ficha to index.
+     */
+    public void add(Ficha ficha) {
+        this.lock.writeLock().lock();
+        try {
+            this.putFicha(ficha);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of Fichas indexed.
+     */
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.documents.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search the Fichas.
+     * - If the query is numeric: the Ficha with the numero and the Fichas with the rut of Duenio like the query.
+     * - The Fichas with the nombre of Paciente like the query.
+     * - The Fichas with the nombre of Duenio like the query.
+     *
+     * @param query to search.
+     * @return the Fichas found, the best first (exact, prefix and then contains).
+     */
+    public List<Ficha> search(String query) {
+
+        // Nullity
+        if (query == null) throw new IllegalArgumentException("Query was null!");
+
+        String q = normalize(query);
+        boolean numeric = StringUtils.isNumeric(query);
+
+        this.lock.readLock().lock();
+        try {
+
+            // The candidates
+            Long numero = numeric ? parseNumero(query) : null;
+            Set<Long> candidates = new HashSet<>(this.candidates(q));
+            if (numero != null) {
+                Long id = this.numeros.get(numero);
+                if (id != null) {
+                    candidates.add(id);
+                }
+            }
+
+            // Verify and rank
+            List<Ranked> ranked = new ArrayList<>();
+            for (Long id : candidates) {
+                Document document = this.documents.get(id);
+                int score = document.score(q, numeric, numero, this.personas.get(document.duenio));
+                if (score > 0) {
+                    ranked.add(new Ranked(document.ficha, score));
+                }
+            }
+            return sort(ranked);
+
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rank the Fichas found without the index (in the database) as {@link #search(String)}: the same
+     * order with or without the index.
+     *
+     * @param fichas to rank (with the Duenio loaded).
+     * @param query  searched.
+     * @return the Fichas that match the query, the best first.
+     */
+    public static List<Ficha> rank(Collection<Ficha> fichas, String query) {
+
+        // Nullity
+        if (fichas == null) throw new IllegalArgumentException("Fichas was null!");
+        if (query == null) throw new IllegalArgumentException("Query was null!");
+
+        String q = normalize(query);
+        boolean numeric = StringUtils.isNumeric(query);
+        Long numero = numeric ? parseNumero(query) : null;
+
+        List<Ranked> ranked = new ArrayList<>(fichas.size());
+        for (Ficha ficha : fichas) {
+            Persona duenio = ficha.getDuenio();
+            Terms terms = duenio == null ? null : new Terms(normalize(duenio.getRut()), normalize(duenio.getNombre()));
+            Document document = new Document(ficha, normalize(ficha.getNombrePaciente()),
+                    duenio == null ? null : duenio.getId());
+            int score = document.score(q, numeric, numero, terms);
+            if (score > 0) {
+                ranked.add(new Ranked(ficha, score));
+            }
+        }
+        return sort(ranked);
+    }
+
+    /**
+     * @param ranked the Fichas with the score.
+     * @return the Fichas by score (the best first) and then by id.
+     */
+    private static List<Ficha> sort(List<Ranked> ranked) {
+        ranked.sort(Comparator.comparingInt((Ranked r) -> r.score).reversed()
+                .thenComparing(r -> r.ficha.getId()));
+
+        List<Ficha> fichas = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) {
+            fichas.add(r.ficha);
+        }
+        return fichas;
+    }
+
+    /**
+     * @param q the normalized query.
+     * @return the id of the Fichas that have all the grams of the query (all the Fichas if the query is short).
+     */
+    private Collection<Long> candidates(String q) {
+
+        // Short query: verify all the Fichas
+        if (q.length() < GRAM) {
+            return this.documents.keySet();
+        }
+
+        // The grams, the smallest posting first
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String gram : grams(q)) {
+            Set<Long> list = this.postings.get(gram);
+            if (list == null) {
+                return Collections.emptySet();
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        // The intersection
+        Set<Long> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Index the Persona (write lock held).
+     */
+    private void putPersona(Persona persona) {
+
+        if (persona == null || persona.getId() == null) {
+            return;
+        }
+
+        // Only the Personas with data (the foreign without refresh only have the id)
+        if (persona.getRut() == null && persona.getNombre() == null) {
+            return;
+        }
+
+        // Remove the Fichas of the Persona (with the old terms)
+        List<Ficha> fichas = new ArrayList<>();
+        Set<Long> ids = this.fichasOfPersona.get(persona.getId());
+        if (ids != null) {
+            for (Long id : new ArrayList<>(ids)) {
+                fichas.add(this.documents.get(id).ficha);
+                this.remove(id);
+            }
+        }
+
+        this.personas.put(persona.getId(), new Terms(normalize(persona.getRut()), normalize(persona.getNombre())));
+
+        // Re-index the Fichas of the Persona
+        for (Ficha ficha : fichas) {
+            this.putFicha(ficha);
+        }
+    }
+
+    /**
+     * Index the Ficha (write lock held).
+     */
+    private void putFicha(Ficha ficha) {
+
+        if (ficha == null || ficha.getId() == null) {
+            return;
+        }
+
+        // Replace the old version
+        this.remove(ficha.getId());
+
+        Persona duenio = ficha.getDuenio();
+        Long idDuenio = duenio == null ? null : duenio.getId();
+        if (duenio != null && !this.personas.containsKey(idDuenio)) {
+            this.putPersona(duenio);
+        }
+
+        Document document = new Document(ficha, normalize(ficha.getNombrePaciente()), idDuenio);
+        this.documents.put(ficha.getId(), document);
+        this.numeros.put(ficha.getNumero(), ficha.getId());
+        if (idDuenio != null) {
+            this.fichasOfPersona.computeIfAbsent(idDuenio, k -> new HashSet<>()).add(ficha.getId());
+        }
+
+        for (String gram : document.grams(this.personas.get(idDuenio))) {
+            this.postings.computeIfAbsent(gram, k -> new HashSet<>()).add(ficha.getId());
+        }
+    }
+
+    /**
+     * Remove the Ficha from the index (write lock held).
+     */
+    private void remove(Long id) {
+
+        Document document = this.documents.remove(id);
+        if (document == null) {
+            return;
+        }
+
+        this.numeros.remove(document.ficha.getNumero());
+        if (document.duenio != null) {
+            Set<Long> ids = this.fichasOfPersona.get(document.duenio);
+            if (ids != null) {
+                ids.remove(id);
+            }
+        }
+
+        for (String gram : document.grams(this.personas.get(document.duenio))) {
+            Set<Long> list = this.postings.get(gram);
+            if (list != null) {
+                list.remove(id);
+                if (list.isEmpty()) {
+                    this.postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param text to normalize.
+     * @return the text in lower case (empty if null).
+     */
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param numero to parse.
+     * @return the numero (null if too big).
+     */
+    private static Long parseNumero(String numero) {
+        try {
+            return Long.parseLong(numero);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param text to split.
+     * @return the grams of the text.
+     */
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /**
+     * @param field the value of the field.
+     * @param q     the query.
+     * @return 4 if equals, 2 if starts with, 1 if contains and 0 if not found.
+     */
+    private static int match(String field, String q) {
+        if (field.equals(q)) {
+            return 4;
+        }
+        if (field.startsWith(q)) {
+            return 2;
+        }
+        return field.contains(q) ? 1 : 0;
+    }
+
+    /**
+     * The terms of a Persona.
+     */
+    private static final class Terms {
+
+        /**
+         * The rut (normalized).
+         */
+        private final String rut;
+
+        /**
+         * The nombre (normalized).
+         */
+        private final String nombre;
+
+        /**
+         * The Constructor.
+         */
+        Terms(String rut, String nombre) {
+            this.rut = rut;
+            this.nombre = nombre;
+        }
+    }
+
+    /**
+     * A Ficha indexed.
+     */
+    private static final class Document {
+
+        /**
+         * The Ficha.
+         */
+        private final Ficha ficha;
+
+        /**
+         * The nombre of the Paciente (normalized).
+         */
+        private final String nombrePaciente;
+
+        /**
+         * The id of the Duenio.
+         */
+        private final Long duenio;
+
+        /**
+         * The Constructor.
+         */
+        Document(Ficha ficha, String nombrePaciente, Long duenio) {
+            this.ficha = ficha;
+            this.nombrePaciente = nombrePaciente;
+            this.duenio = duenio;
+        }
+
+        /**
+         * @param terms of the Duenio.
+         * @return all the grams of the document.
+         */
+        Set<String> grams(Terms terms) {
+            Set<String> grams = FichaSearchIndex.grams(this.nombrePaciente);
+            if (terms != null) {
+                grams.addAll(FichaSearchIndex.grams(terms.rut));
+                grams.addAll(FichaSearchIndex.grams(terms.nombre));
+            }
+            return grams;
+        }
+
+        /**
+         * @param q       the normalized query.
+         * @param numeric true if the query is a number.
+         * @param numero  the query as number (null if not a number).
+         * @param terms   of the Duenio.
+         * @return the score of the document (0 if not match).
+         */
+        int score(String q, boolean numeric, Long numero, Terms terms) {
+            int score = 0;
+            if (numeric) {
+                if (numero != null && numero == this.ficha.getNumero()) {
+                    score += WEIGHT_NUMERO * 4;
+                }
+                if (terms != null) {
+                    score += WEIGHT_RUT * match(terms.rut, q);
+                }
+            }
+            score += WEIGHT_PACIENTE * match(this.nombrePaciente, q);
+            if (terms != null) {
+                score += WEIGHT_DUENIO * match(terms.nombre, q);
+            }
+            return score;
+        }
+    }
+
+    /**
+     * A Ficha with the score.
+     */
+    private static final class Ranked {
+
+        /**
+         * The Ficha.
+         */
+        private final Ficha ficha;
+
+        /**
+         * The score.
+         */
+        private final int score;
+
+        /**
+         * The Constructor.
+         */
+        Ranked(Ficha ficha, int score) {
+            this.ficha = ficha;
+            this.score = score;
+        }
+    }
+
+}
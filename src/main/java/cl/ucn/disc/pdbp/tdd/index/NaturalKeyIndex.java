@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.index;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In memory index of a natural key (a unique column, ej. the numero of the Ficha): key -> id.
+ * The index is a hint: a key not found (or an id that isn't of the key anymore) must be searched in the
+ * database, so the index can be loaded in background and can lose a write (ej. a rolled back group).
+ *
+ * @param <K> the type of the key.
+ * @param <T> the type of the model.
+ * @author Ignacio Santander Quiñones
+ */
+public final class NaturalKeyIndex<K, T> {
+
+    /**
+     * The key of a T.
+     */
+    private final Function<T, K> key;
+
+    /**
+     * The id of a T.
+     */
+    private final Function<T, Long> id;
+
+    /**
+     * The ids: key -> id.
+     */
+    private final Map<K, Long> ids = new ConcurrentHashMap<>();
+
+    /**
+     * The Constructor.
+     *
+     * @param key the key of a T.
+     * @param id  the id of a T.
+     */
+    public NaturalKeyIndex(Function<T, K> key, Function<T, Long> id) {
+        if (key == null || id == null) throw new IllegalArgumentException("Can't index with key or id null");
+        this.key = key;
+        this.id = id;
+    }
+
+    /**
+     * Add (or replace) a T (without key or id nothing is added).
+     *
+     * @param t to index.
+     */
+    public void add(T t) {
+        if (t == null) {
+            return;
+        }
+        K k = this.key.apply(t);
+        Long i = this.id.apply(t);
+        if (k != null && i != null) {
+            this.ids.put(k, i);
+        }
+    }
+
+    /**
+     * Add (or replace) all the T.
+     *
+     * @param ts to index.
+     */
+    public void addAll(Collection<T> ts) {
+        for (T t : ts) {
+            this.add(t);
+        }
+    }
+
+    /**
+     * @param k the key.
+     * @return the id of the key (null if not indexed).
+     */
+    public Long get(K k) {
+        return k == null ? null : this.ids.get(k);
+    }
+
+    /**
+     * @param t to check.
+     * @param k the key.
+     * @return true if t is the T of the key.
+     */
+    public boolean matches(T t, K k) {
+        return t != null && k != null && k.equals(this.key.apply(t));
+    }
+
+    /**
+     * Remove the key, only if the key is of the id.
+     *
+     * @param k the key.
+     * @param i the id.
+     */
+    public void remove(K k, Long i) {
+        if (k != null && i != null) {
+            this.ids.remove(k, i);
+        }
+    }
+
+    /**
+     * @return the number of keys.
+     */
+    public int size() {
+        return this.ids.size();
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.Writer;
+
+/**
+ * The Gson of the application: compact by default, pretty only on demand.
+ * The json is written in a buffer per thread (reused by the next response of the thread).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class Json {
+
+    /**
+     * The compact Gson.
+     */
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new ModelTypeAdapterFactory())
+            .create();
+
+    /**
+     * The pretty Gson (to read by humans).
+     */
+    public static final Gson GSON_PRETTY = GSON.newBuilder()
+            .setPrettyPrinting()
+            .create();
+
+    /**
+     * Max size of the buffer kept by a thread (the bigger ones are released).
+     */
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The buffer of each thread.
+     */
+    private static final ThreadLocal<StringBuilderWriter> BUFFER = ThreadLocal.withInitial(StringBuilderWriter::new);
+
+    /**
+     * Private constructor.
+     */
+    private Json() {
+        // Nothing here
+    }
+
+    /**
+     * @param pretty true to indent.
+     * @return the Gson.
+     */
+    public static Gson gson(boolean pretty) {
+        return pretty ? GSON_PRETTY : GSON;
+    }
+
+    /**
+     * @param src    the object.
+     * @param pretty true to indent.
+     * @return the json of the object.
+     */
+    public static String toJson(Object src, boolean pretty) {
+
+        StringBuilderWriter writer = BUFFER.get();
+        writer.builder.setLength(0);
+        try {
+            gson(pretty).toJson(src, writer);
+            return writer.builder.toString();
+        } finally {
+            if (writer.builder.capacity() > MAX_BUFFER_SIZE) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    /**
+     * A {@link Writer} over a {@link StringBuilder} (the StringWriter uses the synchronized StringBuffer).
+     */
+    private static final class StringBuilderWriter extends Writer {
+
+        /**
+         * The chars.
+         */
+        private final StringBuilder builder = new StringBuilder(8192);
+
+        @Override
+        public void write(int c) {
+            this.builder.append((char) c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            this.builder.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            this.builder.append(string, offset, offset + length);
+        }
+
+        @Override
+        public Writer append(CharSequence chars) {
+            this.builder.append(chars);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+            // Nothing here
+        }
+
+        @Override
+        public void close() {
+            // Nothing here
+        }
+    }
+
+}
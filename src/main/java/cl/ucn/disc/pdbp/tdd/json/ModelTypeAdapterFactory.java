@@ -0,0 +1,267 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.json;
+
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+
+/**
+ * The hand-written {@link TypeAdapter}s of the model: the writes call the getters (no reflection) and
+ * the dates are ISO-8601 strings, the reads use the reflective adapters of Gson.
+ * The fields are written in the order of the reflective adapters; the lazy Controles of the Ficha are never written.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    /**
+     * @see TypeAdapterFactory#create(Gson, TypeToken)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+
+        Class<? super T> raw = type.getRawType();
+        if (raw == ZonedDateTime.class) {
+            return (TypeAdapter<T>) new ZonedDateTimeAdapter().nullSafe();
+        }
+        if (raw == Persona.class) {
+            return (TypeAdapter<T>) new PersonaAdapter(
+                    gson.getDelegateAdapter(this, TypeToken.get(Persona.class)));
+        }
+        if (raw == Ficha.class) {
+            return (TypeAdapter<T>) new FichaAdapter(
+                    gson.getDelegateAdapter(this, TypeToken.get(Ficha.class)),
+                    gson.getAdapter(ZonedDateTime.class),
+                    gson.getAdapter(Persona.class));
+        }
+        if (raw == Control.class) {
+            return (TypeAdapter<T>) new ControlAdapter(
+                    gson.getDelegateAdapter(this, TypeToken.get(Control.class)),
+                    gson.getAdapter(ZonedDateTime.class),
+                    gson.getAdapter(Persona.class),
+                    gson.getAdapter(Ficha.class));
+        }
+        return null;
+    }
+
+    /**
+     * The ZonedDateTime as 2020-05-01T10:00-04:00[America/Santiago].
+     */
+    static final class ZonedDateTimeAdapter extends TypeAdapter<ZonedDateTime> {
+
+        @Override
+        public void write(JsonWriter out, ZonedDateTime value) throws IOException {
+            out.value(value.toString());
+        }
+
+        @Override
+        public ZonedDateTime read(JsonReader in) throws IOException {
+            return ZonedDateTime.parse(in.nextString());
+        }
+    }
+
+    /**
+     * The Persona.
+     */
+    static final class PersonaAdapter extends TypeAdapter<Persona> {
+
+        /**
+         * The reflective adapter (to read).
+         */
+        private final TypeAdapter<Persona> delegate;
+
+        /**
+         * @param delegate the reflective adapter.
+         */
+        PersonaAdapter(TypeAdapter<Persona> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(JsonWriter out, Persona persona) throws IOException {
+            if (persona == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(persona.getId());
+            out.name("nombre").value(persona.getNombre());
+            out.name("direccion").value(persona.getDireccion());
+            out.name("telefonoFijo").value(persona.getTelefonoFijo());
+            out.name("telefonoMovil").value(persona.getTelefonoMovil());
+            out.name("email").value(persona.getEmail());
+            out.name("apellido").value(persona.getApellido());
+            out.name("rut").value(persona.getRut());
+            out.endObject();
+        }
+
+        @Override
+        public Persona read(JsonReader in) throws IOException {
+            return this.delegate.read(in);
+        }
+    }
+
+    /**
+     * The Ficha (without the Controles).
+     */
+    static final class FichaAdapter extends TypeAdapter<Ficha> {
+
+        /**
+         * The reflective adapter (to read).
+         */
+        private final TypeAdapter<Ficha> delegate;
+
+        /**
+         * The dates.
+         */
+        private final TypeAdapter<ZonedDateTime> dates;
+
+        /**
+         * The Duenio.
+         */
+        private final TypeAdapter<Persona> personas;
+
+        /**
+         * @param delegate the reflective adapter.
+         * @param dates    the adapter of the dates.
+         * @param personas the adapter of the Duenio.
+         */
+        FichaAdapter(TypeAdapter<Ficha> delegate, TypeAdapter<ZonedDateTime> dates, TypeAdapter<Persona> personas) {
+            this.delegate = delegate;
+            this.dates = dates;
+            this.personas = personas;
+        }
+
+        @Override
+        public void write(JsonWriter out, Ficha ficha) throws IOException {
+            if (ficha == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(ficha.getId());
+            out.name("numero").value(ficha.getNumero());
+            out.name("nombrePaciente").value(ficha.getNombrePaciente());
+            out.name("especie").value(ficha.getEspecie());
+            out.name("fechaNacimiento");
+            this.dates.write(out, ficha.getFechaNacimiento());
+            out.name("raza").value(ficha.getRaza());
+            out.name("sexo").value(ficha.getSexo() == null ? null : ficha.getSexo().name());
+            out.name("color").value(ficha.getColor());
+            out.name("tipo").value(ficha.getTipo() == null ? null : ficha.getTipo().name());
+            out.name("duenio");
+            this.personas.write(out, ficha.getDuenio());
+            out.endObject();
+        }
+
+        @Override
+        public Ficha read(JsonReader in) throws IOException {
+            return this.delegate.read(in);
+        }
+    }
+
+    /**
+     * The Control.
+     */
+    static final class ControlAdapter extends TypeAdapter<Control> {
+
+        /**
+         * The reflective adapter (to read).
+         */
+        private final TypeAdapter<Control> delegate;
+
+        /**
+         * The dates.
+         */
+        private final TypeAdapter<ZonedDateTime> dates;
+
+        /**
+         * The Veterinario.
+         */
+        private final TypeAdapter<Persona> personas;
+
+        /**
+         * The Ficha.
+         */
+        private final TypeAdapter<Ficha> fichas;
+
+        /**
+         * @param delegate the reflective adapter.
+         * @param dates    the adapter of the dates.
+         * @param personas the adapter of the Veterinario.
+         * @param fichas   the adapter of the Ficha.
+         */
+        ControlAdapter(TypeAdapter<Control> delegate,
+                       TypeAdapter<ZonedDateTime> dates,
+                       TypeAdapter<Persona> personas,
+                       TypeAdapter<Ficha> fichas) {
+            this.delegate = delegate;
+            this.dates = dates;
+            this.personas = personas;
+            this.fichas = fichas;
+        }
+
+        @Override
+        public void write(JsonWriter out, Control control) throws IOException {
+            if (control == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("idControl").value(control.getIdControl());
+            out.name("fecha");
+            this.dates.write(out, control.getFecha());
+            out.name("fechaProximoControl");
+            this.dates.write(out, control.getFechaProximoControl());
+            out.name("temperatura").value(control.getTemperatura());
+            out.name("peso").value(control.getPeso());
+            out.name("altura").value(control.getAltura());
+            out.name("diagnostico").value(control.getDiagnostico());
+            out.name("veterinario");
+            this.personas.write(out, control.getVeterinario());
+            out.name("ficha");
+            this.fichas.write(out, control.getFicha());
+            out.endObject();
+        }
+
+        @Override
+        public Control read(JsonReader in) throws IOException {
+            return this.delegate.read(in);
+        }
+    }
+
+}
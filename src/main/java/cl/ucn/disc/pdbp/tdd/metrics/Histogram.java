@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of positive values (as HdrHistogram): 16 linear buckets for each power of two,
+ * so any value is counted with an error under 6.25% and the memory is fixed (976 counters).
+ * The values are never forgotten (the quantiles are since the start).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class Histogram {
+
+    /**
+     * Bits of the linear buckets for each power of two.
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * Number of linear buckets for each power of two.
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * The counters.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_COUNT * (64 - SUB_BITS + 1));
+
+    /**
+     * Number of values.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of the values.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Max value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value to count (the negatives as 0).
+     */
+    public void record(long value) {
+
+        long theValue = Math.max(0, value);
+        this.counts.incrementAndGet(index(theValue));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(theValue);
+
+        long current = this.max.get();
+        while (theValue > current && !this.max.compareAndSet(current, theValue)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * @param value positive.
+     * @return the bucket of the value.
+     */
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @param index of the bucket.
+     * @return the min value of the bucket.
+     */
+    static long lowerBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        long sub = index % SUB_COUNT;
+        return (SUB_COUNT + sub) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @param quantile between 0 and 1.
+     * @return the value with that fraction of the values under it (the max of the bucket, 0 if empty).
+     */
+    public long getValueAtQuantile(double quantile) {
+
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("The quantile must be between 0 and 1");
+        }
+
+        long total = this.count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                long upper = i + 1 < this.counts.length() ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(upper, this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * @return the number of values.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return the sum of the values.
+     */
+    public long getSum() {
+        return this.sum.get();
+    }
+
+    /**
+     * @return the max value.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The metrics of the JVM: memory, threads, garbage collectors, classes and uptime (read at each scrape).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class JvmMetrics {
+
+    /**
+     * Private constructor.
+     */
+    private JvmMetrics() {
+        // Nothing here
+    }
+
+    /**
+     * Register the gauges of the JVM in {@link Metrics}.
+     */
+    public static void register() {
+
+        // Memory
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        String help = "Memory of the JVM in bytes.";
+        Metrics.gauge("jvm_memory_bytes_used", help, () -> memory.getHeapMemoryUsage().getUsed(), "area", "heap");
+        Metrics.gauge("jvm_memory_bytes_used", help, () -> memory.getNonHeapMemoryUsage().getUsed(), "area", "nonheap");
+        Metrics.gauge("jvm_memory_bytes_committed", help, () -> memory.getHeapMemoryUsage().getCommitted(), "area", "heap");
+        Metrics.gauge("jvm_memory_bytes_committed", help, () -> memory.getNonHeapMemoryUsage().getCommitted(), "area", "nonheap");
+        Metrics.gauge("jvm_memory_bytes_max", help, () -> memory.getHeapMemoryUsage().getMax(), "area", "heap");
+
+        // Threads
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Metrics.gauge("jvm_threads_current", "Current threads of the JVM.", threads::getThreadCount);
+        Metrics.gauge("jvm_threads_daemon", "Daemon threads of the JVM.", threads::getDaemonThreadCount);
+        Metrics.gauge("jvm_threads_peak", "Peak of threads of the JVM.", threads::getPeakThreadCount);
+
+        // Garbage collectors
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            Metrics.counter("jvm_gc_collection_count", "Collections of the garbage collector.",
+                    gc::getCollectionCount, "gc", gc.getName());
+            Metrics.counter("jvm_gc_collection_seconds", "Time of the collections of the garbage collector.",
+                    () -> gc.getCollectionTime() / 1000d, "gc", gc.getName());
+        }
+
+        // Classes, uptime and cpus
+        ClassLoadingMXBean classes = ManagementFactory.getClassLoadingMXBean();
+        Metrics.gauge("jvm_classes_loaded", "Classes loaded by the JVM.", classes::getLoadedClassCount);
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        Metrics.gauge("process_uptime_seconds", "Uptime of the JVM.", () -> runtime.getUptime() / 1000d);
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        Metrics.gauge("system_cpu_count", "Processors available to the JVM.", os::getAvailableProcessors);
+        Metrics.gauge("system_load_average_1m", "Load average of the system (-1 if not available).",
+                os::getSystemLoadAverage);
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * The metrics of the application (in memory), written in the text format of Prometheus:
+ * - timers: {@link Histogram} of nanos written as summaries in seconds (quantiles, sum and count).
+ * - distributions: {@link Histogram} of values written as summaries.
+ * - counters and gauges.
+ * The metric is identified by the name and the labels (pairs of name and value).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class Metrics {
+
+    /**
+     * The quantiles of the summaries.
+     */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * The valid names of metric.
+     */
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    /**
+     * The families of metrics, by name (sorted in the output).
+     */
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    /**
+     * Private constructor.
+     */
+    private Metrics() {
+        // Nothing here
+    }
+
+    /**
+     * @param name   of the metric (in seconds).
+     * @param help   the description.
+     * @param labels pairs of name and value.
+     * @return the histogram of nanos.
+     */
+    public static Histogram timer(String name, String help, String... labels) {
+        return (Histogram) family(name, help, Type.TIMER).get(labels, Histogram::new);
+    }
+
+    /**
+     * @param name   of the metric.
+     * @param help   the description.
+     * @param labels pairs of name and value.
+     * @return the histogram of values.
+     */
+    public static Histogram distribution(String name, String help, String... labels) {
+        return (Histogram) family(name, help, Type.DISTRIBUTION).get(labels, Histogram::new);
+    }
+
+    /**
+     * @param name   of the metric.
+     * @param help   the description.
+     * @param labels pairs of name and value.
+     * @return the counter.
+     */
+    public static AtomicLong counter(String name, String help, String... labels) {
+        return (AtomicLong) family(name, help, Type.COUNTER).get(labels, AtomicLong::new);
+    }
+
+    /**
+     * Register (or replace) a value read when the metrics are written.
+     *
+     * @param name   of the metric.
+     * @param help   the description.
+     * @param value  the supplier of the value.
+     * @param labels pairs of name and value.
+     */
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        if (value == null) throw new IllegalArgumentException("Can't register a gauge with value null");
+        family(name, help, Type.GAUGE).metrics.put(labels(labels), value);
+    }
+
+    /**
+     * Register (or replace) a counter read when the metrics are written.
+     *
+     * @param name   of the metric.
+     * @param help   the description.
+     * @param value  the supplier of the value.
+     * @param labels pairs of name and value.
+     */
+    public static void counter(String name, String help, DoubleSupplier value, String... labels) {
+        if (value == null) throw new IllegalArgumentException("Can't register a counter with value null");
+        family(name, help, Type.COUNTER).metrics.put(labels(labels), value);
+    }
+
+    /**
+     * @return all the metrics in the text format of Prometheus (version 0.0.4).
+     */
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+            entry.getValue().write(entry.getKey(), sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param name of the family.
+     * @param help the description.
+     * @param type of the metrics.
+     * @return the family (created if needed).
+     */
+    private static Family family(String name, String help, Type type) {
+        Family family = name == null ? null : FAMILIES.get(name);
+        if (family == null) {
+            if (name == null || !NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid name of metric: " + name);
+            }
+            family = FAMILIES.computeIfAbsent(name, key -> new Family(help, type));
+        }
+        if (family.type != type) {
+            throw new IllegalArgumentException("The metric " + name + " is a " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * @param labels pairs of name and value.
+     * @return the labels as {name="value",..} (empty without labels).
+     */
+    private static String labels(String... labels) {
+
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("The labels must be pairs of name and value");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder().append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = String.valueOf(labels[i + 1]);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * @param labels the labels as {name="value",..}.
+     * @param name   of the extra label.
+     * @param value  of the extra label.
+     * @return the labels with the extra one.
+     */
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    /**
+     * The types of metrics.
+     */
+    private enum Type {
+        TIMER, DISTRIBUTION, COUNTER, GAUGE
+    }
+
+    /**
+     * The metrics with the same name (and different labels).
+     */
+    private static final class Family {
+
+        /**
+         * The description.
+         */
+        private final String help;
+
+        /**
+         * The type.
+         */
+        private final Type type;
+
+        /**
+         * The metrics by labels.
+         */
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        /**
+         * @param help the description.
+         * @param type the type.
+         */
+        private Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+
+        /**
+         * @param labels  pairs of name and value.
+         * @param factory of the new metric.
+         * @return the metric with the labels.
+         */
+        private Object get(String[] labels, Supplier<Object> factory) {
+            return this.metrics.computeIfAbsent(labels(labels), key -> factory.get());
+        }
+
+        /**
+         * @param name of the family.
+         * @param sb   to write.
+         */
+        private void write(String name, StringBuilder sb) {
+
+            if (this.help != null) {
+                sb.append("# HELP ").append(name).append(' ').append(this.help.replace("\n", " ")).append('\n');
+            }
+            sb.append("# TYPE ").append(name).append(' ')
+                    .append(this.type == Type.TIMER || this.type == Type.DISTRIBUTION ? "summary"
+                            : this.type == Type.COUNTER ? "counter" : "gauge")
+                    .append('\n');
+
+            double scale = this.type == Type.TIMER ? 1e-9 : 1;
+            for (Map.Entry<String, Object> entry : new TreeMap<>(this.metrics).entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    for (double quantile : QUANTILES) {
+                        sb.append(name).append(withLabel(labels, "quantile", Double.toString(quantile))).append(' ')
+                                .append(histogram.getValueAtQuantile(quantile) * scale).append('\n');
+                    }
+                    sb.append(name).append("_sum").append(labels).append(' ')
+                            .append(histogram.getSum() * scale).append('\n');
+                    sb.append(name).append("_count").append(labels).append(' ')
+                            .append(histogram.getCount()).append('\n');
+                } else if (metric instanceof AtomicLong) {
+                    sb.append(name).append(labels).append(' ').append(((AtomicLong) metric).get()).append('\n');
+                } else {
+                    sb.append(name).append(labels).append(' ')
+                            .append(((DoubleSupplier) metric).getAsDouble()).append('\n');
+                }
+            }
+        }
+    }
+
+}
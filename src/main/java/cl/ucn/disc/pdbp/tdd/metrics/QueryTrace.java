@@ -0,0 +1,247 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.tdd.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The trace of the queries to the database of the request in progress in the thread: the operations of the
+ * repositories, the statements sent to the database, the time and the repeated statements (same shape).
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class QueryTrace {
+
+    /**
+     * The trace of the thread (null outside of a request).
+     */
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Max number of different shapes kept by request.
+     */
+    private static final int MAX_SHAPES = 64;
+
+    /**
+     * Number of operations of the repositories.
+     */
+    private int operations;
+
+    /**
+     * Number of statements.
+     */
+    private int statements;
+
+    /**
+     * Time of the statements (nanos).
+     */
+    private long nanos;
+
+    /**
+     * The number of statements by shape.
+     */
+    private final Map<String, int[]> shapes = new HashMap<>();
+
+    /**
+     * The shape more repeated.
+     */
+    private String repeatedShape;
+
+    /**
+     * The times of the shape more repeated.
+     */
+    private int repeatedCount;
+
+    /**
+     * Private constructor.
+     */
+    private QueryTrace() {
+        // Nothing here
+    }
+
+    /**
+     * Start to trace in this thread.
+     */
+    public static void begin() {
+        CURRENT.set(new QueryTrace());
+    }
+
+    /**
+     * Stop to trace in this thread.
+     *
+     * @return the trace since {@link #begin()} (null without begin).
+     */
+    public static QueryTrace end() {
+        QueryTrace trace = CURRENT.get();
+        CURRENT.remove();
+        return trace;
+    }
+
+    /**
+     * @return true if there is a trace in this thread.
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Count one operation of a repository (nothing outside of a request).
+     */
+    public static void operation() {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.operations++;
+        }
+    }
+
+    /**
+     * Count one statement (nothing outside of a request).
+     *
+     * @param sql   the statement.
+     * @param nanos the time of the statement.
+     */
+    public static void statement(String sql, long nanos) {
+
+        QueryTrace trace = CURRENT.get();
+        if (trace == null) {
+            return;
+        }
+
+        trace.statements++;
+        trace.nanos += nanos;
+
+        // The same statement with other values
+        String shape = shape(sql);
+        int[] count = trace.shapes.get(shape);
+        if (count == null) {
+            if (trace.shapes.size() >= MAX_SHAPES) {
+                return;
+            }
+            count = new int[1];
+            trace.shapes.put(shape, count);
+        }
+        if (++count[0] > trace.repeatedCount) {
+            trace.repeatedCount = count[0];
+            trace.repeatedShape = shape;
+        }
+    }
+
+    /**
+     * The shape of a statement: the literals (strings and numbers) replaced by ?.
+     *
+     * @param sql the statement.
+     * @return the shape.
+     */
+    public static String shape(String sql) {
+
+        if (sql == null) {
+            return "";
+        }
+
+        int length = sql.length();
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // The string, with '' inside
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    i++;
+                }
+                sb.append('?');
+            } else if (c >= '0' && c <= '9' && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+                // The number (not a part of a name)
+                while (i + 1 < length && (isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param c the char.
+     * @return true if c is 0..9.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @param c the char.
+     * @return true if c can be part of a name.
+     */
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * @return the number of operations of the repositories.
+     */
+    public int getOperations() {
+        return this.operations;
+    }
+
+    /**
+     * @return the number of statements.
+     */
+    public int getStatements() {
+        return this.statements;
+    }
+
+    /**
+     * @return the time of the statements in nanos.
+     */
+    public long getNanos() {
+        return this.nanos;
+    }
+
+    /**
+     * @return the shape more repeated (null without statements).
+     */
+    public String getRepeatedShape() {
+        return this.repeatedShape;
+    }
+
+    /**
+     * @return the times of the shape more repeated.
+     */
+    public int getRepeatedCount() {
+        return this.repeatedCount;
+    }
+
+}
@@ -24,13 +24,15 @@
 
 package cl.ucn.disc.pdbp.tdd.model;
 
-import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeType;
+import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeEpochType;
 import com.j256.ormlite.field.DatabaseField;
 
 import java.time.ZonedDateTime;
 
 /**
- * Clase Control
+ * Clase Control.
+ * Las fechas se guardan al milisegundo y con el offset: se pierden los nanos y la zona
+ * (America/Santiago vuelve como -03:00 o -04:00).
  * @author Ignacio Santander Quiñones.
  */
 public final class Control {
@@ -42,15 +44,15 @@ public final class Control {
     private Long idControl;
 
     /**
-     * Fecha
+     * Fecha (BIGINT: epoch millis + offset, con indice para los rangos)
      */
-    @DatabaseField(persisterClass = ZonedDateTimeType.class, canBeNull = false)
+    @DatabaseField(persisterClass = ZonedDateTimeEpochType.class, canBeNull = false, index = true)
     private ZonedDateTime fecha;
 
     /**
-     * Fecha del Proximo Control
+     * Fecha del Proximo Control (BIGINT: epoch millis + offset, con indice para los rangos)
      */
-    @DatabaseField(persisterClass = ZonedDateTimeType.class, canBeNull = false)
+    @DatabaseField(persisterClass = ZonedDateTimeEpochType.class, canBeNull = false, index = true)
     private ZonedDateTime fechaProximoControl;
 
     /**
@@ -80,13 +82,13 @@ public final class Control {
     /**
      * Veterinario encargado
      */
-    @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true)
+    @DatabaseField(foreign = true, canBeNull = false)
     private Persona veterinario;
 
     /**
-     * La ficha
+     * La ficha (con indice: los Controles de una Ficha)
      */
-    @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true)
+    @DatabaseField(foreign = true, canBeNull = false, index = true)
     private Ficha ficha;
 
     /**
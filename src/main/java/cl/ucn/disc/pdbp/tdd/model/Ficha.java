@@ -28,8 +28,10 @@ import cl.ucn.disc.pdbp.tdd.dao.ZonedDateTimeType;
 import com.j256.ormlite.dao.ForeignCollection;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.field.ForeignCollectionField;
+import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.table.DatabaseTable;
 
+import java.sql.SQLException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -99,10 +101,9 @@ public final class Ficha {
     /**
      * El Duenio
      */
-    @DatabaseField(foreign = true, canBeNull = false, foreignAutoRefresh = true)
+    @DatabaseField(foreign = true, canBeNull = false)
     //foreign = true significa uqe es un externo, canBeNull false hace referencia a que no puede haber ficha sin duenio
-    //foreignAutoRefresh hace referencia a que en el repositorio dado un id da una clase; true es cada vez que vaya al repositorio
-    // y tenga a la persona va a traer todos los archivos de la ficha y de la persona
+    //sin foreignAutoRefresh solo trae el id, el repositorio carga los duenios en lote
     private Persona duenio;
 
     /**
@@ -246,4 +247,42 @@ public final class Ficha {
         return Collections.unmodifiableList(new ArrayList<>(controles));
     }
 
+    /**
+     * Una pagina de los controles, del mas reciente al mas antiguo.
+     * @param limit numero maximo de controles.
+     * @param offset numero de controles a saltar.
+     * @return the List of Controles.
+     */
+    public List<Control> getControles(long limit, long offset){
+
+        if (limit < 1 || offset < 0) {
+            throw new IllegalArgumentException("El limit debe ser mayor que 0 y el offset no puede ser negativo");
+        }
+
+        // Sin base de datos (ficha no guardada)
+        if (this.controles == null) {
+            return Collections.emptyList();
+        }
+
+        try {
+            QueryBuilder<Control, ?> query = this.controles.getDao().queryBuilder();
+            query.orderBy("fecha", false)
+                    .orderBy("idControl", false)
+                    .limit(limit)
+                    .offset(offset)
+                    .where().eq("ficha_id", this.id);
+            return Collections.unmodifiableList(query.query());
+        } catch (SQLException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * @return the ultimo Control (null sin controles).
+     */
+    public Control getUltimoControl(){
+        List<Control> ultimo = this.getControles(1, 0);
+        return ultimo.isEmpty() ? null : ultimo.get(0);
+    }
+
 }
@@ -78,9 +78,9 @@ public final class Persona {
     private String apellido;
 
     /**
-     * Rut
+     * Rut (normalizado, unico)
      */
-    @DatabaseField(canBeNull = false, index = true)
+    @DatabaseField(canBeNull = false, uniqueIndex = true)
     private String rut;
 
 
@@ -92,14 +92,14 @@ public final class Persona {
     }
 
     /**
-     *  Constructor of the Persona. TODO: El rut no debe existir anteirormente
+     *  Constructor of the Persona.
      * ✓ El nombre no puede ser null.
      * ✓ El nombre debe tener al menos 3 letras.
      * ✓ El apellido no puede ser null.
      * ✓ El apellido debe tener al menos 3 letras.
      * ✓ El rut no puede ser null.
-     * ✓ El rut debe ser valido.
-     * - El rut no debe existir anteriormente en los registros.
+     * ✓ El rut debe ser valido (se guarda sin ceros a la izquierda).
+     * ✓ El rut no debe existir anteriormente en los registros (al registrar, en Contratos).
      * ✓ La direccion no puede ser null
      * ✓ La direccion debe tener al menos 3 letras.
      * ✓ El telefono fijo no puede ser null.
@@ -161,7 +161,7 @@ public final class Persona {
 
         this.nombre = nombre;
         this.apellido = apellido;
-        this.rut = rut;
+        this.rut = Validation.normalizeRut(rut);
         this.direccion = direccion;
         this.telefonoFijo = telefonoFijo;
         this.telefonoMovil = telefonoMovil;
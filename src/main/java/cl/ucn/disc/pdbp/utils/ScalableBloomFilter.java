@@ -0,0 +1,313 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package cl.ucn.disc.pdbp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scalable Bloom filter of Strings (Almeida et al., 2007): a chain of Bloom filters (slices), when the last
+ * slice is full a new one is added with twice the capacity and a tighter false positive rate, so the
+ * filter grows without knowing the final size and the false positive rate stays under the bound.
+ * - mightContain false: the String was never added.
+ * - mightContain true: the String was added, or a false positive.
+ * Thread-safe: the adds are serialized, the queries are lock-free.
+ *
+ * @author Ignacio Santander Quiñones
+ */
+public final class ScalableBloomFilter {
+
+    /**
+     * The false positive rate of each slice is the previous times this ratio.
+     */
+    private static final double TIGHTENING = 0.8;
+
+    /**
+     * The capacity of each slice is the previous times this factor.
+     */
+    private static final int GROWTH = 2;
+
+    /**
+     * The bound of the false positive rate.
+     */
+    private final double falsePositiveRate;
+
+    /**
+     * The slices (the last one receives the adds).
+     */
+    private volatile Slice[] slices;
+
+    /**
+     * Number of Strings added.
+     */
+    private volatile long size;
+
+    /**
+     * The Constructor.
+     *
+     * @param initialCapacity   the Strings of the first slice.
+     * @param falsePositiveRate the bound of the false positive rate (0 to 1).
+     */
+    public ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("The initialCapacity must be at least 1");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("The falsePositiveRate must be between 0 and 1");
+        }
+
+        this.falsePositiveRate = falsePositiveRate;
+
+        // The sum of the rates of the slices (a geometric series) is the bound
+        this.slices = new Slice[]{new Slice(initialCapacity, falsePositiveRate * (1 - TIGHTENING))};
+    }
+
+    /**
+     * Add a String.
+     *
+     * @param value to add.
+     * @return false if the String was (maybe) added before.
+     */
+    public synchronized boolean add(String value) {
+
+        long hash1 = hash(value);
+        long hash2 = mix(hash1);
+        if (this.mightContain(hash1, hash2)) {
+            return false;
+        }
+
+        // The last slice is full: a bigger one
+        Slice last = this.slices[this.slices.length - 1];
+        if (last.count >= last.capacity) {
+            Slice[] grown = new Slice[this.slices.length + 1];
+            System.arraycopy(this.slices, 0, grown, 0, this.slices.length);
+            last = new Slice((int) Math.min(Integer.MAX_VALUE / 2, (long) last.capacity * GROWTH),
+                    last.falsePositiveRate * TIGHTENING);
+            grown[grown.length - 1] = last;
+            this.slices = grown;
+        }
+
+        last.add(hash1, hash2);
+        this.size++;
+        return true;
+    }
+
+    /**
+     * @param value to test.
+     * @return false if the String was never added, true if (maybe) was added.
+     */
+    public boolean mightContain(String value) {
+        long hash1 = hash(value);
+        return this.mightContain(hash1, mix(hash1));
+    }
+
+    /**
+     * @param hash1 the first hash.
+     * @param hash2 the second hash.
+     * @return true if some slice has all the bits.
+     */
+    private boolean mightContain(long hash1, long hash2) {
+        for (Slice slice : this.slices) {
+            if (slice.mightContain(hash1, hash2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of Strings added.
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of slices.
+     */
+    public int getSliceCount() {
+        return this.slices.length;
+    }
+
+    /**
+     * @return the size of the filter in bits.
+     */
+    public long getBitCount() {
+        long bits = 0;
+        for (Slice slice : this.slices) {
+            bits += slice.bits;
+        }
+        return bits;
+    }
+
+    /**
+     * @return the bound of the false positive rate.
+     */
+    public double getFalsePositiveRate() {
+        return this.falsePositiveRate;
+    }
+
+    /**
+     * @return the expected false positive rate now (from the bits set in each slice).
+     */
+    public double getExpectedFalsePositiveRate() {
+        double none = 1;
+        for (Slice slice : this.slices) {
+            none *= 1 - Math.pow(slice.fill(), slice.hashes);
+        }
+        return 1 - none;
+    }
+
+    /**
+     * FNV-1a (64 bits) of the UTF-8 bytes.
+     *
+     * @param value to hash.
+     * @return the hash.
+     */
+    private static long hash(String value) {
+        if (value == null) throw new IllegalArgumentException("Can't hash a value null");
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The finalizer of SplitMix64 (the second hash of the double hashing, odd).
+     *
+     * @param hash the first hash.
+     * @return the second hash.
+     */
+    private static long mix(long hash) {
+        long z = hash + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return (z ^ (z >>> 31)) | 1;
+    }
+
+    /**
+     * A Bloom filter of fixed capacity.
+     */
+    private static final class Slice {
+
+        /**
+         * The Strings to add before the false positive rate is exceeded.
+         */
+        private final int capacity;
+
+        /**
+         * The false positive rate at the capacity.
+         */
+        private final double falsePositiveRate;
+
+        /**
+         * Number of bits.
+         */
+        private final long bits;
+
+        /**
+         * Number of hashes (bits by String).
+         */
+        private final int hashes;
+
+        /**
+         * The bits.
+         */
+        private final AtomicLongArray words;
+
+        /**
+         * Number of Strings added (only by the add, serialized).
+         */
+        private int count;
+
+        /**
+         * The Constructor: the optimal bits and hashes for the capacity and the rate.
+         *
+         * @param capacity          the Strings to add.
+         * @param falsePositiveRate at the capacity.
+         */
+        Slice(int capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) ((Math.max(64, m) + 63) / 64));
+            this.bits = this.words.length() * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) this.bits / capacity * Math.log(2)));
+        }
+
+        /**
+         * @param hash1 the first hash.
+         * @param hash2 the second hash.
+         */
+        void add(long hash1, long hash2) {
+            long hash = hash1;
+            for (int i = 0; i < this.hashes; i++) {
+                long bit = Long.remainderUnsigned(hash, this.bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current = this.words.get(word);
+                while ((current & mask) == 0 && !this.words.compareAndSet(word, current, current | mask)) {
+                    current = this.words.get(word);
+                }
+                hash += hash2;
+            }
+            this.count++;
+        }
+
+        /**
+         * @param hash1 the first hash.
+         * @param hash2 the second hash.
+         * @return true if all the bits are set.
+         */
+        boolean mightContain(long hash1, long hash2) {
+            long hash = hash1;
+            for (int i = 0; i < this.hashes; i++) {
+                long bit = Long.remainderUnsigned(hash, this.bits);
+                if ((this.words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+                hash += hash2;
+            }
+            return true;
+        }
+
+        /**
+         * @return the fraction of bits set.
+         */
+        double fill() {
+            long set = 0;
+            for (int i = 0; i < this.words.length(); i++) {
+                set += Long.bitCount(this.words.get(i));
+            }
+            return (double) set / this.bits;
+        }
+
+    }
+
+}
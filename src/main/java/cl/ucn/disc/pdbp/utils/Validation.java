@@ -25,7 +25,11 @@
 
 package cl.ucn.disc.pdbp.utils;
 
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * The Validations.
@@ -42,6 +46,14 @@ public final class Validation {
     }
 
     /**
+     * Below this number of records the validation isn't parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Without allocations: the digits are read from right to left (the dv, then the mod 11 of the number).
+     * A number bigger than an int isn't valid.
+     *
      * @param rut to validate.
      * @return true if rut is valid.
      */
@@ -53,56 +65,208 @@ public final class Validation {
         }
 
         // Wrong size
-        if (rut.length() < 2) {
+        int length = rut.length();
+        if (length < 2) {
             return false;
         }
 
-        // Last char
-        char dv = rut.charAt(rut.length() - 1);
-
-        // Only numbers
-        String numbers = rut.substring(0, rut.length() - 1);
-        if (!Pattern.matches("[0-9]+", numbers)) {
-            return false;
+        // Only numbers (and the sum of the digits by 2, 3, 4, 5, 6, 7, 2, 3 ..)
+        long number = 0;
+        long weight = 1;
+        int s = 1;
+        int m = 0;
+        for (int i = length - 2; i >= 0; i--) {
+            int digit = rut.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            if (digit != 0) {
+                if (weight > Integer.MAX_VALUE) {
+                    return false;
+                }
+                number += digit * weight;
+                if (number > Integer.MAX_VALUE) {
+                    return false;
+                }
+            }
+            if (weight <= Integer.MAX_VALUE) {
+                weight *= 10;
+            }
+            s = (s + digit * (9 - m++ % 6)) % 11;
         }
 
         // The validation
-        return validarRut(Integer.parseInt(numbers), dv);
+        return rut.charAt(length - 1) == (char) (s != 0 ? s + 47 : 75);
+    }
+
+    /**
+     * The rut without dots, hyphen and zeros at left, and the K in upper case (12.345.678-k -> 12345678K).
+     *
+     * @param rut to normalize.
+     * @return the rut normalized.
+     */
+    public static String normalizeRut(String rut) {
 
+        if (rut == null) {
+            throw new IllegalArgumentException("Can't normalize a rut null");
+        }
+
+        StringBuilder sb = new StringBuilder(rut.length());
+        for (int i = 0; i < rut.length(); i++) {
+            char c = rut.charAt(i);
+            if (c == '.' || c == '-' || (c == '0' && sb.length() == 0)) {
+                continue;
+            }
+            sb.append(c == 'k' ? 'K' : c);
+        }
+        return sb.toString();
     }
 
     /**
-     * The regular expression.
+     * The chars of the atoms of the local part. The emails are the language of the regular expression
+     * (scanned in linear time, without backtracking):
      * - https://howtodoinjava.com/regex/java-regex-validate-email-address/
+     * ^[\w!#$%&'*+/=?`{|}~^-]+(?:\.[\w!#$%&'*+/=?`{|}~^-]+)*@(?:[a-zA-Z0-9-]+\.)+[a-zA-Z]{2,6}$
      */
-    @SuppressWarnings("HardcodedFileSeparator")
-    private static final String REGEX = "^[\\w!#$%&'*+/=?`{|}~^-]+(?:\\.[\\w!#$%&'*+/=?`{|}~^-]+)*@(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,6}$";
+    private static final boolean[] LOCAL = new boolean[128];
 
     /**
-     * The regular expression compiled.
+     * The chars of the labels of the domain.
      */
-    private static final Pattern PATTERN = Pattern.compile(REGEX);
+    private static final boolean[] DOMAIN = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            LOCAL[c] = DOMAIN[c] = true;
+            LOCAL[Character.toUpperCase(c)] = DOMAIN[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            LOCAL[c] = DOMAIN[c] = true;
+        }
+        for (char c : "_!#$%&'*+/=?`{|}~^-".toCharArray()) {
+            LOCAL[c] = true;
+        }
+        DOMAIN['-'] = true;
+    }
 
     /**
+     * The email: local part (atoms separated by one dot), one @, labels ended by a dot and the top level
+     * domain (2 to 6 letters). As the $ of the regular expression, a line terminator at the end is allowed.
+     *
      * @param email to validate.
      * @return true is email is valid.
      */
     public static boolean isEmailValid(String email) {
-        return PATTERN.matcher(email).find();
+
+        if (email == null) {
+            return false;
+        }
+
+        // The $ matches before the last line terminator
+        int end = email.length();
+        if (end >= 2 && email.charAt(end - 2) == '\r' && email.charAt(end - 1) == '\n') {
+            end -= 2;
+        } else if (end >= 1 && isLineTerminator(email.charAt(end - 1))) {
+            end -= 1;
+        }
+
+        // The local part
+        int i = 0;
+        int atom = 0;
+        for (; i < end; i++) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                break;
+            }
+            if (c == '.') {
+                if (atom == 0) {
+                    return false;
+                }
+                atom = 0;
+            } else if (c < 128 && LOCAL[c]) {
+                atom++;
+            } else {
+                return false;
+            }
+        }
+        if (i == end || atom == 0) {
+            return false;
+        }
+
+        // The domain: the labels and the top level domain (the last label)
+        int labels = 0;
+        int label = 0;
+        boolean letters = true;
+        for (i++; i < end; i++) {
+            char c = email.charAt(i);
+            if (c == '.') {
+                if (label == 0) {
+                    return false;
+                }
+                labels++;
+                label = 0;
+                letters = true;
+            } else if (c < 128 && DOMAIN[c]) {
+                label++;
+                letters &= c > '9' && c != '-';
+            } else {
+                return false;
+            }
+        }
+        return labels > 0 && letters && label >= 2 && label <= 6;
     }
 
     /**
-     * http://www.creations.cl/2009/01/generador-de-rut-y-validador/
+     * @param c the char.
+     * @return true if c ends a line (as the $ of the {@link java.util.regex.Pattern}).
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Validate the records in parallel (by blocks of 64 records, one word of the bitmap each).
      *
-     * @return true is rut is valid.
+     * @param records   to validate.
+     * @param validator of one record (thread-safe).
+     * @param <T>       the type of the records.
+     * @return the bitmap of the failures: the bit i is set if the record i isn't valid.
      */
-    @SuppressWarnings("ValueOfIncrementOrDecrementUsed")
-    private static boolean validarRut(int rut, char dv) {
-        int m = 0, s = 1;
-        for (; rut != 0; rut /= 10) {
-            s = (s + rut % 10 * (9 - m++ % 6)) % 11;
+    public static <T> BitSet validateAll(List<T> records, Predicate<? super T> validator) {
+
+        if (records == null) throw new IllegalArgumentException("Can't validate the records null");
+        if (validator == null) throw new IllegalArgumentException("Can't validate with validator null");
+
+        int size = records.size();
+        long[] words = new long[(size + 63) >>> 6];
+        IntStream blocks = IntStream.range(0, words.length);
+        if (size >= PARALLEL_THRESHOLD) {
+            blocks = blocks.parallel();
         }
-        return dv == (char) (s != 0 ? s + 47 : 75);
+        blocks.forEach(block -> {
+            long word = 0;
+            int from = block << 6;
+            int to = Math.min(size, from + 64);
+            for (int i = from; i < to; i++) {
+                if (!validator.test(records.get(i))) {
+                    word |= 1L << i;
+                }
+            }
+            words[block] = word;
+        });
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * @param records   to validate.
+     * @param validator of one record (thread-safe).
+     * @param <T>       the type of the records.
+     * @return the bitmap of the failures.
+     * @see #validateAll(List, Predicate)
+     */
+    public static <T> BitSet validateAll(T[] records, Predicate<? super T> validator) {
+        if (records == null) throw new IllegalArgumentException("Can't validate the records null");
+        return validateAll(Arrays.asList(records), validator);
     }
 
 }
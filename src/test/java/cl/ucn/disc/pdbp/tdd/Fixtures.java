@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020 Ignacio Santander Quiñones <ignacio.santander@alumnos.ucn.cl>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package cl.ucn.disc.pdbp.tdd;
+
+import cl.ucn.disc.pdbp.tdd.model.Control;
+import cl.ucn.disc.pdbp.tdd.model.Ficha;
+import cl.ucn.disc.pdbp.tdd.model.Persona;
+import cl.ucn.disc.pdbp.tdd.model.Sexo;
+import cl.ucn.disc.pdbp.tdd.model.Tipo;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Los datos de prueba de los tests.
+ * @author Ignacio Santander Quiñones.
+ */
+public final class Fixtures {
+
+    /**
+     * Sin instancias
+     */
+    private Fixtures() {
+        // Nothing here
+    }
+
+    /**
+     * @param numero del rut (sin digito verificador).
+     * @return el rut valido.
+     */
+    public static String rut(int numero) {
+        int m = 0, s = 1;
+        for (int rut = numero; rut != 0; rut /= 10) {
+            s = (s + rut % 10 * (9 - m++ % 6)) % 11;
+        }
+        return Integer.toString(numero) + (char) (s != 0 ? s + 47 : 75);
+    }
+
+    /**
+     * @return the Persona Felipe (rut 210674608).
+     */
+    public static Persona felipe() {
+        return new Persona("Felipe", "Santander", "210674608", "Calle Falsa 123",
+                552771070, 949872950, "felipesantanderq13@gmail.com");
+    }
+
+    /**
+     * @return the Persona Andrea (rut 152532873).
+     */
+    public static Persona andrea() {
+        return andrea("152532873");
+    }
+
+    /**
+     * @param rut de la persona.
+     * @return the Persona Andrea con otro rut.
+     */
+    public static Persona andrea(String rut) {
+        return new Persona("Andrea", "Contreras", rut, "Calle Falsa 123",
+                2555562, 815252522, "email.prueba@feik.com");
+    }
+
+    /**
+     * @return the Persona Ignacio (rut 193991769).
+     */
+    public static Persona ignacio() {
+        return new Persona("Ignacio", "Santander", "193991769", "Calle Verdadera 133",
+                552771070, 968332149, "ignacio.santander@alumnos.ucn.cl");
+    }
+
+    /**
+     * @return the Persona Diego (rut 132204810).
+     */
+    public static Persona diego() {
+        return new Persona("Diego", "Urrutia", "132204810", "Calle Falsa 999",
+                8985665, 99999999, "correo.feik@ucn.cl");
+    }
+
+    /**
+     * @return the Persona Pedro (rut 130144918).
+     */
+    public static Persona pedro() {
+        return new Persona("Pedro", "Perez", "130144918", "Calle Falsa 1000",
+                8985666, 99999998, "pedro.feik@ucn.cl");
+    }
+
+    /**
+     * @return the Persona Camila (rut 188994504).
+     */
+    public static Persona camila() {
+        return new Persona("Camila", "Heredia", "188994504", "Calle Falsa 125",
+                552771080, 998054395, "chv008@alumnos.ucn.com");
+    }
+
+    /**
+     * @param rut de la persona.
+     * @return otra Persona con el rut (para los ruts repetidos).
+     */
+    public static Persona otro(String rut) {
+        return new Persona("Otro", "Felipe", rut, "Calle Falsa 124",
+                552771071, 949872951, "otro.felipe@gmail.com");
+    }
+
+    /**
+     * @param numero de la ficha.
+     * @param duenio de la ficha.
+     * @return the Ficha de Galatea.
+     */
+    public static Ficha galatea(long numero, Persona duenio) {
+        return new Ficha(numero, "Galatea", "Canino", ZonedDateTime.now(), "YorkShire Terrier",
+                Sexo.HEMBRA, "Negro Dorado", Tipo.INTERNO, duenio);
+    }
+
+    /**
+     * @param numero de la ficha.
+     * @param duenio de la ficha.
+     * @return the Ficha de Firulais.
+     */
+    public static Ficha firulais(long numero, Persona duenio) {
+        return new Ficha(numero, "Firulais", "Canino", ZonedDateTime.now(), "Pastor Ingles",
+                Sexo.MACHO, "Negro", Tipo.INTERNO, duenio);
+    }
+
+    /**
+     * @param fecha del control.
+     * @param proximo control.
+     * @param veterinario del control.
+     * @param ficha del control.
+     * @return the Control (sin novedades).
+     */
+    public static Control control(ZonedDateTime fecha, ZonedDateTime proximo, Persona veterinario, Ficha ficha) {
+        return new Control(fecha, proximo, 38.5d, 10d, 0.5d, "Ok", veterinario, ficha);
+    }
+
+}
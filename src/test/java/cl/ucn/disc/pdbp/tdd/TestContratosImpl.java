@@ -24,17 +24,55 @@
 
 package cl.ucn.disc.pdbp.tdd;
 
+import cl.ucn.disc.pdbp.tdd.metrics.QueryTrace;
+import cl.ucn.disc.pdbp.tdd.model.Control;
 import cl.ucn.disc.pdbp.tdd.model.Ficha;
 import cl.ucn.disc.pdbp.tdd.model.Persona;
 import cl.ucn.disc.pdbp.tdd.model.Sexo;
 import cl.ucn.disc.pdbp.tdd.model.Tipo;
+import cl.ucn.disc.pdbp.utils.ScalableBloomFilter;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+import io.javalin.Javalin;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
 public class TestContratosImpl {
 
@@ -54,39 +92,26 @@ public class TestContratosImpl {
         String databaseUrl = "jdbc:h2:mem:fivet_db";
 
         // Crear objeto a ingresar en la ficha
-        Persona duenio = new Persona("Andrea",
-                "Contreras",
-                "152532873",
-                "Calle Falsa 123",
-                2555562,
-                815252522,
-                "email.prueba@feik.com");
+        Persona duenio = Fixtures.andrea();
 
         // Crear objeto Ficha a ingresar en la BD
-        Ficha ficha = new Ficha(123L,
-                "Firulais",
-                "Canino",
-                ZonedDateTime.now(),
-                "Pastor Ingles",
-                Sexo.MACHO,
-                "Negro",
-                Tipo.INTERNO,
-                duenio);
+        Ficha ficha = Fixtures.firulais(123L, duenio);
 
-        ContratosImpl contratos = new ContratosImpl(databaseUrl);
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
 
-        // Obtener persona de la BD
-        Persona duenio2 = contratos.registrarPersona(duenio);
+            // Obtener persona de la BD
+            Persona duenio2 = contratos.registrarPersona(duenio);
 
-        // Obtener paciente de la BD
-        Ficha ficha2 = contratos.registrarPaciente(ficha);
-        log.debug("Ficha {}", ficha2);
+            // Obtener paciente de la BD
+            Ficha ficha2 = contratos.registrarPaciente(ficha);
+            log.debug("Ficha {}", ficha2);
 
-        // La persona y la ficha no pueden ser null!!
-        Assertions.assertNotNull(duenio2,"Persona was null");
-        Assertions.assertEquals(duenio2.getId(),duenio.getId(),"Los id no son los mismos");
-        Assertions.assertNotNull(ficha2,"Ficha was null");
-        Assertions.assertEquals(ficha2.getId(), ficha.getId(),"Los id no son los mismos");
+            // La persona y la ficha no pueden ser null!!
+            Assertions.assertNotNull(duenio2,"Persona was null");
+            Assertions.assertEquals(duenio2.getId(),duenio.getId(),"Los id no son los mismos");
+            Assertions.assertNotNull(ficha2,"Ficha was null");
+            Assertions.assertEquals(ficha2.getId(), ficha.getId(),"Los id no son los mismos");
+        }
     }
 
     /**
@@ -100,24 +125,18 @@ public class TestContratosImpl {
         String databaseUrl = "jdbc:h2:mem:fivet_db";
 
         // Crear objeto persona a ingresar en la BD
-        Persona persona = new Persona("Ignacio",
-                "Santander",
-                "193991769",
-                "Calle Verdadera 133",
-                552771070,
-                968332149,
-                "ignacio.santander@alumnos.ucn.cl");
+        Persona persona = Fixtures.ignacio();
 
-        ContratosImpl contratos = new ContratosImpl(databaseUrl);
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
 
-        // Obtener persona de la BD
-        Persona persona2 = contratos.registrarPersona(persona);
-        log.debug("Persona {}", persona);
-
-        // La persona no puede ser null!!
-        Assertions.assertNotNull(persona2,"Persona was null");
-        Assertions.assertEquals(persona2.getId(),persona.getId(),"Los id no son los mismos");
+            // Obtener persona de la BD
+            Persona persona2 = contratos.registrarPersona(persona);
+            log.debug("Persona {}", persona);
 
+            // La persona no puede ser null!!
+            Assertions.assertNotNull(persona2,"Persona was null");
+            Assertions.assertEquals(persona2.getId(),persona.getId(),"Los id no son los mismos");
+        }
     }
 
     /**
@@ -131,42 +150,863 @@ public class TestContratosImpl {
         String databaseUrl = "jdbc:h2:mem:fivet_db";
 
         // Crear objeto a ingresar en la ficha
-        Persona duenio = new Persona("Felipe",
-                "Santander",
-                "210674608",
-                "Calle Falsa 123",
-                552771070,
-                949872950,
-                "felipesantanderq13@gmail.com");
+        Persona duenio = Fixtures.felipe();
 
         // Crear objeto Ficha a ingresar en la BD
-        Ficha ficha = new Ficha(124L,
-                "Galatea",
-                "Canino",
-                ZonedDateTime.now(),
-                "YorkShire Terrier",
-                Sexo.HEMBRA,
-                "Negro Dorado",
-                Tipo.INTERNO,
-                duenio);
+        Ficha ficha = Fixtures.galatea(124L, duenio);
 
-        ContratosImpl contratos = new ContratosImpl(databaseUrl);
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
 
-        // Obtener persona de la BD
-        Persona duenio2 = contratos.registrarPersona(duenio);
+            // Obtener persona de la BD
+            Persona duenio2 = contratos.registrarPersona(duenio);
 
-        // Obtener paciente de la BD
-        Ficha ficha2 = contratos.registrarPaciente(ficha);
-        //log.debug("Ficha {}", ficha2);
+            // Obtener paciente de la BD
+            Ficha ficha2 = contratos.registrarPaciente(ficha);
+            //log.debug("Ficha {}", ficha2);
 
-        // La persona y la ficha no pueden ser null!!
-        Assertions.assertNotNull(duenio2,"Persona was null");
-        Assertions.assertEquals(duenio2.getId(),duenio.getId(),"Los id no son los mismos");
-        Assertions.assertNotNull(ficha2,"Ficha was null");
-        Assertions.assertEquals(ficha2.getId(), ficha.getId(),"Los id no son los mismos");
+            // La persona y la ficha no pueden ser null!!
+            Assertions.assertNotNull(duenio2,"Persona was null");
+            Assertions.assertEquals(duenio2.getId(),duenio.getId(),"Los id no son los mismos");
+            Assertions.assertNotNull(ficha2,"Ficha was null");
+            Assertions.assertEquals(ficha2.getId(), ficha.getId(),"Los id no son los mismos");
 
-        List<Ficha> listaFichas = contratos.buscarFicha(String.valueOf(ficha2.getId()));
-        log.debug("Ficha {}", listaFichas);
+            List<Ficha> listaFichas = contratos.buscarFicha(String.valueOf(ficha2.getId()));
+            log.debug("Ficha {}", listaFichas);
+        }
+    }
 
+    /**
+     * Test para Buscar Ficha en el indice
+     */
+    @Test
+    public void testBuscarFichaIndice() {
+
+        log.debug("Testing Buscar Ficha (indice) ..");
+
+        String databaseUrl = "jdbc:h2:mem:fivet_search";
+
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
+            Assertions.assertTrue(contratos.awaitFichaIndex(), "Indice no cargado");
+
+            // Los duenios
+            Persona felipe = contratos.registrarPersona(Fixtures.felipe());
+            Persona andrea = contratos.registrarPersona(Fixtures.andrea());
+
+            // Las fichas
+            Ficha galatea = contratos.registrarPaciente(Fixtures.galatea(210L, felipe));
+            Ficha gala = contratos.registrarPaciente(new Ficha(211L, "Gala", "Felino", ZonedDateTime.now(),
+                    "Siames", Sexo.HEMBRA, "Blanco", Tipo.EXTERNO, andrea));
+
+            // Nombre del paciente (prefijo gana a contiene, sin importar mayusculas)
+            List<Ficha> fichas = contratos.buscarFicha("GALA");
+            Assertions.assertEquals(2, fichas.size(), "Fichas != 2");
+            Assertions.assertEquals(gala.getId(), fichas.get(0).getId(), "Gala no es la primera");
+
+            // Numero de la ficha
+            fichas = contratos.buscarFicha("211");
+            Assertions.assertEquals(1, fichas.size(), "Fichas != 1");
+            Assertions.assertEquals(gala.getId(), fichas.get(0).getId(), "Gala no encontrada por numero");
+
+            // Rut del duenio (y el numero 210 como prefijo del rut)
+            fichas = contratos.buscarFicha("210");
+            Assertions.assertEquals(1, fichas.size(), "Fichas != 1");
+            Assertions.assertEquals(galatea.getId(), fichas.get(0).getId(), "Galatea no encontrada por rut/numero");
+
+            // Nombre del duenio
+            fichas = contratos.buscarFicha("andr");
+            Assertions.assertEquals(1, fichas.size(), "Fichas != 1");
+            Assertions.assertEquals(gala.getId(), fichas.get(0).getId(), "Gala no encontrada por duenio");
+
+            // Nada
+            Assertions.assertTrue(contratos.buscarFicha("zzz").isEmpty(), "Found something !?");
+
+            // El indice se reconstruye desde la base de datos
+            try (ContratosImpl contratos2 = new ContratosImpl(databaseUrl)) {
+                Assertions.assertTrue(contratos2.awaitFichaIndex(), "Indice no cargado");
+                Assertions.assertEquals(2, contratos2.buscarFicha("gala").size(), "Fichas != 2");
+            }
+
+            // La misma busqueda en una sola consulta a la base de datos (en el mismo orden del indice)
+            fichas = contratos.buscarFichaEnBaseDeDatos("Gala");
+            Assertions.assertEquals(2, fichas.size(), "Fichas != 2");
+            Assertions.assertEquals(gala.getId(), fichas.get(0).getId(), "Gala no es la primera");
+            Assertions.assertEquals(galatea.getId(), fichas.get(1).getId(), "Galatea no es la segunda");
+            List<Ficha> indice = contratos.buscarFicha("Gala");
+            for (int i = 0; i < indice.size(); i++) {
+                Assertions.assertEquals(indice.get(i).getId(), fichas.get(i).getId(), "Other order than the index");
+            }
+            Assertions.assertEquals(1, contratos.buscarFichaEnBaseDeDatos("211").size(), "Fichas != 1");
+            Assertions.assertEquals(galatea.getId(), contratos.buscarFichaEnBaseDeDatos("210").get(0).getId(),
+                    "Galatea no encontrada por rut/numero");
+            Assertions.assertEquals(gala.getId(), contratos.buscarFichaEnBaseDeDatos("Andr").get(0).getId(),
+                    "Gala no encontrada por duenio");
+            Assertions.assertTrue(contratos.buscarFichaEnBaseDeDatos("zzz").isEmpty(), "Found something !?");
+
+            // Mayusculas y minusculas: la base de datos encuentra lo mismo que el indice
+            for (String query : new String[]{"gALa", "GALATEA", "aNDr", "sANTAnder", "210"}) {
+                List<Ficha> enIndice = contratos.buscarFicha(query);
+                List<Ficha> enBaseDeDatos = contratos.buscarFichaEnBaseDeDatos(query);
+                Assertions.assertEquals(enIndice.size(), enBaseDeDatos.size(), "Otras fichas para " + query);
+                for (int i = 0; i < enIndice.size(); i++) {
+                    Assertions.assertEquals(enIndice.get(i).getId(), enBaseDeDatos.get(i).getId(),
+                            "Otro orden para " + query);
+                }
+            }
+
+            // Cerrado antes de cargar: el cargador termina antes de cerrar las conexiones
+            ContratosImpl contratos3 = new ContratosImpl(databaseUrl);
+            contratos3.close();
+            Assertions.assertTrue(contratos3.awaitFichaIndex(), "Cargador cancelado con las conexiones cerradas");
+        }
     }
+
+    /**
+     * Test para la importacion masiva
+     */
+    @Test
+    public void testImportar() {
+
+        log.debug("Testing Importar ..");
+
+        String databaseUrl = "jdbc:h2:mem:fivet_import";
+
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
+            Assertions.assertTrue(contratos.awaitFichaIndex(), "Indice no cargado");
+            BulkImporter importer = new BulkImporter(contratos);
+
+            // Personas en NDJSON (la segunda sin rut)
+            String personas = "{\"nombre\":\"Felipe\",\"apellido\":\"Santander\",\"rut\":\"210674608\","
+                    + "\"direccion\":\"Calle Falsa 123\",\"telefonoFijo\":552771070,\"telefonoMovil\":949872950,"
+                    + "\"email\":\"felipesantanderq13@gmail.com\"}\n"
+                    + "{\"nombre\":\"Sin\",\"apellido\":\"Rut\",\"direccion\":\"Calle Falsa 123\","
+                    + "\"telefonoFijo\":552771070,\"telefonoMovil\":949872950,\"email\":\"sin.rut@gmail.com\"}\n"
+                    + "\n"
+                    + "{\"nombre\":\"Andrea\",\"apellido\":\"Contreras\",\"rut\":\"152532873\","
+                    + "\"direccion\":\"Calle Falsa 123\",\"telefonoFijo\":2555562,\"telefonoMovil\":815252522,"
+                    + "\"email\":\"email.prueba@feik.com\"}\n";
+            BulkImporter.Report report = importer.importar(new StringReader(personas), "personas", "ndjson", 1);
+            Assertions.assertEquals(3, report.getRows(), "Rows != 3");
+            Assertions.assertEquals(2, report.getImported(), "Imported != 2");
+            Assertions.assertEquals(1, report.getFailed(), "Failed != 1");
+            Assertions.assertEquals(2, report.getChunks(), "Chunks != 2");
+            Assertions.assertTrue(report.getErrors().get(0).startsWith("line 2"), "Wrong error");
+
+            List<Persona> duenios = contratos.getAllPersonas();
+            Assertions.assertEquals(2, duenios.size(), "Personas != 2");
+            Long felipe = duenios.get(0).getId();
+
+            // Fichas en CSV (la ultima repite el numero: se pierde su chunk)
+            String fichas = "numero,nombrePaciente,especie,raza,sexo,color,tipo,duenio\n"
+                    + "310,Galatea,Canino,\"YorkShire, Terrier\",hembra,Negro,interno," + felipe + "\n"
+                    + "311,Firulais,Canino,Quiltro,macho,Cafe,externo," + felipe + "\n"
+                    + "312,Michi,Felino,Siames,hembra,Blanco,interno,999\n"
+                    + "310,Repetido,Canino,Quiltro,macho,Cafe,externo," + felipe + "\n";
+            report = importer.importar(new StringReader(fichas), "fichas", "csv", 2);
+            Assertions.assertEquals(4, report.getRows(), "Rows != 4");
+            Assertions.assertEquals(2, report.getImported(), "Imported != 2");
+            Assertions.assertEquals(2, report.getFailed(), "Failed != 2");
+            Assertions.assertEquals(2, contratos.getAllFichas().size(), "Fichas != 2");
+            Assertions.assertEquals("YorkShire, Terrier", contratos.getFicha(310L).getRaza(), "Wrong raza");
+
+            // El indice se actualiza
+            Assertions.assertEquals(1, contratos.buscarFicha("galatea").size(), "Galatea no encontrada");
+
+            // Controles
+            String controles = "fecha,fechaProximoControl,temperatura,peso,altura,diagnostico,veterinario,ficha\n"
+                    + "2020-05-01T10:00:00-04:00,2020-05-15T10:00:00-04:00,38.5,10,0.5,Ok," + felipe + ",310\n"
+                    + "2020-05-02T10:00:00-04:00,2020-05-16T10:00:00-04:00,38.2,10,0.5,Ok," + felipe + ",310\n"
+                    + "2020-05-02T10:00:00-04:00,2020-05-16T10:00:00-04:00,38.2,10,0.5,Ok," + felipe + ",999\n";
+            report = importer.importar(new StringReader(controles), "controles", "csv", 100);
+            Assertions.assertEquals(2, report.getImported(), "Imported != 2");
+            Assertions.assertEquals(2, contratos.getControlesOfFicha(310L).size(), "Controles != 2");
+
+            // Parametros erroneos
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> importer.importar(new StringReader(""), "nada", "csv", 100));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> importer.importar(new StringReader(""), "fichas", "xml", 100));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> importer.importar(new StringReader(""), "fichas", "csv", 0));
+        }
+    }
+
+    /**
+     * Test para los Controles pendientes entre dos fechas
+     */
+    @Test
+    public void testGetControlesDueBetween() {
+
+        log.debug("Testing Controles Due ..");
+
+        String databaseUrl = "jdbc:h2:mem:fivet_due";
+
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
+
+            Persona veterinario = contratos.registrarPersona(Fixtures.felipe());
+            Ficha ficha = contratos.registrarPaciente(Fixtures.galatea(410L, veterinario));
+
+            // Proximos controles: en 10, 1, 3 dias y en 2 dias (en otra zona horaria)
+            ZonedDateTime hoy = ZonedDateTime.parse("2020-05-01T10:00:00-04:00");
+            ZonedDateTime[] proximos = {hoy.plusDays(10), hoy.plusDays(1), hoy.plusDays(3),
+                    hoy.plusDays(2).withZoneSameInstant(ZoneOffset.UTC)};
+            for (ZonedDateTime proximo : proximos) {
+                contratos.registrarControl(Fixtures.control(hoy.minusDays(1), proximo, veterinario, ficha));
+            }
+
+            // Esta semana, ordenados por fecha
+            List<Control> controles = contratos.getControlesDueBetween(hoy, hoy.plusDays(7));
+            Assertions.assertEquals(3, controles.size(), "Controles != 3");
+            Assertions.assertTrue(controles.get(0).getFechaProximoControl().isEqual(hoy.plusDays(1)), "Wrong order");
+            Assertions.assertTrue(controles.get(1).getFechaProximoControl().isEqual(hoy.plusDays(2)), "Wrong order");
+            Assertions.assertEquals(ZoneOffset.UTC, controles.get(1).getFechaProximoControl().getOffset(),
+                    "Wrong offset");
+            Assertions.assertEquals(ficha.getNumero(), controles.get(0).getFicha().getNumero(), "Ficha not loaded");
+
+            // Los limites son inclusivos (el mismo instante en otra zona)
+            controles = contratos.getControlesDueBetween(hoy.plusDays(3).withZoneSameInstant(ZoneOffset.UTC),
+                    hoy.plusDays(10));
+            Assertions.assertEquals(2, controles.size(), "Controles != 2");
+
+            // Nada
+            Assertions.assertTrue(contratos.getControlesDueBetween(hoy, hoy.plusHours(1)).isEmpty(),
+                    "Found something !?");
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> contratos.getControlesDueBetween(hoy.plusDays(1), hoy));
+        }
+    }
+
+    /**
+     * Test de los Controles de una Ficha por pagina, del mas reciente al mas antiguo
+     */
+    @Test
+    public void testControlesOfFicha() {
+
+        log.debug("Testing Controles of Ficha ..");
+
+        String databaseUrl = "jdbc:h2:mem:fivet_controles";
+
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
+
+            Persona veterinario = contratos.registrarPersona(Fixtures.felipe());
+            contratos.registrarPaciente(Fixtures.galatea(420L, veterinario));
+            Ficha ficha = contratos.getFicha(420L);
+
+            // Sin controles
+            Assertions.assertNull(ficha.getUltimoControl(), "Ultimo control !?");
+
+            // Controles hace 3, 1, 5, 2 y 4 dias
+            ZonedDateTime hoy = ZonedDateTime.parse("2020-05-01T10:00:00-04:00");
+            for (int dias : new int[]{3, 1, 5, 2, 4}) {
+                contratos.registrarControl(Fixtures.control(hoy.minusDays(dias), hoy.plusDays(10),
+                        veterinario, ficha));
+            }
+
+            // Desde la Ficha: solo la pagina
+            Assertions.assertTrue(ficha.getUltimoControl().getFecha().isEqual(hoy.minusDays(1)), "Wrong ultimo");
+            List<Control> pagina = ficha.getControles(2, 1);
+            Assertions.assertEquals(2, pagina.size(), "Controles != 2");
+            Assertions.assertTrue(pagina.get(0).getFecha().isEqual(hoy.minusDays(2)), "Wrong order");
+            Assertions.assertTrue(pagina.get(1).getFecha().isEqual(hoy.minusDays(3)), "Wrong order");
+            Assertions.assertThrows(IllegalArgumentException.class, () -> ficha.getControles(0, 0));
+
+            // Desde los Contratos: con el veterinario cargado
+            pagina = contratos.getControlesOfFicha(420L, 2, 4);
+            Assertions.assertEquals(1, pagina.size(), "Controles != 1");
+            Assertions.assertTrue(pagina.get(0).getFecha().isEqual(hoy.minusDays(5)), "Wrong order");
+            Assertions.assertEquals("Felipe", pagina.get(0).getVeterinario().getNombre(), "Veterinario not loaded");
+            List<Control> todos = contratos.getControlesOfFicha(420L);
+            Assertions.assertEquals(5, todos.size(), "Controles != 5");
+            for (int i = 0; i < todos.size(); i++) {
+                Assertions.assertTrue(todos.get(i).getFecha().isEqual(hoy.minusDays(i + 1)), "Wrong order");
+            }
+
+            // Ficha que no existe
+            Assertions.assertTrue(contratos.getControlesOfFicha(999L, 10, 0).isEmpty(), "Found something !?");
+        }
+    }
+
+    /**
+     * Test de las claves naturales (numero, rut y email) en memoria
+     */
+    @Test
+    public void testNaturalKeys() {
+
+        log.debug("Testing Natural Keys ..");
+
+        String databaseUrl = "jdbc:h2:mem:fivet_keys";
+
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
+            Assertions.assertTrue(contratos.awaitFichaIndex(), "Index not loaded");
+
+            Persona duenio = contratos.registrarPersona(Fixtures.felipe());
+            contratos.registrarPaciente(Fixtures.galatea(430L, duenio));
+
+            // Desde memoria: sin consultas a la base de datos
+            QueryTrace.begin();
+            Ficha ficha = contratos.getFicha(430L);
+            Persona porRut = contratos.getPersonaByRut("210674608");
+            Persona porEmail = contratos.getPersonaByEmail("felipesantanderq13@gmail.com");
+            Persona delaFicha = contratos.getDuenioOfFicha(430L);
+            Assertions.assertEquals(0, QueryTrace.end().getStatements(), "Lookups in the database");
+
+            Assertions.assertEquals(430L, ficha.getNumero(), "Wrong Ficha");
+            Assertions.assertEquals(duenio.getId(), porRut.getId(), "Wrong Persona by rut");
+            Assertions.assertEquals(duenio.getId(), porEmail.getId(), "Wrong Persona by email");
+            Assertions.assertEquals(duenio.getId(), delaFicha.getId(), "Wrong Duenio");
+
+            // No existen
+            Assertions.assertNull(contratos.getFicha(999L), "Found Ficha !?");
+            Assertions.assertNull(contratos.getDuenioOfFicha(999L), "Found Duenio !?");
+            Assertions.assertNull(contratos.getPersonaByRut("11111111"), "Found Persona !?");
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contratos.getFicha(null));
+
+            // En lote
+            contratos.registrarPacientes(Arrays.asList(
+                    new Ficha(431L, "Zeus", "Canino", ZonedDateTime.now(), "Mestizo", Sexo.MACHO, "Negro",
+                            Tipo.INTERNO, duenio)));
+            QueryTrace.begin();
+            Assertions.assertEquals("Zeus", contratos.getFicha(431L).getNombrePaciente(), "Wrong Ficha");
+            Assertions.assertEquals(0, QueryTrace.end().getStatements(), "Lookup in the database");
+        }
+    }
+
+    /**
+     * Test del rut unico (filtro de Bloom y luego la base de datos)
+     */
+    @Test
+    public void testRutUnico() {
+
+        log.debug("Testing Rut Unico ..");
+
+        String databaseUrl = "jdbc:h2:mem:fivet_ruts";
+
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
+            Assertions.assertTrue(contratos.awaitFichaIndex(), "Index not loaded");
+
+            // Nuevo: sin consultas a la base de datos para revisar el rut
+            contratos.registrarPersona(Fixtures.felipe());
+            Assertions.assertEquals(1, contratos.getRutNegativeCount(), "Negatives != 1");
+            Assertions.assertEquals(0, contratos.getRutFalsePositiveCount(), "False positives != 0");
+
+            // Repetido: rechazado
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> contratos.registrarPersona(Fixtures.otro("210674608")));
+            Assertions.assertEquals(1, contratos.getRutDuplicateCount(), "Duplicates != 1");
+            Assertions.assertEquals(1, contratos.getAllPersonas().size(), "Personas != 1");
+
+            // En lote: repetido en el lote y repetido en la base de datos (all or nothing)
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contratos.registrarPersonas(Arrays.asList(
+                    Fixtures.andrea(), Fixtures.andrea())));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contratos.registrarPersonas(Arrays.asList(
+                    Fixtures.ignacio(), Fixtures.otro("210674608"))));
+            Assertions.assertEquals(1, contratos.getAllPersonas().size(), "Personas != 1");
+            Assertions.assertEquals(3, contratos.getRutDuplicateCount(), "Duplicates != 3");
+            Assertions.assertEquals(2, contratos.getRutNegativeCount(), "Negatives != 2");
+
+            // El rut del lote fallido quedo en el filtro: se revisa en la base de datos (falso positivo)
+            contratos.registrarPersona(Fixtures.ignacio());
+            Assertions.assertEquals(1, contratos.getRutFalsePositiveCount(), "False positives != 1");
+            Assertions.assertEquals(2, contratos.getAllPersonas().size(), "Personas != 2");
+            Assertions.assertEquals(0, contratos.getRutUnloadedCount(), "Unloaded != 0");
+
+            // Con ceros a la izquierda es el mismo rut
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> contratos.registrarPersona(Fixtures.otro("0210674608")));
+            Assertions.assertEquals(4, contratos.getRutDuplicateCount(), "Duplicates != 4");
+            Assertions.assertEquals("210674608", contratos.getPersonaByRut("00210674608").getRut(),
+                    "Rut not normalized");
+
+            // Concurrentes con el mismo rut: el indice unico deja solo una
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<CompletableFuture<Persona>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> contratos.registrarPersona(Fixtures.diego()),
+                        executor));
+            }
+            int registradas = 0;
+            for (CompletableFuture<Persona> future : futures) {
+                try {
+                    future.join();
+                    registradas++;
+                } catch (java.util.concurrent.CompletionException ex) {
+                    Assertions.assertTrue(ex.getCause() instanceof IllegalArgumentException, "Not a duplicate: " + ex);
+                }
+            }
+            executor.shutdown();
+            Assertions.assertEquals(1, registradas, "Registradas != 1");
+            Assertions.assertEquals(3, contratos.getAllPersonas().size(), "Personas != 3");
+        }
+
+        // Ruts iguales sin los ceros a la izquierda: la migracion falla sin cambiar nada
+        String collisionUrl = "jdbc:h2:mem:fivet_ruts_collision";
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(collisionUrl)) {
+            TableUtils.createTable(connectionSource, Persona.class);
+            Dao<Persona, Long> dao = DaoManager.createDao(connectionSource, Persona.class);
+            dao.create(Fixtures.felipe());
+            Persona otro = Fixtures.otro("152532873");
+            dao.create(otro);
+            dao.updateRaw("UPDATE `Persona` SET `rut` = '0210674608' WHERE `id` = " + otro.getId());
+
+            RuntimeException ex = Assertions.assertThrows(RuntimeException.class,
+                    () -> new ContratosImpl(collisionUrl));
+            Assertions.assertTrue(ex.getMessage().contains("210674608"), "Without the rut: " + ex.getMessage());
+            Assertions.assertEquals("0210674608", dao.queryForId(otro.getId()).getRut(), "Rut changed");
+        } catch (SQLException | IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        // El filtro crece sin superar la tasa de falsos positivos
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("rut-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(filter.mightContain("rut-" + i), "False negative");
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("otro-" + i)) {
+                falsePositives++;
+            }
+        }
+        Assertions.assertTrue(filter.getSliceCount() > 1, "Not grown");
+        Assertions.assertTrue(falsePositives < 200, "False positives: " + falsePositives);
+        Assertions.assertTrue(filter.getExpectedFalsePositiveRate() < 0.01, "Expected rate over the bound");
+    }
+
+    /**
+     * Test del executor de la base de datos (limite de la cola)
+     */
+    @Test
+    public void testDatabaseExecutor() throws Exception {
+
+        log.debug("Testing Database Executor ..");
+
+        try (DatabaseExecutor executor = new DatabaseExecutor(1, 1)) {
+
+            // Uno corriendo y uno esperando
+            CountDownLatch latch = new CountDownLatch(1);
+            CompletableFuture<Integer> first = executor.supply(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            });
+            CompletableFuture<Integer> second = executor.supply(() -> 2);
+            Assertions.assertEquals(2, executor.getPendingCount(), "Pending != 2");
+
+            // Cola llena
+            Assertions.assertThrows(RejectedExecutionException.class, () -> executor.supply(() -> 3));
+            Assertions.assertEquals(1, executor.getRejectedCount(), "Rejected != 1");
+
+            // Terminan en orden y liberan la cola
+            latch.countDown();
+            Assertions.assertEquals(1, first.get().intValue());
+            Assertions.assertEquals(2, second.get().intValue());
+            Assertions.assertEquals(3, executor.supply(() -> 3).get().intValue());
+            Assertions.assertEquals(3, executor.getSubmittedCount(), "Submitted != 3");
+        }
+    }
+
+    /**
+     * Test del registro de Contratos por clinica (tenant)
+     */
+    @Test
+    public void testContratosRegistry() {
+
+        log.debug("Testing Contratos Registry ..");
+
+        AtomicLong now = new AtomicLong();
+        List<ContratosImpl> abiertos = new ArrayList<>();
+        ContratosRegistry registry = new ContratosRegistry(tenant -> {
+            ContratosImpl contratos = new ContratosImpl("jdbc:h2:mem:fivet_tenant_" + tenant);
+            abiertos.add(contratos);
+            return contratos;
+        }, 2, 1000, now::get);
+
+        // Cada clinica con su base de datos
+        try (ContratosRegistry.Lease a = registry.acquire("clinica-a");
+             ContratosRegistry.Lease b = registry.acquire("clinica-b")) {
+            a.get().registrarPersona(Fixtures.felipe());
+            Assertions.assertEquals(1, a.get().getAllPersonas().size(), "Personas in a != 1");
+            Assertions.assertTrue(b.get().getAllPersonas().isEmpty(), "Personas in b !?");
+        }
+        Assertions.assertEquals(2, registry.getOpenCount(), "Open != 2");
+
+        // La misma instancia mientras esta abierta
+        try (ContratosRegistry.Lease a = registry.acquire("clinica-a")) {
+            Assertions.assertSame(abiertos.get(0), a.get());
+
+            // Sobre el maximo: se cierra la menos usada (b), nunca una en uso
+            try (ContratosRegistry.Lease c = registry.acquire("clinica-c")) {
+                Assertions.assertNotSame(abiertos.get(0), c.get(), "c is a");
+                Assertions.assertEquals(2, registry.getOpenCount(), "Open != 2");
+                Assertions.assertEquals(1, registry.getClosedCount(), "Closed != 1");
+                Assertions.assertFalse(abiertos.get(1).getConnectionPool().isOpen(""), "b still open");
+                Assertions.assertTrue(abiertos.get(0).getConnectionPool().isOpen(""), "a closed");
+            }
+        }
+
+        // Inactivas
+        now.addAndGet(999);
+        registry.evictIdle();
+        Assertions.assertEquals(2, registry.getOpenCount(), "Open != 2");
+        now.addAndGet(1);
+        registry.evictIdle();
+        Assertions.assertEquals(0, registry.getOpenCount(), "Open != 0");
+        Assertions.assertEquals(3, registry.getOpenedCount(), "Opened != 3");
+        Assertions.assertEquals(3, registry.getClosedCount(), "Closed != 3");
+
+        // Nombres invalidos (son parte del nombre del archivo)
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.acquire("../fivet"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.acquire(null));
+        registry.close();
+
+        // Bulkhead: una clinica con todas sus solicitudes en uso no deja sin solicitudes a las otras
+        try (ContratosRegistry limitado = new ContratosRegistry(
+                tenant -> new ContratosImpl("jdbc:h2:mem:fivet_bulkhead_" + tenant), 4, 0, 2)) {
+            try (ContratosRegistry.Lease a1 = limitado.acquire("clinica-a");
+                 ContratosRegistry.Lease a2 = limitado.acquire("clinica-a")) {
+                Assertions.assertSame(a1.get(), a2.get(), "Not the same Contratos");
+                Assertions.assertThrows(RejectedExecutionException.class, () -> limitado.acquire("clinica-a"));
+                try (ContratosRegistry.Lease b = limitado.acquire("clinica-b")) {
+                    Assertions.assertNotSame(a1.get(), b.get(), "The same Contratos");
+                }
+            }
+            try (ContratosRegistry.Lease a = limitado.acquire("clinica-a")) {
+                Assertions.assertNotNull(a.get(), "Lease not given back");
+            }
+            Assertions.assertEquals(1, limitado.getRejectedCount(), "Rejected != 1");
+        }
+    }
+
+    /**
+     * Test del perfil de SQLite (WAL, lectores y un escritor)
+     */
+    @Test
+    public void testSqlite() throws Exception {
+
+        log.debug("Testing SQLite ..");
+
+        Path dir = Files.createTempDirectory("fivet");
+        String databaseUrl = "jdbc:sqlite:" + dir.resolve("fivet.db");
+
+        try (ContratosImpl contratos = new ContratosImpl(databaseUrl)) {
+
+            Persona veterinario = contratos.registrarPersona(Fixtures.felipe());
+            Ficha ficha = contratos.registrarPaciente(Fixtures.galatea(510L, veterinario));
+
+            // Escrituras y lecturas desde varios hilos
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<CompletableFuture<Control>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    contratos.getControlesOfFicha(ficha.getNumero());
+                    return contratos.registrarControl(Fixtures.control(ZonedDateTime.now(),
+                            ZonedDateTime.now().plusDays(1), veterinario, ficha));
+                }, executor));
+            }
+            for (CompletableFuture<Control> future : futures) {
+                Assertions.assertNotNull(future.get().getIdControl(), "Control not created");
+            }
+            executor.shutdown();
+
+            Assertions.assertEquals(200, contratos.getControlesOfFicha(ficha.getNumero()).size(), "Controles != 200");
+            Assertions.assertEquals(202, contratos.getWriter().getWriteCount(), "Writes != 202");
+
+            // La busqueda en la base de datos sin mayusculas
+            Assertions.assertEquals(ficha.getId(), contratos.buscarFichaEnBaseDeDatos("gALATea").get(0).getId(),
+                    "Galatea no encontrada");
+        }
+
+        // El modo WAL queda en el archivo
+        try (Connection connection = DriverManager.getConnection(databaseUrl);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA journal_mode")) {
+            Assertions.assertTrue(resultSet.next());
+            Assertions.assertEquals("wal", resultSet.getString(1), "Not WAL");
+        }
+    }
+
+    /**
+     * Test de la compresion de las respuestas
+     */
+    @Test
+    public void testContentEncoding() throws Exception {
+
+        log.debug("Testing Content Encoding ..");
+
+        // Negociacion
+        Assertions.assertNull(ContentEncoding.negotiate(null));
+        Assertions.assertNull(ContentEncoding.negotiate("br, identity"));
+        Assertions.assertEquals("gzip", ContentEncoding.negotiate("gzip, deflate, br"));
+        Assertions.assertEquals("deflate", ContentEncoding.negotiate("gzip;q=0, deflate;q=0.5"));
+        Assertions.assertEquals("gzip", ContentEncoding.negotiate("*"));
+
+        // Ida y vuelta
+        byte[] body = new String(new char[4096]).replace('\0', 'a').getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = ContentEncoding.encode(body, ContentEncoding.GZIP);
+        Assertions.assertTrue(gzip.length < body.length / 10, "Not compressed");
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            Assertions.assertArrayEquals(body, out.toByteArray());
+        }
+    }
+
+    /**
+     * Test del Server-Timing de las respuestas en streaming (trailer despues del cuerpo)
+     */
+    @Test
+    public void testServerTimingStream() throws Exception {
+
+        log.debug("Testing Server-Timing of the streams ..");
+
+        ContratosRegistry anterior = ApiRestEndpoints.getRegistry();
+        ContratosRegistry registry = new ContratosRegistry(
+                tenant -> new ContratosImpl("jdbc:h2:mem:fivet_timing_" + tenant), 2, 0);
+        ApiRestEndpoints.setRegistry(registry);
+        Javalin javalin = Javalin.create(config -> config.compressionStrategy(null, null))
+                .get("/v1/fichas", ApiRestEndpoints::getAllFichas)
+                .start(0);
+        try {
+
+            // Sin paginar: los headers salen con el primer byte, el tiempo de las consultas al final
+            HttpResponse plano = HttpResponse.send(javalin.port(), "GET", "/v1/fichas", null, "TE: trailers");
+            Assertions.assertEquals(200, plano.getStatus(), "Status != 200");
+            Assertions.assertEquals("chunked", plano.getHeader("Transfer-Encoding"), "Not streamed");
+            Assertions.assertEquals("[]", plano.getText(), "Body != []");
+            Assertions.assertNotNull(plano.getTrailer("Server-Timing"), "Without trailer");
+            Assertions.assertTrue(plano.getTrailer("Server-Timing").startsWith("db;dur="), "Not the db timing");
+
+            // Comprimido: el trailer despues del fin del gzip
+            HttpResponse gzip = HttpResponse.send(javalin.port(), "GET", "/v1/fichas", null,
+                    "TE: trailers", "Accept-Encoding: gzip");
+            Assertions.assertEquals("gzip", gzip.getHeader("Content-Encoding"), "Not compressed");
+            Assertions.assertEquals("[]", gzip.getText(), "Body != []");
+            Assertions.assertNotNull(gzip.getTrailer("Server-Timing"), "Without trailer");
+        } finally {
+            javalin.stop();
+            ApiRestEndpoints.setRegistry(anterior);
+            registry.close();
+        }
+    }
+
+    /**
+     * Test del GET condicional (ETag, If-None-Match y 304)
+     */
+    @Test
+    public void testConditionalGet() throws Exception {
+
+        log.debug("Testing the conditional GET ..");
+
+        ContratosRegistry anterior = ApiRestEndpoints.getRegistry();
+        ContratosRegistry registry = new ContratosRegistry(
+                tenant -> new ContratosImpl("jdbc:h2:mem:fivet_etag_" + tenant), 2, 0);
+        ApiRestEndpoints.setRegistry(registry);
+        Javalin javalin = Javalin.create(config -> config.compressionStrategy(null, null))
+                .get("/v1/personas", ApiRestEndpoints::getAllPersonas)
+                .start(0);
+        int port = javalin.port();
+        try {
+
+            // Sin abrir la clinica no hay version: sin ETag
+            HttpResponse primera = HttpResponse.send(port, "GET", "/v1/personas", null);
+            Assertions.assertEquals(200, primera.getStatus(), "Status != 200");
+            Assertions.assertNull(primera.getHeader("ETag"), "ETag without versions");
+
+            // "tenant-version-hash de la url y la codificacion"
+            HttpResponse lista = HttpResponse.send(port, "GET", "/v1/personas", null);
+            String etag = lista.getHeader("ETag");
+            Assertions.assertNotNull(etag, "Without ETag");
+            Assertions.assertTrue(etag.matches("\"default-[0-9a-f]+-[0-9a-f]+\""), "Wrong ETag: " + etag);
+            Assertions.assertEquals("[]", lista.getText(), "Body != []");
+
+            // El mismo ETag: 304 sin cuerpo (tambien debil, en una lista o *)
+            for (String ifNoneMatch : new String[]{etag, "W/" + etag, "\"otro\", " + etag, "*"}) {
+                HttpResponse noModificada = HttpResponse.send(port, "GET", "/v1/personas", null,
+                        "If-None-Match: " + ifNoneMatch);
+                Assertions.assertEquals(304, noModificada.getStatus(), "Status != 304 with " + ifNoneMatch);
+                Assertions.assertEquals(etag, noModificada.getHeader("ETag"), "Other ETag");
+                Assertions.assertEquals("", noModificada.getText(), "Body in 304");
+            }
+            Assertions.assertEquals(200, HttpResponse.send(port, "GET", "/v1/personas", null,
+                    "If-None-Match: \"otro\"").getStatus(), "Status != 200");
+
+            // Otra url u otra codificacion: otro ETag
+            HttpResponse pagina = HttpResponse.send(port, "GET", "/v1/personas?pageSize=10", null,
+                    "If-None-Match: " + etag);
+            Assertions.assertEquals(200, pagina.getStatus(), "Page not modified !?");
+            Assertions.assertNotEquals(etag, pagina.getHeader("ETag"), "The same ETag of other url");
+
+            // Despues de escribir: 200 con el nuevo ETag
+            try (ContratosRegistry.Lease lease = registry.acquire(ContratosRegistry.DEFAULT_TENANT)) {
+                lease.get().registrarPersona(Fixtures.felipe());
+            }
+            HttpResponse modificada = HttpResponse.send(port, "GET", "/v1/personas", null,
+                    "If-None-Match: " + etag);
+            Assertions.assertEquals(200, modificada.getStatus(), "Status != 200 after the write");
+            Assertions.assertNotEquals(etag, modificada.getHeader("ETag"), "The same ETag after the write");
+            Assertions.assertTrue(modificada.getText().contains("210674608"), "Without the new Persona");
+
+            // Comprimido en streaming: su propio ETag y el mismo json
+            HttpResponse gzip = HttpResponse.send(port, "GET", "/v1/personas", null,
+                    "Accept-Encoding: gzip", "If-None-Match: " + modificada.getHeader("ETag"));
+            Assertions.assertEquals(200, gzip.getStatus(), "Status != 200 with gzip");
+            Assertions.assertEquals("gzip", gzip.getHeader("Content-Encoding"), "Not compressed");
+            Assertions.assertEquals("chunked", gzip.getHeader("Transfer-Encoding"), "Not streamed");
+            Assertions.assertNotEquals(modificada.getHeader("ETag"), gzip.getHeader("ETag"), "The same ETag with gzip");
+            Assertions.assertEquals(modificada.getText(), gzip.getText(), "Other json with gzip");
+            Assertions.assertEquals(304, HttpResponse.send(port, "GET", "/v1/personas", null,
+                    "Accept-Encoding: gzip", "If-None-Match: " + gzip.getHeader("ETag")).getStatus(), "Status != 304");
+        } finally {
+            javalin.stop();
+            ApiRestEndpoints.setRegistry(anterior);
+            registry.close();
+        }
+    }
+
+    /**
+     * A response of HTTP/1.1 read from the socket (with the trailers of a chunked body).
+     */
+    private static final class HttpResponse {
+
+        /**
+         * The status code.
+         */
+        private int status;
+
+        /**
+         * The headers (names in lower case).
+         */
+        private final Map<String, String> headers = new HashMap<>();
+
+        /**
+         * The trailers (names in lower case).
+         */
+        private final Map<String, String> trailers = new HashMap<>();
+
+        /**
+         * The body (as received).
+         */
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        /**
+         * Send a request (Connection: close) and read the response.
+         * @param port of the server.
+         * @param method of the request.
+         * @param path of the request.
+         * @param body of the request (null if none).
+         * @param headers of the request (Name: value).
+         * @return the response.
+         */
+        static HttpResponse send(int port, String method, String path, String body, String... headers)
+                throws IOException {
+
+            try (Socket socket = new Socket("localhost", port)) {
+
+                byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+                StringBuilder request = new StringBuilder(method + " " + path + " HTTP/1.1\r\n"
+                        + "Host: localhost\r\nConnection: close\r\nContent-Length: " + content.length + "\r\n");
+                for (String header : headers) {
+                    request.append(header).append("\r\n");
+                }
+                request.append("\r\n");
+                OutputStream out = socket.getOutputStream();
+                out.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+                out.write(content);
+                out.flush();
+
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                HttpResponse response = new HttpResponse();
+                response.status = Integer.parseInt(readLine(in).split(" ")[1]);
+                readFields(in, response.headers);
+                if ("chunked".equalsIgnoreCase(response.getHeader("Transfer-Encoding"))) {
+                    for (int size; (size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0; ) {
+                        for (int i = 0; i < size; i++) {
+                            response.body.write(in.read());
+                        }
+                        readLine(in);
+                    }
+                    readFields(in, response.trailers);
+                } else {
+                    for (int b; (b = in.read()) >= 0; ) {
+                        response.body.write(b);
+                    }
+                }
+                return response;
+            }
+        }
+
+        /**
+         * @param in the stream.
+         * @return the line (without the CRLF).
+         */
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int c; (c = in.read()) >= 0 && c != '\n'; ) {
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        /**
+         * Read the fields until the empty line.
+         * @param in the stream.
+         * @param fields read.
+         */
+        private static void readFields(InputStream in, Map<String, String> fields) throws IOException {
+            for (String line; !(line = readLine(in)).isEmpty(); ) {
+                int colon = line.indexOf(':');
+                fields.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+
+        /**
+         * @return the status code.
+         */
+        int getStatus() {
+            return this.status;
+        }
+
+        /**
+         * @param name of the header.
+         * @return the value (null if not present).
+         */
+        String getHeader(String name) {
+            return this.headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        /**
+         * @param name of the trailer.
+         * @return the value (null if not present).
+         */
+        String getTrailer(String name) {
+            return this.trailers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        /**
+         * @return the body as text (decompressed if gzip).
+         */
+        String getText() throws IOException {
+            InputStream in = new ByteArrayInputStream(this.body.toByteArray());
+            if (ContentEncoding.GZIP.equals(this.getHeader("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                text.write(buffer, 0, n);
+            }
+            return new String(text.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
 }
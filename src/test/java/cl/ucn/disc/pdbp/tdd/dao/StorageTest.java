@@ -25,12 +25,19 @@
 package cl.ucn.disc.pdbp.tdd.dao;
 
 import checkers.nullness.quals.AssertNonNullIfNonNull;
+import cl.ucn.disc.pdbp.tdd.Fixtures;
+import cl.ucn.disc.pdbp.tdd.metrics.Histogram;
+import cl.ucn.disc.pdbp.tdd.metrics.Metrics;
+import cl.ucn.disc.pdbp.tdd.metrics.QueryTrace;
 import cl.ucn.disc.pdbp.tdd.model.*;
 import cl.ucn.disc.pdbp.utils.Entity;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.dao.DaoManager;
 import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseConnection;
 import com.j256.ormlite.table.TableUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -39,8 +46,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Storage Test
@@ -73,16 +91,11 @@ public final class StorageTest {
 
             Repository<Ficha, Long> repositoryFicha = new RepositoryOrmLite<>(connectionSource,Ficha.class);
             Repository<Persona, Long> repositoryPersona = new RepositoryOrmLite<>(connectionSource,Persona.class);
+            repositoryFicha.fetch("duenio", repositoryPersona);
 
 
             //1. Crear la Persona desde un Repository
-            Persona duenio = new Persona("Felipe",
-                    "Santander",
-                    "210674608",
-                    "Calle Falsa 123",
-                    552771070,
-                    949872950,
-                    "felipesantanderq13@gmail.com");
+            Persona duenio = Fixtures.felipe();
 
             //Crear el objeto en la base de datos
             if(!repositoryPersona.create(duenio)){
@@ -90,15 +103,7 @@ public final class StorageTest {
             }
 
             // 2. Instanciar una Ficha pasando la persona como parametro del constructor
-            Ficha ficha = new Ficha(124L,
-                    "Galatea",
-                    "Canino",
-                    ZonedDateTime.now(),
-                    "YorkShire Terrier",
-                    Sexo.HEMBRA,
-                    "Negro Dorado",
-                    Tipo.INTERNO,
-                    duenio);
+            Ficha ficha = Fixtures.galatea(124L, duenio);
 
             // Crear el objeto en la base de datos
             if(!repositoryFicha.create(ficha)){
@@ -150,57 +155,34 @@ public final class StorageTest {
             Repository<Ficha, Long> repositoryFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
             Repository<Persona, Long> repositoryPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
             Repository<Control, Long> repositoryControl = new RepositoryOrmLite<>(connectionSource, Control.class);
+            repositoryFicha.fetch("duenio", repositoryPersona);
+            repositoryControl.fetch("veterinario", repositoryPersona);
+            repositoryControl.fetch("ficha", repositoryFicha);
 
             //1. Crear la Persona desde un Repository
-            Persona duenio = new Persona("Andrea",
-                    "Contreras",
-                    "152532873",
-                    "Calle Falsa 123",
-                    5895555,
-                    548855558,
-                    "andrea.contreras@feik.com");
+            Persona duenio = Fixtures.andrea();
             //Crear el objeto en la base de datos
             if (!repositoryPersona.create(duenio)) {
                 Assertions.fail("Can't insert Persona!");
             }
 
             // 2. Instanciar una Ficha pasando la persona como parametro del constructor
-            Ficha ficha = new Ficha(123L,
-                    "Firulais",
-                    "Canino",
-                    ZonedDateTime.now(),
-                    "Pastor Ingles",
-                    Sexo.MACHO,
-                    "Negro",
-                    Tipo.INTERNO,
-                    duenio);
+            Ficha ficha = Fixtures.firulais(123L, duenio);
 
             // Crear el objeto en la base de datos
             if (!repositoryFicha.create(ficha)) {
                 Assertions.fail("Can't insert the Ficha!");
             }
             // 4. Crear la Persona que es el veterinario al cual se le pasara por parametro del constructor
-            Persona veterinario = new Persona("Ignacio",
-                    "Santander",
-                    "193991769",
-                    "Calle Verdadera 133",
-                    552771070,
-                    968332149,
-                    "ignacio.santander@alumnos.ucn.cl");
+            Persona veterinario = Fixtures.ignacio();
             // Crear el objeto en la base de datos
             if(!repositoryPersona.create(veterinario)){
                 Assertions.fail("Can't insert Persona!");
             }
 
             // 4. Crear la Persona que es el veterinario al cual se le pasara por parametro del constructor
-            Control control = new Control(ZonedDateTime.now(),
-                    ZonedDateTime.now().plusDays(1),
-                    35.5d,
-                    2d,
-                    1.5d,
-                    "Todo Ok",
-                    veterinario,
-                    ficha);
+            Control control = Fixtures.control(ZonedDateTime.now(), ZonedDateTime.now().plusDays(1),
+                    veterinario, ficha);
             // Crear el objeto en la base de datos
             if(!repositoryControl.create(control)){
                 Assertions.fail("Can't insert Persona!");
@@ -248,13 +230,7 @@ public final class StorageTest {
             Dao<Persona,Long> daoPersona = DaoManager.createDao(conectionSource,Persona.class);
 
             // New Persona
-            Persona persona = new Persona("Camila",
-                    "Heredia",
-                    "188994504",
-                    "Calle Falsa 125",
-                    552771080,
-                    998054395,
-                    "chv008@alumnos.ucn.com");
+            Persona persona = Fixtures.camila();
 
             // Insert Persona into the database
             int tuples = daoPersona.create(persona);
@@ -270,8 +246,8 @@ public final class StorageTest {
             Assertions.assertEquals(persona.getApellido(),personaDb.getApellido(),"Apellido not equals!");
             Assertions.assertEquals(persona.getRut(),personaDb.getRut(),"Rut not equals!");
 
-            // Search by rut: SELECT * FROM 'persona' WHERE 'rut' = '152532873'
-            List<Persona> personaList = daoPersona.queryForEq("rut","152532873");
+            // Search by rut: SELECT * FROM 'persona' WHERE 'rut' = '188994504'
+            List<Persona> personaList = daoPersona.queryForEq("rut",persona.getRut());
             Assertions.assertEquals(1,personaList.size(),"More than one person?!");
 
             // Not found by rut
@@ -282,4 +258,753 @@ public final class StorageTest {
         }
     }
 
+    /**
+     * Testing the pool of connections.
+     */
+    @Test
+    public void testConnectionPool() throws SQLException, IOException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_pool";
+
+        // 2 connections max, wait 100 ms
+        ConnectionPoolConfig config = new ConnectionPoolConfig(1, 2, 2, 0, 0, true, 100);
+
+        try (PooledConnectionSource pool = new PooledConnectionSource(databaseUrl, config)) {
+
+            // The warm up
+            Assertions.assertEquals(1, pool.getIdleCount(), "Idle connections != minSize");
+            Assertions.assertEquals(0, pool.getActiveCount(), "Active connections != 0");
+
+            // Borrow all the connections
+            DatabaseConnection c1 = pool.getReadWriteConnection(null);
+            DatabaseConnection c2 = pool.getReadOnlyConnection(null);
+            Assertions.assertNotSame(c1, c2, "The same connection twice!");
+            Assertions.assertEquals(2, pool.getActiveCount(), "Active connections != 2");
+
+            // The pool is empty: timeout
+            Assertions.assertThrows(SQLException.class, () -> pool.getReadWriteConnection(null));
+            Assertions.assertEquals(1, pool.getTimeoutCount(), "Timeout not counted");
+
+            // Give back and borrow again
+            pool.releaseConnection(c1);
+            pool.releaseConnection(c2);
+            Assertions.assertEquals(0, pool.getActiveCount(), "Active connections != 0");
+            Assertions.assertEquals(2, pool.getIdleCount(), "Idle connections != 2");
+
+            // Use the pool from a repository
+            TableUtils.createTableIfNotExists(pool, Persona.class);
+            Repository<Persona, Long> repositoryPersona = new RepositoryOrmLite<>(pool, Persona.class);
+            Persona persona = Fixtures.camila();
+            long acquired = pool.getAcquiredCount();
+            Assertions.assertTrue(repositoryPersona.create(persona), "Can't insert Persona!");
+            Assertions.assertEquals(acquired + 1, pool.getAcquiredCount(), "More than one connection for a write");
+            Assertions.assertNotNull(repositoryPersona.findById(persona.getId()), "Persona was null");
+            Assertions.assertEquals(0, pool.getActiveCount(), "Connection not released");
+        }
+    }
+
+    /**
+     * Testing the fetch plan (the foreign objects loaded in batch).
+     */
+    @Test
+    public void testFetchPlan() throws SQLException, IOException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_fetch";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
+            TableUtils.createTableIfNotExists(connectionSource, Control.class);
+
+            Repository<Ficha, Long> repositoryFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+            Repository<Persona, Long> repositoryPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            Repository<Control, Long> repositoryControl = new RepositoryOrmLite<>(connectionSource, Control.class);
+
+            // Only foreign fields
+            Assertions.assertThrows(IllegalArgumentException.class, () -> repositoryFicha.fetch("numero", repositoryPersona));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> repositoryFicha.fetch("nada", repositoryPersona));
+
+            Persona duenio = Fixtures.andrea();
+            repositoryPersona.create(duenio);
+
+            // 3 Fichas of the same Duenio, with 1 Control each
+            for (long numero = 1; numero <= 3; numero++) {
+                Ficha ficha = Fixtures.firulais(numero, duenio);
+                repositoryFicha.create(ficha);
+                repositoryControl.create(Fixtures.control(ZonedDateTime.now(), ZonedDateTime.now().plusDays(1),
+                        duenio, ficha));
+            }
+
+            // Without fetch plan: only the id
+            List<Ficha> fichas = repositoryFicha.findAll();
+            Assertions.assertEquals(3, fichas.size(), "Fichas != 3");
+            Assertions.assertEquals(duenio.getId(), fichas.get(0).getDuenio().getId(), "Wrong id of Duenio");
+            Assertions.assertNull(fichas.get(0).getDuenio().getRut(), "Duenio refreshed !?");
+
+            // With fetch plan: the same Duenio (identity map) for all the Fichas
+            repositoryFicha.fetch("duenio", repositoryPersona);
+            fichas = repositoryFicha.findAll();
+            Assertions.assertEquals(duenio.getRut(), fichas.get(0).getDuenio().getRut(), "Duenio not loaded");
+            Assertions.assertSame(fichas.get(0).getDuenio(), fichas.get(2).getDuenio(), "Duenio loaded twice");
+
+            // Nested: Control -> Ficha -> Duenio
+            repositoryControl.fetch("veterinario", repositoryPersona);
+            repositoryControl.fetch("ficha", repositoryFicha);
+            List<Control> controles = repositoryControl.findAll();
+            Assertions.assertEquals(3, controles.size(), "Controles != 3");
+            for (Control control : controles) {
+                Assertions.assertEquals(duenio.getRut(), control.getVeterinario().getRut(), "Veterinario not loaded");
+                Assertions.assertEquals(duenio.getRut(), control.getFicha().getDuenio().getRut(), "Duenio not loaded");
+            }
+
+            // By id
+            Assertions.assertEquals(2, repositoryFicha.findAllById(java.util.Arrays.asList(
+                    fichas.get(0).getId(), fichas.get(1).getId(), fichas.get(0).getId(), -1L)).size(), "Fichas != 2");
+        }
+    }
+
+    /**
+     * Testing the pagination (limit/offset and keyset) of the {@link Repository}.
+     */
+    @Test
+    public void testPagination() throws SQLException, IOException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_page";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
+
+            Repository<Ficha, Long> repositoryFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+            Repository<Persona, Long> repositoryPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            repositoryFicha.fetch("duenio", repositoryPersona);
+
+            Persona duenio = Fixtures.andrea();
+            repositoryPersona.create(duenio);
+
+            // 25 Fichas
+            for (long numero = 1; numero <= 25; numero++) {
+                repositoryFicha.create(Fixtures.firulais(numero, duenio));
+            }
+
+            // Limit/offset
+            Assertions.assertEquals(10, repositoryFicha.findAll(10, 0).size(), "Page 1 != 10");
+            Assertions.assertEquals(5, repositoryFicha.findAll(10, 20).size(), "Page 3 != 5");
+            Assertions.assertEquals(0, repositoryFicha.findAll(10, 30).size(), "Page 4 != 0");
+            Assertions.assertEquals(11L, repositoryFicha.findAll(10, 10).get(0).getNumero(), "Wrong order");
+
+            // Keyset: walk all the Fichas
+            long total = 0;
+            Long lastId = null;
+            List<Ficha> page;
+            do {
+                page = repositoryFicha.findAllAfter(lastId, 10);
+                for (Ficha ficha : page) {
+                    Assertions.assertTrue(lastId == null || ficha.getId() > lastId, "Wrong order");
+                    Assertions.assertEquals(duenio.getRut(), ficha.getDuenio().getRut(), "Duenio not loaded");
+                    lastId = ficha.getId();
+                    total++;
+                }
+            } while (page.size() == 10);
+            Assertions.assertEquals(25, total, "Fichas != 25");
+
+            // Wrong parameters
+            Assertions.assertThrows(IllegalArgumentException.class, () -> repositoryFicha.findAll(0, 0));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> repositoryFicha.findAll(10, -1));
+        }
+    }
+
+    /**
+     * Testing the {@link Cursor} of the {@link Repository}.
+     */
+    @Test
+    public void testCursor() throws SQLException, IOException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_cursor";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            TableUtils.createTableIfNotExists(connectionSource, Ficha.class);
+
+            Repository<Ficha, Long> repositoryFicha = new RepositoryOrmLite<>(connectionSource, Ficha.class);
+            Repository<Persona, Long> repositoryPersona = new RepositoryOrmLite<>(connectionSource, Persona.class);
+            repositoryFicha.fetch("duenio", repositoryPersona);
+
+            // Empty
+            try (Cursor<Ficha> cursor = repositoryFicha.cursor()) {
+                Assertions.assertFalse(cursor.hasNext(), "Cursor not empty");
+                Assertions.assertThrows(NoSuchElementException.class, cursor::next);
+            }
+
+            Persona duenio = Fixtures.andrea();
+            repositoryPersona.create(duenio);
+
+            // More than one chunk
+            for (long numero = 1; numero <= 250; numero++) {
+                repositoryFicha.create(Fixtures.firulais(numero, duenio));
+            }
+
+            Histogram timer = Metrics.timer("repository_operation_duration_seconds", "",
+                    "table", "Ficha", "operation", "cursor");
+            long chunks = timer.getCount();
+            long total = 0;
+            try (Cursor<Ficha> cursor = repositoryFicha.cursor()) {
+                while (cursor.hasNext()) {
+                    Ficha ficha = cursor.next();
+                    Assertions.assertEquals(++total, ficha.getNumero(), "Wrong order");
+                    Assertions.assertEquals(duenio.getRut(), ficha.getDuenio().getRut(), "Duenio not loaded");
+                }
+            }
+            Assertions.assertEquals(250, total, "Fichas != 250");
+            Assertions.assertEquals(chunks + 3, timer.getCount(), "The timer of the cursor without the 3 chunks");
+
+            // Close before the end
+            try (Cursor<Ficha> cursor = repositoryFicha.cursor()) {
+                Assertions.assertEquals(1L, cursor.next().getNumero(), "Wrong first Ficha");
+            }
+
+            // A pool of one connection: the fetch plan of each page doesn't wait for a second connection
+            try (PooledConnectionSource pool = new PooledConnectionSource(databaseUrl,
+                    new ConnectionPoolConfig(1, 1, 1, 0, 0, false, 1000))) {
+                Repository<Ficha, Long> fichas = new RepositoryOrmLite<>(pool, Ficha.class);
+                fichas.fetch("duenio", new RepositoryOrmLite<>(pool, Persona.class));
+                total = 0;
+                try (Cursor<Ficha> cursor = fichas.cursor()) {
+                    while (cursor.hasNext()) {
+                        Assertions.assertNotNull(cursor.next().getDuenio().getRut(), "Duenio not loaded");
+                        total++;
+                    }
+                }
+                Assertions.assertEquals(250, total, "Fichas != 250");
+                Assertions.assertEquals(0, pool.getTimeoutCount(), "Timeouts !?");
+            }
+        }
+    }
+
+    /**
+     * Testing the {@link CachedRepository}.
+     */
+    @Test
+    public void testCachedRepository() throws SQLException, IOException, InterruptedException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_cache";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+
+            // Max 2 Personas for 1 second (the clock by hand)
+            AtomicLong now = new AtomicLong();
+            CachedRepository<Persona, Long> repository = new CachedRepository<>(
+                    new RepositoryOrmLite<>(connectionSource, Persona.class), 2, 1000, now::get);
+
+            Persona andrea = Fixtures.andrea();
+            Persona diego = Fixtures.diego();
+            Persona pedro = Fixtures.pedro();
+
+            // The create invalidates: the next read caches a fresh Persona, not the Persona of the caller
+            repository.create(andrea);
+            Assertions.assertEquals(0, repository.size(), "The Persona of the caller cached");
+            Persona cached = repository.findById(andrea.getId());
+            Assertions.assertNotSame(andrea, cached, "The Persona of the caller cached");
+            Assertions.assertSame(cached, repository.findById(andrea.getId()), "Not from the cache");
+            Assertions.assertEquals(1, repository.getHitCount(), "Hits != 1");
+            Assertions.assertEquals(1, repository.getMissCount(), "Misses != 1");
+
+            // LRU: andrea is used, diego is evicted by pedro
+            repository.create(diego);
+            repository.create(pedro);
+            repository.findById(diego.getId());
+            repository.findById(andrea.getId());
+            repository.findById(pedro.getId());
+            Assertions.assertEquals(2, repository.size(), "Size != 2");
+            Assertions.assertEquals(1, repository.getEvictionCount(), "Evictions != 1");
+
+            // Read-through: diego from the database, andrea from memory
+            List<Persona> personas = repository.findAllById(java.util.Arrays.asList(andrea.getId(), diego.getId()));
+            Assertions.assertEquals(2, personas.size(), "Personas != 2");
+            Assertions.assertEquals(3, repository.getHitCount(), "Hits != 3");
+            Assertions.assertEquals(4, repository.getMissCount(), "Misses != 4");
+            Assertions.assertEquals(diego.getRut(), repository.findById(diego.getId()).getRut(), "Wrong Persona");
+
+            // Time to live
+            now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            Assertions.assertNotSame(andrea, repository.findById(andrea.getId()), "Persona not expired");
+
+            // Delete invalidate
+            repository.delete(andrea.getId());
+            Assertions.assertNull(repository.findById(andrea.getId()), "Persona deleted found");
+        }
+
+        // A read before the commit caches the old row: the commit invalidates it again
+        try (PooledConnectionSource pool = new PooledConnectionSource(databaseUrl + "_tx",
+                new ConnectionPoolConfig(1, 2, 2, 0, 0, false, 1000))) {
+
+            TableUtils.createTableIfNotExists(pool, Persona.class);
+            CachedRepository<Persona, Long> repository = new CachedRepository<>(
+                    new RepositoryOrmLite<>(pool, Persona.class), 10, 1000);
+            Persona andrea = Fixtures.andrea();
+            repository.create(andrea);
+
+            try (GroupCommitWriter writer = new GroupCommitWriter(pool, 10,
+                    repository::afterCommit, repository::afterRollback)) {
+                CountDownLatch deleted = new CountDownLatch(1);
+                CountDownLatch latch = new CountDownLatch(1);
+                CompletableFuture<Boolean> delete = writer.submit(() -> {
+                    boolean ok = repository.delete(andrea.getId());
+                    deleted.countDown();
+                    latch.await();
+                    return ok;
+                });
+                deleted.await();
+                Persona uncommitted = repository.findById(andrea.getId());
+                latch.countDown();
+                Assertions.assertNotNull(uncommitted, "Delete seen before the commit");
+                Assertions.assertTrue(delete.join(), "Andrea not deleted");
+                Assertions.assertNull(repository.findById(andrea.getId()), "Old Persona cached after the commit");
+            }
+        }
+    }
+
+    /**
+     * Testing the {@link ZonedDateTimeEpochType} and the migration of the old dates.
+     */
+    @Test
+    public void testZonedDateTimeEpoch() throws SQLException, IOException {
+
+        // Encode and decode (millis)
+        ZonedDateTime fecha = ZonedDateTime.parse("2020-05-01T10:15:30.123-04:00");
+        long value = ZonedDateTimeEpochType.encode(fecha);
+        Assertions.assertEquals(fecha, ZonedDateTimeEpochType.decode(value), "Wrong decode");
+        Assertions.assertEquals(ZoneOffset.ofHours(-4), ZonedDateTimeEpochType.decode(value).getOffset(), "Wrong offset");
+
+        // The order of the instants (with any offset)
+        ZonedDateTime utc = fecha.withZoneSameInstant(ZoneOffset.UTC);
+        Assertions.assertTrue(ZonedDateTimeEpochType.encode(utc.minusNanos(1_000_000)) < value, "Wrong order");
+        Assertions.assertTrue(ZonedDateTimeEpochType.encode(utc.plusNanos(1_000_000)) > value, "Wrong order");
+        Assertions.assertTrue(ZonedDateTimeEpochType.lowerBound(fecha.toInstant()) <= ZonedDateTimeEpochType.encode(utc)
+                && ZonedDateTimeEpochType.encode(utc) <= ZonedDateTimeEpochType.upperBound(fecha.toInstant()), "Out of bounds");
+        Assertions.assertEquals(ZonedDateTime.parse("1960-01-01T00:00:00.001+14:00"), ZonedDateTimeEpochType.decode(
+                ZonedDateTimeEpochType.encode(ZonedDateTime.parse("1960-01-01T00:00:00.001+14:00"))), "Wrong decode");
+
+        // A zone and nanos: only the instant (to the millisecond) and the offset are kept
+        ZonedDateTime santiago = ZonedDateTime.of(2020, 5, 1, 10, 15, 30, 123_456_789, ZoneId.of("America/Santiago"));
+        ZonedDateTime decoded = ZonedDateTimeEpochType.decode(ZonedDateTimeEpochType.encode(santiago));
+        Assertions.assertNotEquals(santiago, decoded, "The zone and the nanos kept !?");
+        Assertions.assertEquals(ZoneOffset.ofHours(-4), decoded.getZone(), "The zone is the offset");
+        Assertions.assertEquals(123_000_000, decoded.getNano(), "The nanos below the millisecond kept !?");
+        Assertions.assertEquals(santiago.toInstant().toEpochMilli(), decoded.toInstant().toEpochMilli(), "Wrong instant");
+        Assertions.assertEquals(santiago.toOffsetDateTime().withNano(123_000_000), decoded.toOffsetDateTime(),
+                "Wrong local date and offset");
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_epoch";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            // New table: nothing to migrate
+            Assertions.assertEquals(0, ZonedDateTimeMigration.migrate(connectionSource, Control.class), "Migrated !?");
+
+            // The old table (dates as strings)
+            DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+            connection.executeStatement("CREATE TABLE `control` (`idControl` BIGINT AUTO_INCREMENT, "
+                    + "`fecha` VARCHAR(64) NOT NULL, `fechaProximoControl` VARCHAR(64) NOT NULL, "
+                    + "`temperatura` DOUBLE PRECISION NOT NULL, `peso` DOUBLE PRECISION NOT NULL, "
+                    + "`altura` DOUBLE PRECISION NOT NULL, `diagnostico` VARCHAR(255) NOT NULL, "
+                    + "`veterinario_id` BIGINT NOT NULL, `ficha_id` BIGINT NOT NULL, PRIMARY KEY (`idControl`))",
+                    DatabaseConnection.DEFAULT_RESULT_FLAGS);
+            connection.executeStatement("INSERT INTO `control` (`fecha`, `fechaProximoControl`, `temperatura`, "
+                    + "`peso`, `altura`, `diagnostico`, `veterinario_id`, `ficha_id`) VALUES "
+                    + "('2020-05-01T10:15:30.123-04:00', '2020-05-15T10:15:30+02:00', 38.5, 10, 0.5, 'Ok', 1, 1)",
+                    DatabaseConnection.DEFAULT_RESULT_FLAGS);
+            connectionSource.releaseConnection(connection);
+
+            // Migrate one time
+            Assertions.assertEquals(1, ZonedDateTimeMigration.migrate(connectionSource, Control.class), "Rows != 1");
+            Assertions.assertEquals(0, ZonedDateTimeMigration.migrate(connectionSource, Control.class), "Migrated !?");
+
+            Repository<Control, Long> repository = new RepositoryOrmLite<>(connectionSource, Control.class);
+            List<Control> controles = repository.findAll();
+            Assertions.assertEquals(1, controles.size(), "Controles != 1");
+            Assertions.assertEquals(fecha, controles.get(0).getFecha(), "Wrong fecha");
+            Assertions.assertEquals(ZonedDateTime.parse("2020-05-15T10:15:30+02:00"),
+                    controles.get(0).getFechaProximoControl(), "Wrong fechaProximoControl");
+            Assertions.assertEquals("Ok", controles.get(0).getDiagnostico(), "Wrong diagnostico");
+        }
+    }
+
+    /**
+     * Testing the parse and format of {@link ZonedDateTimeType}: the same of the {@link DateTimeFormatter}.
+     */
+    @Test
+    public void testZonedDateTimeType() {
+
+        DateTimeFormatter formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+        ZoneId[] zones = {ZoneOffset.UTC, ZoneOffset.ofHours(-3), ZoneOffset.ofHours(-4), ZoneOffset.ofHours(14),
+                ZoneOffset.ofHoursMinutes(5, 45), ZoneOffset.ofHoursMinutes(-9, -30), ZoneOffset.ofTotalSeconds(-3601),
+                ZoneId.of("America/Santiago"), ZoneId.of("Asia/Kathmandu")};
+
+        // Random dates: from the year -100 to 12000, any nanos, any offset
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long second = -65_000_000_000L + (long) (random.nextDouble() * 383_000_000_000L);
+            int nano = random.nextInt(4) == 0 ? 0 : random.nextInt(4) == 0
+                    ? random.nextInt(1000) * 1_000_000 : random.nextInt(1_000_000_000);
+            ZonedDateTime date = ZonedDateTime.ofInstant(Instant.ofEpochSecond(second, nano),
+                    zones[random.nextInt(zones.length)]);
+
+            String text = ZonedDateTimeType.format(date);
+            Assertions.assertEquals(formatter.format(date), text, "Wrong format");
+            Assertions.assertEquals(ZonedDateTime.parse(text, formatter), ZonedDateTimeType.parse(text), text);
+        }
+
+        // The usual and unusual texts: the same date or the same error
+        String[] texts = {"2020-05-01T10:15:30-04:00", "2020-05-01T10:15:30.1-03:00", "2020-05-01T10:15:30.123456789Z",
+                "2020-05-01T10:15:30+00:00", "2020-05-01T10:15:30-00:00", "2020-05-01T10:15-04:00",
+                "2020-05-01t10:15:30-04:00", "2020-05-01T10:15:30.-04:00", "2020-05-01T10:15:30.1234567890Z",
+                "2020-05-01T10:15:30+05:30:15", "2020-05-01T10:15:30+05", "2020-05-01T10:15:30+18:00",
+                "2020-05-01T10:15:30+18:15", "2020-05-01T10:15:30+01:07", "2020-02-30T10:15:30Z",
+                "2020-05-01T24:00:00Z", "2020-05-01T10:15:60Z", "+12020-05-01T10:15:30Z", "-0001-05-01T10:15:30Z",
+                "2020-05-01T10:15:30", "2020-05-01T10:15:30Z ", "2020-0a-01T10:15:30Z", "2020-05-01T10:15:30+0a:00"};
+        for (String text : texts) {
+            ZonedDateTime expected;
+            try {
+                expected = ZonedDateTime.parse(text, formatter);
+            } catch (DateTimeParseException ex) {
+                Assertions.assertThrows(DateTimeParseException.class, () -> ZonedDateTimeType.parse(text), text);
+                continue;
+            }
+            Assertions.assertEquals(expected, ZonedDateTimeType.parse(text), text);
+        }
+
+        // The year 10000 and before the year 0
+        for (String text : new String[]{"+10000-01-01T00:00:00Z", "-0001-12-31T23:59:59.999999999-04:00"}) {
+            ZonedDateTime date = ZonedDateTime.parse(text, formatter);
+            Assertions.assertEquals(text, ZonedDateTimeType.format(date), "Wrong format");
+            Assertions.assertEquals(date, ZonedDateTimeType.parse(text), "Wrong parse");
+        }
+    }
+
+    /**
+     * Testing the {@link SchemaMigrator}: in order, one time and the fast path.
+     */
+    @Test
+    public void testSchemaMigrator() throws SQLException, IOException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_schema";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            AtomicLong calls = new AtomicLong();
+            SchemaMigrator migrator = new SchemaMigrator()
+                    .add(2, "Index of the nombre", Migration.sql("CREATE INDEX `mascota_nombre_idx` ON `mascota` (`nombre`)"))
+                    .add(1, "Table of Mascota", Migration.sql("CREATE TABLE `mascota` (`id` BIGINT, `nombre` VARCHAR(64))"))
+                    .add(3, "A java migration", cs -> calls.incrementAndGet());
+            Assertions.assertEquals(3, migrator.getLatestVersion(), "Latest != 3");
+            Assertions.assertThrows(IllegalArgumentException.class, () -> migrator.add(3, "Again", cs -> { }));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> migrator.add(0, "Zero", cs -> { }));
+
+            // New database: all in order
+            Assertions.assertEquals(0, migrator.getVersion(connectionSource), "Version != 0");
+            Assertions.assertEquals(3, migrator.migrate(connectionSource), "Applied != 3");
+            Assertions.assertEquals(3, migrator.getVersion(connectionSource), "Version != 3");
+            Assertions.assertEquals(1, calls.get(), "Calls != 1");
+
+            // The fast path: one query
+            ConnectionSource traced = new TracingConnectionSource(connectionSource);
+            QueryTrace.begin();
+            Assertions.assertEquals(0, migrator.migrate(traced), "Applied !?");
+            Assertions.assertEquals(1, QueryTrace.end().getStatements(), "Statements != 1");
+            Assertions.assertEquals(1, calls.get(), "Applied again");
+
+            // A new version that fails: not applied, the next start try again
+            AtomicLong failures = new AtomicLong();
+            migrator.add(4, "A migration that fails the first time", cs -> {
+                if (failures.incrementAndGet() == 1) {
+                    throw new SQLException("Failed");
+                }
+            });
+            Assertions.assertThrows(SQLException.class, () -> migrator.migrate(connectionSource));
+            Assertions.assertEquals(3, migrator.getVersion(connectionSource), "Version != 3");
+            Assertions.assertEquals(1, migrator.migrate(connectionSource), "Applied != 1");
+            Assertions.assertEquals(4, migrator.getVersion(connectionSource), "Version != 4");
+
+            // A newer database: nothing to do
+            Assertions.assertEquals(0, new SchemaMigrator().add(1, "Old", cs -> { }).migrate(connectionSource));
+        }
+
+        // The copy of the dates is part of the transaction of the version (SQLite: DDL in transactions)
+        try (ConnectionSource connectionSource = new JdbcConnectionSource("jdbc:sqlite::memory:")) {
+
+            DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+            connection.executeStatement("CREATE TABLE `control` (`idControl` INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "`fecha` VARCHAR(64) NOT NULL, `fechaProximoControl` VARCHAR(64) NOT NULL, "
+                    + "`temperatura` DOUBLE PRECISION NOT NULL, `peso` DOUBLE PRECISION NOT NULL, "
+                    + "`altura` DOUBLE PRECISION NOT NULL, `diagnostico` VARCHAR(255) NOT NULL, "
+                    + "`veterinario_id` BIGINT NOT NULL, `ficha_id` BIGINT NOT NULL)",
+                    DatabaseConnection.DEFAULT_RESULT_FLAGS);
+            connection.executeStatement("INSERT INTO `control` (`fecha`, `fechaProximoControl`, `temperatura`, "
+                    + "`peso`, `altura`, `diagnostico`, `veterinario_id`, `ficha_id`) VALUES "
+                    + "('2020-05-01T10:15:30.123-04:00', '2020-05-15T10:15:30+02:00', 38.5, 10, 0.5, 'Ok', 1, 1)",
+                    DatabaseConnection.DEFAULT_RESULT_FLAGS);
+
+            // Failed after the copy: all rolled back (the copy isn't committed without its version)
+            SchemaMigrator migrator = new SchemaMigrator().add(1, "Dates of Control as epoch", cs -> {
+                ZonedDateTimeMigration.migrate(cs, Control.class);
+                throw new SQLException("Failed after the copy");
+            });
+            Assertions.assertThrows(SQLException.class, () -> migrator.migrate(connectionSource));
+            Assertions.assertEquals(0, migrator.getVersion(connectionSource), "Version != 0");
+            Assertions.assertFalse(connection.isTableExists("control_old"), "The copy was committed");
+            connectionSource.releaseConnection(connection);
+            Assertions.assertEquals(1, ZonedDateTimeMigration.migrate(connectionSource, Control.class), "Rows != 1");
+        }
+    }
+
+    /**
+     * Testing the group commit of the writer
+     */
+    @Test
+    public void testGroupCommitWriter() throws SQLException, IOException, InterruptedException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_group";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            Repository<Persona, Long> repository = new RepositoryOrmLite<>(connectionSource, Persona.class);
+
+            AtomicLong rollbacks = new AtomicLong();
+            try (GroupCommitWriter writer = new GroupCommitWriter(connectionSource, 10, rollbacks::incrementAndGet)) {
+
+                // The writer busy: the next writes wait in the queue
+                CountDownLatch started = new CountDownLatch(1);
+                CountDownLatch latch = new CountDownLatch(1);
+                CompletableFuture<Object> busy = writer.submit(() -> {
+                    started.countDown();
+                    latch.await();
+                    return null;
+                });
+                started.await();
+                CompletableFuture<Boolean> andrea = writer.submit(() -> repository.create(Fixtures.andrea()));
+                CompletableFuture<Boolean> error = writer.submit(() -> {
+                    throw new SQLException("Bad write");
+                });
+                CompletableFuture<Boolean> diego = writer.submit(() -> repository.create(Fixtures.diego()));
+                latch.countDown();
+                busy.join();
+
+                // One group rolled back, then one by one: only the bad write fails
+                Assertions.assertTrue(andrea.join(), "Andrea not created");
+                Assertions.assertTrue(diego.join(), "Diego not created");
+                Assertions.assertThrows(java.util.concurrent.CompletionException.class, error::join);
+                Assertions.assertEquals(2, repository.findAll().size(), "Personas != 2");
+                Assertions.assertEquals(2, rollbacks.get(), "Rollbacks != 2 (the group and the bad write)");
+                Assertions.assertEquals(3, writer.getRetriedCount(), "Retried != 3");
+                Assertions.assertEquals(4, writer.getWriteCount(), "Writes != 4");
+
+                // The write of a thread waits for the commit
+                Assertions.assertTrue(writer.write(() -> repository.create(Fixtures.pedro())));
+                Assertions.assertEquals(3, repository.findAll().size(), "Personas != 3");
+
+                // A group of one write rolled back: the cache is invalidated too
+                Assertions.assertThrows(RuntimeException.class, () -> writer.write(() -> {
+                    throw new SQLException("Bad write");
+                }));
+                Assertions.assertEquals(3, rollbacks.get(), "Rollbacks != 3");
+            }
+
+            // The writes racing the close: each one is written or rejected, none is left waiting
+            GroupCommitWriter writer = new GroupCommitWriter(connectionSource, 10, () -> { });
+            List<CompletableFuture<Object>> futures = new java.util.concurrent.CopyOnWriteArrayList<>();
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    try {
+                        while (true) {
+                            futures.add(writer.submit(() -> null));
+                        }
+                    } catch (java.util.concurrent.RejectedExecutionException ex) {
+                        // closed
+                    }
+                });
+                threads[i].start();
+            }
+            Thread.sleep(10);
+            writer.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assertions.assertFalse(futures.isEmpty(), "Nothing written");
+            for (CompletableFuture<Object> future : futures) {
+                Assertions.assertTrue(future.isDone(), "Write waiting after the close");
+            }
+            Assertions.assertThrows(java.util.concurrent.RejectedExecutionException.class,
+                    () -> writer.submit(() -> null));
+        }
+    }
+
+    /**
+     * Testing the version of the tables
+     */
+    @Test
+    public void testVersion() throws SQLException, IOException, InterruptedException {
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_version";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            Repository<Persona, Long> repository = new CachedRepository<>(
+                    new RepositoryOrmLite<>(connectionSource, Persona.class), 10, 1000);
+
+            // The reads don't change the version
+            long version = repository.getVersion();
+            Assertions.assertTrue(version > System.currentTimeMillis(), "Version without the time");
+            repository.findAll();
+            Assertions.assertEquals(version, repository.getVersion(), "Version changed by a read");
+
+            // Each write does
+            Persona andrea = Fixtures.andrea();
+            repository.create(andrea);
+            Assertions.assertEquals(version + 1, repository.getVersion(), "Version not changed by create");
+            repository.update(andrea);
+            repository.delete(andrea.getId());
+            Assertions.assertEquals(version + 3, repository.getVersion(), "Version not changed by update/delete");
+
+            // A write without rows doesn't
+            Assertions.assertFalse(repository.update(andrea), "Updated a Persona deleted");
+            Assertions.assertFalse(repository.delete(andrea.getId()), "Deleted a Persona deleted");
+            Assertions.assertEquals(version + 3, repository.getVersion(), "Version changed without rows written");
+
+            // Inside a transaction: the version changes after the commit (a read meanwhile sees the old rows)
+            try (GroupCommitWriter writer = new GroupCommitWriter(connectionSource, 10,
+                    repository::afterCommit, repository::afterRollback)) {
+
+                CountDownLatch created = new CountDownLatch(1);
+                CountDownLatch latch = new CountDownLatch(1);
+                CompletableFuture<Boolean> diego = writer.submit(() -> {
+                    boolean ok = repository.create(Fixtures.diego());
+                    created.countDown();
+                    latch.await();
+                    return ok;
+                });
+                created.await();
+                long uncommitted = repository.getVersion();
+                latch.countDown();
+                Assertions.assertEquals(version + 3, uncommitted, "Version changed before the commit");
+                Assertions.assertTrue(diego.join(), "Diego not created");
+                Assertions.assertEquals(version + 4, repository.getVersion(), "Version not changed by the commit");
+
+                // A transaction rolled back doesn't, neither the next commit without writes of the repository
+                Assertions.assertThrows(RuntimeException.class, () -> writer.write(() -> {
+                    repository.create(Fixtures.pedro());
+                    throw new SQLException("Bad write");
+                }));
+                writer.write(() -> null);
+                Assertions.assertEquals(version + 4, repository.getVersion(), "Version changed by the rollback");
+            }
+        }
+    }
+
+    /**
+     * Testing the histograms, the timers of the repository and the text of /metrics.
+     */
+    @Test
+    public void testMetrics() throws SQLException, IOException {
+
+        // The quantiles within the precision of the buckets (1/16)
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+        Assertions.assertEquals(100_000, histogram.getCount(), "Wrong count");
+        Assertions.assertEquals(100_000, histogram.getMax(), "Wrong max");
+        Assertions.assertEquals(50_000, histogram.getValueAtQuantile(0.5), 50_000 / 16d, "Wrong p50");
+        Assertions.assertEquals(99_000, histogram.getValueAtQuantile(0.99), 99_000 / 16d, "Wrong p99");
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_metrics";
+
+        try (ConnectionSource connectionSource = new JdbcConnectionSource(databaseUrl)) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            Repository<Persona, Long> repository = new RepositoryOrmLite<>(connectionSource, Persona.class);
+
+            // Each operation is timed and counted in the request
+            QueryTrace.begin();
+            repository.findAll();
+            repository.findById(1L);
+            Assertions.assertEquals(2, QueryTrace.end().getOperations(), "Wrong number of operations");
+            Assertions.assertNull(QueryTrace.end(), "Tracing after the end");
+
+            String text = Metrics.scrape();
+            Assertions.assertTrue(text.contains("# TYPE repository_operation_duration_seconds summary"),
+                    "Without the type of the timer");
+            Assertions.assertTrue(text.contains(
+                    "repository_operation_duration_seconds_count{table=\"Persona\",operation=\"findAll\"}"),
+                    "Without the timer of findAll");
+            Assertions.assertTrue(text.contains(
+                    "repository_operation_duration_seconds{table=\"Persona\",operation=\"findAll\",quantile=\"0.99\"}"),
+                    "Without the quantile of findAll");
+        }
+    }
+
+    /**
+     * Testing the trace of the statements: count, time, shapes and the transactions through the wrapper.
+     */
+    @Test
+    public void testQueryTrace() throws SQLException, IOException {
+
+        // The shape without the values
+        Assertions.assertEquals("SELECT * FROM `Persona` WHERE `rut` = ? AND `id` = ? AND `col2` > ?",
+                QueryTrace.shape("SELECT * FROM `Persona` WHERE `rut` = 'O''Higgins 12' AND `id` = 12 AND `col2` > 1.5"));
+
+        // The database to use (in RAM memory)
+        String databaseUrl = "jdbc:h2:mem:fivet_trace";
+
+        try (ConnectionSource connectionSource = new TracingConnectionSource(new JdbcConnectionSource(databaseUrl))) {
+
+            TableUtils.createTableIfNotExists(connectionSource, Persona.class);
+            Repository<Persona, Long> repository = new RepositoryOrmLite<>(connectionSource, Persona.class);
+
+            // The writes in a transaction (the wrapper gives back the connection of the delegate)
+            TransactionManager.callInTransaction(connectionSource, () -> {
+                for (int i = 0; i < 10; i++) {
+                    repository.create(Fixtures.andrea(Fixtures.rut(15_253_280 + i)));
+                }
+                return null;
+            });
+
+            // N+1: the same query with other ids
+            QueryTrace.begin();
+            List<Persona> personas = repository.findAll();
+            for (Persona persona : personas) {
+                repository.findById(persona.getId());
+            }
+            QueryTrace trace = QueryTrace.end();
+
+            Assertions.assertEquals(11, trace.getOperations(), "Wrong number of operations");
+            Assertions.assertEquals(11, trace.getStatements(), "Wrong number of statements");
+            Assertions.assertTrue(trace.getNanos() > 0, "Without time");
+            Assertions.assertEquals(10, trace.getRepeatedCount(), "Wrong repeated count");
+            Assertions.assertFalse(trace.getRepeatedShape().matches(".*\\d.*"), "Shape with values");
+
+            // Outside of the trace nothing is counted
+            repository.findAll();
+            Assertions.assertNull(QueryTrace.end(), "Tracing outside of a request");
+        }
+    }
+
 }
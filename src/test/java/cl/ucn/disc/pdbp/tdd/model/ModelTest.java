@@ -24,7 +24,9 @@
 
 package cl.ucn.disc.pdbp.tdd.model;
 
+import cl.ucn.disc.pdbp.tdd.json.Json;
 import cl.ucn.disc.pdbp.utils.Validation;
+import com.google.gson.Gson;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -32,6 +34,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.ZonedDateTime;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.regex.Pattern;
 
 /**
  * Model test.
@@ -84,6 +89,8 @@ public final class ModelTest {
         Assertions.assertEquals(persona.getTelefonoFijo(), telefonoFijo);
         Assertions.assertEquals(persona.getTelefonoMovil(), telefonoMovil);
         Assertions.assertEquals(persona.getEmail(), emailOk);
+        Assertions.assertEquals(persona.getRut(), new Persona(nombre, apellido, "00" + rutOk, direccion,
+                telefonoFijo, telefonoMovil, emailOk).getRut(), "Rut with zeros at left");
 
         // Testing nullity
         log.debug(".. nullity ..");
@@ -231,9 +238,70 @@ public final class ModelTest {
         Assertions.assertFalse(Validation.isRutValid("15253287K"));
         Assertions.assertFalse(Validation.isRutValid("15253287-"));
 
+        // Zeros at left, the K in lower case and numbers bigger than an int
+        Assertions.assertTrue(Validation.isRutValid("00152532873"));
+        Assertions.assertFalse(Validation.isRutValid("21195194k"));
+        Assertions.assertFalse(Validation.isRutValid("1"));
+        Assertions.assertFalse(Validation.isRutValid("99999999999999999999999"));
+        Assertions.assertTrue(Validation.isRutValid("21474836476"));
+        Assertions.assertFalse(Validation.isRutValid("21474836484"));
 
     }
 
+    /**
+     * Test the email: the same result of the regular expression (with find).
+     */
+    @Test
+    public void testEmail() {
+
+        Pattern regex = Pattern.compile("^[\\w!#$%&'*+/=?`{|}~^-]+(?:\\.[\\w!#$%&'*+/=?`{|}~^-]+)*@"
+                + "(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,6}$");
+
+        String[] emails = {"ignacio.santander@alumnos.ucn.cl", "email.prueba@feik.com", "a@b.cl", "a@b.c",
+                "a@b.abcdefg", "a@b.abcdef", "a..b@c.cl", ".a@c.cl", "a.@c.cl", "a@c..cl", "a@.c.cl", "a@c.cl.",
+                "@c.cl", "a@", "a@cl", "a@b@c.cl", "a b@c.cl", "a@c-1.cl", "a@c.c1", "a@c.-l", "ñ@c.cl", "a@ñ.cl",
+                "a@c.cl\n", "a@c.cl\r\n", "a@c.cl\n\n", "a@c.cl\r", "a@c.cl\u2028", "a@c.cl\u0085", "a@c.cl ",
+                "\na@c.cl", "a@c.cl\n\r", "!#$%&'*+/=?`{|}~^-_@x.io", "", "a"};
+        for (String email : emails) {
+            Assertions.assertEquals(regex.matcher(email).find(), Validation.isEmailValid(email), email);
+        }
+
+        // Random emails of the chars of the language
+        Random random = new Random(42);
+        String chars = "ab1_-.@!\nZ";
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(12); j >= 0; j--) {
+                sb.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            String email = sb.toString();
+            Assertions.assertEquals(regex.matcher(email).find(), Validation.isEmailValid(email), email);
+        }
+
+        Assertions.assertFalse(Validation.isEmailValid(null));
+    }
+
+    /**
+     * Test the validation of many records: the bitmap of the failures.
+     */
+    @Test
+    public void testValidateAll() {
+
+        String[] ruts = new String[10_000];
+        for (int i = 0; i < ruts.length; i++) {
+            ruts[i] = i % 7 == 0 ? "152532874" : "152532873";
+        }
+
+        BitSet failures = Validation.validateAll(ruts, Validation::isRutValid);
+        Assertions.assertEquals((ruts.length + 6) / 7, failures.cardinality(), "Wrong failures");
+        for (int i = 0; i < ruts.length; i++) {
+            Assertions.assertEquals(i % 7 == 0, failures.get(i), "Wrong failure " + i);
+        }
+
+        Assertions.assertTrue(Validation.validateAll(new String[]{"a@c.cl"}, Validation::isEmailValid).isEmpty());
+        Assertions.assertTrue(Validation.validateAll(new String[0], Validation::isEmailValid).isEmpty());
+    }
+
     /**
      * Test the Control
      */
@@ -323,4 +391,44 @@ public final class ModelTest {
 
     }
 
+    /**
+     * Test the json of the model.
+     */
+    @Test
+    public void testJson() {
+
+        log.debug("Testing Json ..");
+
+        Persona duenio = new Persona("Andrea", "Contreras", "152532873", "Calle Falsa 123",
+                2555562, 815252522, "email.prueba@feik.com");
+        ZonedDateTime fecha = ZonedDateTime.parse("2020-05-01T10:00:00-04:00");
+        Ficha ficha = new Ficha(123L, "Firulais", "Canino", fecha, "Pastor Ingles", Sexo.MACHO, "Negro",
+                Tipo.INTERNO, duenio);
+        Control control = new Control(fecha, fecha.plusDays(15), 35.4d, 2d, 10d, "Todo Ok", duenio, ficha);
+
+        // The same json as the reflective Gson (without dates)
+        Assertions.assertEquals(new Gson().toJson(duenio), Json.GSON.toJson(duenio));
+
+        // Compact, with the dates as ISO-8601
+        String json = Json.toJson(control, false);
+        Assertions.assertFalse(json.contains("\n"), "Not compact");
+        Assertions.assertTrue(json.contains("\"fecha\":\"2020-05-01T10:00-04:00\""), "Wrong date: " + json);
+        Assertions.assertTrue(json.contains("\"sexo\":\"MACHO\""), "Wrong enum: " + json);
+        Assertions.assertFalse(json.contains("controles"), "With the Controles");
+        Assertions.assertTrue(Json.toJson(control, true).contains("\n"), "Not pretty");
+
+        // The buffer of the thread is reused
+        Assertions.assertEquals(json, Json.toJson(control, false));
+        Assertions.assertEquals("null", Json.toJson(null, false));
+
+        // Read
+        Control read = Json.GSON.fromJson(json, Control.class);
+        Assertions.assertTrue(fecha.isEqual(read.getFecha()), "Wrong fecha");
+        Assertions.assertEquals(fecha.plusDays(15), read.getFechaProximoControl(), "Wrong fechaProximoControl");
+        Assertions.assertEquals(control.getTemperatura(), read.getTemperatura());
+        Assertions.assertEquals(ficha.getNumero(), read.getFicha().getNumero());
+        Assertions.assertEquals(Sexo.MACHO, read.getFicha().getSexo());
+        Assertions.assertEquals(duenio.getRut(), read.getFicha().getDuenio().getRut());
+    }
+
 }